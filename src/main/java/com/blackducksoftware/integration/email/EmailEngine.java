@@ -29,12 +29,19 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.lang3.EnumUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.restlet.Server;
 import org.restlet.data.Parameter;
@@ -54,13 +61,24 @@ import com.blackducksoftware.integration.email.extension.server.oauth.listeners.
 import com.blackducksoftware.integration.email.model.ExtensionProperties;
 import com.blackducksoftware.integration.email.model.HubServerBeanConfiguration;
 import com.blackducksoftware.integration.email.model.JavaMailWrapper;
+import com.blackducksoftware.integration.email.model.SmtpRateLimiter;
+import com.blackducksoftware.integration.email.model.SmtpTransportPool;
 import com.blackducksoftware.integration.email.notifier.DailyDigestNotifier;
 import com.blackducksoftware.integration.email.notifier.NotifierManager;
 import com.blackducksoftware.integration.email.notifier.TestEmailNotifier;
+import com.blackducksoftware.integration.email.service.DeadLetterStore;
 import com.blackducksoftware.integration.email.service.EmailMessagingService;
+import com.blackducksoftware.integration.email.service.EmailOutbox;
+import com.blackducksoftware.integration.email.service.EmailRetryScheduler;
+import com.blackducksoftware.integration.email.service.EmailSendQueue;
+import com.blackducksoftware.integration.email.service.FragmentCache;
+import com.blackducksoftware.integration.email.service.SendQueueFullPolicy;
+import com.blackducksoftware.integration.email.service.SmtpFailureClassifier;
+import com.blackducksoftware.integration.hub.api.extension.ConfigurationItem;
 import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityRequestService;
 import com.blackducksoftware.integration.hub.dataservice.extension.ExtensionConfigDataService;
 import com.blackducksoftware.integration.hub.dataservice.notification.NotificationDataService;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 import com.blackducksoftware.integration.hub.global.HubServerConfig;
 import com.blackducksoftware.integration.hub.rest.RestConnection;
 import com.blackducksoftware.integration.hub.service.HubRequestService;
@@ -75,6 +93,8 @@ public class EmailEngine implements IAuthorizedListener {
 
     private final Configuration configuration;
 
+    private FragmentCache fragmentCache;
+
     private JavaMailWrapper javaMailWrapper;
 
     private EmailMessagingService emailMessagingService;
@@ -123,6 +143,10 @@ public class EmailEngine implements IAuthorizedListener {
         return configuration;
     }
 
+    public FragmentCache getFragmentCache() {
+        return fragmentCache;
+    }
+
     public JavaMailWrapper getJavaMailWrapper() {
         return javaMailWrapper;
     }
@@ -188,6 +212,12 @@ public class EmailEngine implements IAuthorizedListener {
         try {
             notifierManager.stop();
             restletComponent.stop();
+            if (emailMessagingService != null) {
+                emailMessagingService.shutdown(TimeUnit.SECONDS.toMillis(30));
+            }
+            if (javaMailWrapper != null) {
+                javaMailWrapper.close();
+            }
         } catch (final Exception e) {
             logger.error("Error stopping Email Engine", e);
         }
@@ -211,6 +241,12 @@ public class EmailEngine implements IAuthorizedListener {
         cfg.setDefaultEncoding("UTF-8");
         cfg.setTemplateExceptionHandler(TemplateExceptionHandler.HTML_DEBUG_HANDLER);
         cfg.setLogTemplateExceptions(false);
+        if (!extensionProperties.isEmailTemplateUpdateCheck()) {
+            // templates are only read once; restart or invalidate the templates of the messaging service to pick up edits
+            cfg.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+        }
+        fragmentCache = new FragmentCache(extensionProperties.getFragmentCacheSize(), extensionProperties.getRenderCacheExpireMillis());
+        cfg.setSharedVariable(FragmentCache.DIRECTIVE_NAME, fragmentCache);
 
         return cfg;
     }
@@ -255,11 +291,68 @@ public class EmailEngine implements IAuthorizedListener {
     }
 
     public JavaMailWrapper createJavaMailWrapper() {
-        return new JavaMailWrapper();
+        final SmtpTransportPool transportPool = new SmtpTransportPool(extensionProperties.getSmtpPoolMaxIdle(),
+                extensionProperties.getSmtpPoolMaxMessages(), extensionProperties.getSmtpPoolIdleTimeoutMillis(),
+                extensionProperties.getSmtpPoolValidateAfterMillis());
+        final SmtpRateLimiter rateLimiter = new SmtpRateLimiter(extensionProperties.getRateMessagesPerSecond(),
+                extensionProperties.getRateBytesPerSecond(), extensionProperties.getRateMaxConcurrency());
+        return new JavaMailWrapper(transportPool, rateLimiter);
     }
 
     public EmailMessagingService createEmailMessagingService() {
-        return new EmailMessagingService(extensionProperties, configuration, javaMailWrapper);
+        final DeadLetterStore deadLetterStore = createDeadLetterStore();
+        return new EmailMessagingService(extensionProperties, configuration, javaMailWrapper, createEmailSendQueue(), createEmailOutbox(),
+                createEmailRetryScheduler(deadLetterStore), deadLetterStore);
+    }
+
+    public DeadLetterStore createDeadLetterStore() {
+        File deadLetterDirectory;
+        if (StringUtils.isNotBlank(extensionProperties.getDeadLetterDirectory())) {
+            deadLetterDirectory = new File(extensionProperties.getDeadLetterDirectory());
+        } else {
+            deadLetterDirectory = new File(System.getProperty("ext.config.location"), DeadLetterStore.DEAD_LETTER_DIRECTORY_NAME);
+        }
+        try {
+            return new DeadLetterStore(deadLetterDirectory);
+        } catch (final IOException e) {
+            logger.error("Could not open the dead letter directory {}; undelivered emails will only be logged", deadLetterDirectory, e);
+            return null;
+        }
+    }
+
+    public EmailRetryScheduler createEmailRetryScheduler(final DeadLetterStore deadLetterStore) {
+        return new EmailRetryScheduler(javaMailWrapper, deadLetterStore, new SmtpFailureClassifier(), extensionProperties.getRetryThreads(),
+                extensionProperties.getRetryMaxAttempts(), extensionProperties.getRetryInitialDelayMillis(),
+                extensionProperties.getRetryMaxDelayMillis());
+    }
+
+    public EmailOutbox createEmailOutbox() {
+        if (!extensionProperties.isOutboxEnabled()) {
+            return null;
+        }
+        File outboxDirectory;
+        if (StringUtils.isNotBlank(extensionProperties.getOutboxDirectory())) {
+            outboxDirectory = new File(extensionProperties.getOutboxDirectory());
+        } else {
+            outboxDirectory = new File(System.getProperty("ext.config.location"), EmailOutbox.OUTBOX_DIRECTORY_NAME);
+        }
+        try {
+            return new EmailOutbox(outboxDirectory);
+        } catch (final IOException e) {
+            logger.error("Could not open the email outbox {}; emails will not survive a restart", outboxDirectory, e);
+            return null;
+        }
+    }
+
+    public EmailSendQueue createEmailSendQueue() {
+        final int capacity = extensionProperties.getSendQueueCapacity();
+        if (capacity <= 0) {
+            return null;
+        }
+        final SendQueueFullPolicy fullPolicy = EnumUtils.getEnum(SendQueueFullPolicy.class,
+                StringUtils.upperCase(StringUtils.trimToEmpty(extensionProperties.getSendQueueFullPolicy())));
+        return new EmailSendQueue(javaMailWrapper, Math.max(1, extensionProperties.getSendThreads()), capacity,
+                fullPolicy == null ? SendQueueFullPolicy.BLOCK : fullPolicy, extensionProperties.getSendQueueBlockTimeoutMillis());
     }
 
     public HubServerConfig createHubConfig(final String hubUri) {
@@ -389,8 +482,11 @@ public class EmailEngine implements IAuthorizedListener {
             javaMailWrapper = createJavaMailWrapper();
             hubServicesFactory = new HubServicesFactory(restConnection);
             emailMessagingService = createEmailMessagingService();
+            preloadTemplates();
             notificationDataService = createNotificationDataService();
             extConfigDataService = createExtensionConfigDataService();
+            // the outbox and the dead letters hold no SMTP credentials; they come from the current configuration
+            resumeOutbox();
             notifierManager = createNotifierManager();
             notifierManager.updateHubExtensionUri(tokenManager.getConfiguration().getExtensionUri());
             notifierManager.start();
@@ -399,6 +495,51 @@ public class EmailEngine implements IAuthorizedListener {
         }
     }
 
+    private void preloadTemplates() {
+        final List<String> subjectLines = new ArrayList<>();
+        final Set<String> imageFilePaths = new HashSet<>();
+        for (final Map.Entry<String, String> entry : extensionProperties.getSuppliedTemplateVariableProperties().entrySet()) {
+            if (entry.getKey().endsWith("subject.line")) {
+                subjectLines.add(entry.getValue());
+            } else if (entry.getKey().endsWith(".image")) {
+                imageFilePaths.add(entry.getValue());
+            }
+        }
+        final int loaded = emailMessagingService.getTemplateCache().preload(findTemplateDirectory(), subjectLines);
+        logger.info("Compiled {} email templates and subject lines", loaded);
+        final int loadedImages = emailMessagingService.getImageCache().preload(imageFilePaths);
+        logger.info("Loaded {} embedded images", loadedImages);
+    }
+
+    private void resumeOutbox() {
+        try {
+            final ExtensionProperties hubConfiguredProperties = createPropertiesFromGlobalConfig();
+            final int resumed = emailMessagingService.resumeOutbox(hubConfiguredProperties);
+            if (resumed > 0) {
+                logger.info("Resumed delivery of {} emails from the outbox", resumed);
+            }
+            if (extensionProperties.isDeadLetterReplayOnStart()) {
+                logger.info("Replaying {} undelivered emails", emailMessagingService.replayDeadLetters(hubConfiguredProperties));
+            }
+        } catch (final IOException e) {
+            logger.error("Could not resume the emails of the outbox", e);
+        }
+    }
+
+    private ExtensionProperties createPropertiesFromGlobalConfig() {
+        try {
+            final Map<String, ConfigurationItem> globalMap = extConfigDataService.getGlobalConfigMap(tokenManager.getConfiguration().getExtensionUri());
+            final Properties globalProperties = new Properties();
+            for (final Map.Entry<String, ConfigurationItem> entry : globalMap.entrySet()) {
+                globalProperties.put(entry.getKey(), entry.getValue().getValue().get(0));
+            }
+            return new ExtensionProperties(globalProperties);
+        } catch (final HubIntegrationException e) {
+            logger.error("Could not read the global configuration; using the local mail settings", e);
+            return null;
+        }
+    }
+
     // TODO file a ticket against the hub to give me the root URL not with a
     // path
     private String createHubBaseUrl(final String hubUri) throws MalformedURLException {
@@ -31,6 +31,10 @@ public class EmailExtensionConstants {
 
     public static final String CONFIG_KEY_TRIGGERS = "emailTriggers";
 
+    public static final String CONFIG_KEY_PROJECTS = "emailProjects";
+
+    public static final String CONFIG_KEY_GROUP_DELIVERY = "groupDelivery";
+
     public static final String SYSTEM_PROPERTY_KEY_APP_HOME = "APP_HOME";
 
     public static final String CONTEXT_ATTRIBUTE_KEY_TEST_NOTIFIER = "blackduck-test-email-notifier";
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.batch.processor;
+
+import java.nio.ByteBuffer;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+// fixed width 128-bit key built from the urls identifying an event. Every part is length prefixed so that different
+// combinations of urls can not produce the same input to the hash.
+public final class EventKey {
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final long high;
+
+    private final long low;
+
+    public EventKey(final long high, final long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    public static EventKey create(final String... parts) {
+        final Hasher hasher = HASH_FUNCTION.newHasher();
+        for (final String part : parts) {
+            if (part == null) {
+                hasher.putInt(-1);
+            } else {
+                hasher.putInt(part.length());
+                hasher.putUnencodedChars(part);
+            }
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(hasher.hash().asBytes());
+        return new EventKey(buffer.getLong(), buffer.getLong());
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(low);
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof EventKey)) {
+            return false;
+        }
+        final EventKey other = (EventKey) obj;
+        return high == other.high && low == other.low;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+}
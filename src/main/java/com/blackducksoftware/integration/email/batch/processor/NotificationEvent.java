@@ -36,7 +36,7 @@ public abstract class NotificationEvent<T extends NotificationContentItem> {
 
     private Set<ItemEntry> dataSet;
 
-    private String eventKey;
+    private EventKey eventKey;
 
     public NotificationEvent(final ProcessingAction action, final NotificationCategoryEnum categoryType, T notificationContent) {
         this.action = action;
@@ -49,19 +49,9 @@ public abstract class NotificationEvent<T extends NotificationContentItem> {
         eventKey = generateEventKey();
     }
 
-    public String hashString(final String origString) {
-        String hashString;
-        if (origString == null) {
-            hashString = "";
-        } else {
-            hashString = String.valueOf(origString.hashCode());
-        }
-        return hashString;
-    }
-
     public abstract Set<ItemEntry> generateDataSet();
 
-    public abstract String generateEventKey() throws URISyntaxException;
+    public abstract EventKey generateEventKey() throws URISyntaxException;
 
     public abstract int countCategoryItems();
 
@@ -89,7 +79,7 @@ public abstract class NotificationEvent<T extends NotificationContentItem> {
         return dataSet;
     }
 
-    public String getEventKey() {
+    public EventKey getEventKey() {
         return eventKey;
     }
 }
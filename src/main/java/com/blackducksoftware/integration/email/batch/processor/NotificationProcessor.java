@@ -23,12 +23,14 @@ package com.blackducksoftware.integration.email.batch.processor;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 
 import org.slf4j.Logger;
@@ -36,6 +38,7 @@ import org.slf4j.LoggerFactory;
 
 import com.blackducksoftware.integration.email.model.batch.CategoryDataBuilder;
 import com.blackducksoftware.integration.email.model.batch.ItemData;
+import com.blackducksoftware.integration.email.model.batch.ItemEntryTable;
 import com.blackducksoftware.integration.email.model.batch.ProjectData;
 import com.blackducksoftware.integration.email.model.batch.ProjectDataBuilder;
 import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityRequestService;
@@ -45,25 +48,70 @@ import com.blackducksoftware.integration.hub.dataservice.notification.item.Polic
 import com.blackducksoftware.integration.hub.dataservice.notification.item.PolicyViolationContentItem;
 import com.blackducksoftware.integration.hub.dataservice.notification.item.VulnerabilityContentItem;
 import com.blackducksoftware.integration.hub.service.HubRequestService;
+import com.google.common.collect.ImmutableSet;
 
 public class NotificationProcessor {
     private final Logger logger = LoggerFactory.getLogger(NotificationProcessor.class);
 
+    private static final Set<NotificationCategoryEnum> POLICY_CATEGORIES = EnumSet.of(NotificationCategoryEnum.POLICY_VIOLATION,
+            NotificationCategoryEnum.POLICY_VIOLATION_CLEARED, NotificationCategoryEnum.POLICY_VIOLATION_OVERRIDE);
+
+    private static final Set<NotificationCategoryEnum> VULNERABILITY_CATEGORIES = EnumSet.of(NotificationCategoryEnum.HIGH_VULNERABILITY,
+            NotificationCategoryEnum.MEDIUM_VULNERABILITY, NotificationCategoryEnum.LOW_VULNERABILITY, NotificationCategoryEnum.VULNERABILITY);
+
     private final Map<Class<?>, NotificationSubProcessor<?>> processorMap = new HashMap<>();
 
+    private final Set<Class<?>> skippedClassSet = new HashSet<>();
+
+    private final Set<NotificationCategoryEnum> categoryFilter;
+
     private final List<SubProcessorCache<?>> cacheList = new ArrayList<>();
 
     public NotificationProcessor(HubRequestService hubRequestService, VulnerabilityRequestService vulnerabilityRequestService) {
-        final SubProcessorCache<PolicyEvent> policyCache = new SubProcessorCache<>();
-        final VulnerabilityCache vulnerabilityCache = new VulnerabilityCache(hubRequestService, vulnerabilityRequestService);
-        cacheList.add(policyCache);
-        cacheList.add(vulnerabilityCache);
-        processorMap.put(PolicyViolationContentItem.class, new PolicyViolationProcessor(policyCache));
-        processorMap.put(PolicyViolationClearedContentItem.class, new PolicyViolationClearedProcessor(policyCache));
-        processorMap.put(PolicyOverrideContentItem.class, new PolicyOverrideProcessor(policyCache));
-        processorMap.put(VulnerabilityContentItem.class,
-                new VulnerabilityProcessor(vulnerabilityCache));
+        this(new VulnerabilityLookupCache(hubRequestService, vulnerabilityRequestService));
+    }
 
+    public NotificationProcessor(final VulnerabilityLookupCache lookupCache) {
+        this(lookupCache, new ItemEntryTable());
+    }
+
+    public NotificationProcessor(final VulnerabilityLookupCache lookupCache, final ItemEntryTable itemEntryTable) {
+        this(lookupCache, itemEntryTable, EnumSet.allOf(NotificationCategoryEnum.class));
+    }
+
+    // notifications that can only produce categories outside of the filter are skipped before any event is created; the
+    // cleared and override notifications are still processed when only violations are wanted since they cancel violations.
+    public NotificationProcessor(final VulnerabilityLookupCache lookupCache, final ItemEntryTable itemEntryTable,
+            final Set<NotificationCategoryEnum> categoryFilter) {
+        this.categoryFilter = categoryFilter.isEmpty() ? EnumSet.noneOf(NotificationCategoryEnum.class) : EnumSet.copyOf(categoryFilter);
+        if (containsAny(this.categoryFilter, POLICY_CATEGORIES)) {
+            final SubProcessorCache<PolicyEvent> policyCache = new SubProcessorCache<>(itemEntryTable);
+            cacheList.add(policyCache);
+            processorMap.put(PolicyViolationContentItem.class, new PolicyViolationProcessor(policyCache));
+            processorMap.put(PolicyViolationClearedContentItem.class, new PolicyViolationClearedProcessor(policyCache));
+            processorMap.put(PolicyOverrideContentItem.class, new PolicyOverrideProcessor(policyCache));
+        } else {
+            skippedClassSet.add(PolicyViolationContentItem.class);
+            skippedClassSet.add(PolicyViolationClearedContentItem.class);
+            skippedClassSet.add(PolicyOverrideContentItem.class);
+        }
+        if (containsAny(this.categoryFilter, VULNERABILITY_CATEGORIES)) {
+            final VulnerabilityCache vulnerabilityCache = new VulnerabilityCache(lookupCache, itemEntryTable);
+            cacheList.add(vulnerabilityCache);
+            processorMap.put(VulnerabilityContentItem.class,
+                    new VulnerabilityProcessor(vulnerabilityCache));
+        } else {
+            skippedClassSet.add(VulnerabilityContentItem.class);
+        }
+    }
+
+    private boolean containsAny(final Set<NotificationCategoryEnum> categorySet, final Set<NotificationCategoryEnum> otherSet) {
+        for (final NotificationCategoryEnum category : otherSet) {
+            if (categorySet.contains(category)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public Collection<ProjectData> process(final SortedSet<NotificationContentItem> notifications) {
@@ -72,10 +120,21 @@ public class NotificationProcessor {
         return projectDataList;
     }
 
+    // pages have to be added oldest first so that later notifications cancel the earlier ones exactly as in process()
+    public void addPage(final SortedSet<NotificationContentItem> notifications) {
+        createEvents(notifications);
+    }
+
+    public Collection<ProjectData> finishPages() {
+        return processEvents();
+    }
+
     private void createEvents(final SortedSet<NotificationContentItem> notifications) {
         for (final NotificationContentItem item : notifications) {
             final Class<?> key = item.getClass();
-            if (!processorMap.containsKey(key)) {
+            if (skippedClassSet.contains(key)) {
+                continue;
+            } else if (!processorMap.containsKey(key)) {
                 logger.error("Could not find converter for notification: {}", item);
             } else {
                 final NotificationSubProcessor<?> processor = processorMap.get(key);
@@ -93,7 +152,11 @@ public class NotificationProcessor {
     private Collection<NotificationEvent<?>> processNotificationEvents() {
         final Collection<NotificationEvent<?>> eventList = new LinkedList<>();
         for (final SubProcessorCache<?> processor : cacheList) {
-            eventList.addAll(processor.getEvents());
+            for (final NotificationEvent<?> event : processor.getEvents()) {
+                if (categoryFilter.contains(event.getCategoryType())) {
+                    eventList.add(event);
+                }
+            }
         }
         return eventList;
     }
@@ -127,7 +190,9 @@ public class NotificationProcessor {
                 categoryData = categoryBuilderMap.get(categoryKey);
             }
             categoryData.incrementItemCount(event.countCategoryItems());
-            categoryData.addItem(new ItemData(new LinkedHashSet<>(event.getDataSet())));
+            // the item data is shared by users, cached digests and accumulated windows, so it gets a frozen copy of the
+            // event's data set; the copy keeps the order and still references the shared entries
+            categoryData.addItem(new ItemData(ImmutableSet.copyOf(event.getDataSet())));
         }
         // build
         final Collection<ProjectData> dataList = new LinkedList<>();
@@ -0,0 +1,195 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.batch.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.blackducksoftware.integration.email.model.batch.ItemEntryTable;
+import com.blackducksoftware.integration.email.model.batch.ProjectData;
+import com.blackducksoftware.integration.hub.api.notification.VulnerabilitySourceQualifiedId;
+import com.blackducksoftware.integration.hub.api.policy.PolicyRule;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.PolicyOverrideContentItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.PolicyViolationClearedContentItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.PolicyViolationContentItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.VulnerabilityContentItem;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+
+// Event keys always contain the project version so the events of one project version never cancel the events of another.
+// The aggregated data of a project version can therefore be computed once per run and shared by every user receiving it.
+public class ProjectDataCache {
+    private final ConcurrentMap<EventKey, FutureTask<Collection<ProjectData>>> projectDataMap = new ConcurrentHashMap<>();
+
+    private final VulnerabilityLookupCache lookupCache;
+
+    private final ItemEntryTable itemEntryTable = new ItemEntryTable();
+
+    private final AtomicInteger hitCount = new AtomicInteger();
+
+    private final AtomicInteger missCount = new AtomicInteger();
+
+    public ProjectDataCache(final VulnerabilityLookupCache lookupCache) {
+        this.lookupCache = lookupCache;
+    }
+
+    public Collection<ProjectData> process(final SortedSet<NotificationContentItem> notifications)
+            throws HubIntegrationException, InterruptedException {
+        return process(notifications, EnumSet.allOf(NotificationCategoryEnum.class));
+    }
+
+    public Collection<ProjectData> process(final SortedSet<NotificationContentItem> notifications, final Set<NotificationCategoryEnum> categoryFilter)
+            throws HubIntegrationException, InterruptedException {
+        final Collection<ProjectData> projectList = new LinkedList<>();
+        for (final Map.Entry<String, SortedSet<NotificationContentItem>> entry : groupByProjectVersion(notifications).entrySet()) {
+            projectList.addAll(getProjectData(entry.getKey(), entry.getValue(), categoryFilter));
+        }
+        return projectList;
+    }
+
+    private Map<String, SortedSet<NotificationContentItem>> groupByProjectVersion(final SortedSet<NotificationContentItem> notifications) {
+        final Map<String, SortedSet<NotificationContentItem>> projectVersionMap = new LinkedHashMap<>();
+        for (final NotificationContentItem notification : notifications) {
+            final String projectVersionUrl = notification.getProjectVersion().getUrl();
+            SortedSet<NotificationContentItem> projectNotifications = projectVersionMap.get(projectVersionUrl);
+            if (projectNotifications == null) {
+                projectNotifications = new TreeSet<>();
+                projectVersionMap.put(projectVersionUrl, projectNotifications);
+            }
+            projectNotifications.add(notification);
+        }
+        return projectVersionMap;
+    }
+
+    private Collection<ProjectData> getProjectData(final String projectVersionUrl, final SortedSet<NotificationContentItem> notifications,
+            final Set<NotificationCategoryEnum> categoryFilter) throws HubIntegrationException, InterruptedException {
+        // the key covers the content of the notifications so that a user with a different slice of the project version,
+        // for example one catching up from an older watermark, is not handed somebody else's digest
+        final EventKey key = createKey(projectVersionUrl, notifications, categoryFilter);
+        final FutureTask<Collection<ProjectData>> newTask = new FutureTask<>(() -> {
+            final NotificationProcessor processor = new NotificationProcessor(lookupCache, itemEntryTable, categoryFilter);
+            return processor.process(notifications);
+        });
+        FutureTask<Collection<ProjectData>> task = projectDataMap.putIfAbsent(key, newTask);
+        if (task == null) {
+            missCount.incrementAndGet();
+            task = newTask;
+            task.run();
+        } else {
+            hitCount.incrementAndGet();
+        }
+
+        try {
+            return task.get();
+        } catch (final ExecutionException e) {
+            // the failure goes to every user waiting on the task so that none of them sends a digest without this project
+            // version or moves past its notifications; a later user retries the processing
+            projectDataMap.remove(key, task);
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new HubIntegrationException(cause);
+        }
+    }
+
+    private EventKey createKey(final String projectVersionUrl, final SortedSet<NotificationContentItem> notifications,
+            final Set<NotificationCategoryEnum> categoryFilter) {
+        final List<String> parts = new ArrayList<>();
+        parts.add(projectVersionUrl);
+        parts.add(String.valueOf(getCategoryMask(categoryFilter)));
+        for (final NotificationContentItem notification : notifications) {
+            parts.add(notification.getClass().getName());
+            parts.add(String.valueOf(notification.getCreatedAt().getTime()));
+            parts.add(notification.getComponentVersionUrl());
+            addContentParts(parts, notification);
+        }
+        return EventKey.create(parts.toArray(new String[parts.size()]));
+    }
+
+    private void addContentParts(final List<String> parts, final NotificationContentItem notification) {
+        List<PolicyRule> policyRuleList = null;
+        if (notification instanceof PolicyViolationContentItem) {
+            policyRuleList = ((PolicyViolationContentItem) notification).getPolicyRuleList();
+        } else if (notification instanceof PolicyViolationClearedContentItem) {
+            policyRuleList = ((PolicyViolationClearedContentItem) notification).getPolicyRuleList();
+        } else if (notification instanceof PolicyOverrideContentItem) {
+            policyRuleList = ((PolicyOverrideContentItem) notification).getPolicyRuleList();
+        } else if (notification instanceof VulnerabilityContentItem) {
+            final VulnerabilityContentItem vulnerabilityContentItem = (VulnerabilityContentItem) notification;
+            addVulnerabilityParts(parts, "added", vulnerabilityContentItem.getAddedVulnList());
+            addVulnerabilityParts(parts, "updated", vulnerabilityContentItem.getUpdatedVulnList());
+            addVulnerabilityParts(parts, "deleted", vulnerabilityContentItem.getDeletedVulnList());
+        }
+        if (policyRuleList != null) {
+            for (final PolicyRule rule : policyRuleList) {
+                parts.add(rule.getMeta().getHref());
+            }
+        }
+    }
+
+    private void addVulnerabilityParts(final List<String> parts, final String listName, final List<VulnerabilitySourceQualifiedId> vulnList) {
+        parts.add(listName);
+        if (vulnList != null) {
+            for (final VulnerabilitySourceQualifiedId vulnerability : vulnList) {
+                parts.add(vulnerability.getVulnerabilityId());
+            }
+        }
+    }
+
+    private int getCategoryMask(final Set<NotificationCategoryEnum> categoryFilter) {
+        int mask = 0;
+        for (final NotificationCategoryEnum category : categoryFilter) {
+            mask |= 1 << category.ordinal();
+        }
+        return mask;
+    }
+
+    public ItemEntryTable getItemEntryTable() {
+        return itemEntryTable;
+    }
+
+    public int getHitCount() {
+        return hitCount.get();
+    }
+
+    public int getMissCount() {
+        return missCount.get();
+    }
+
+    public int size() {
+        return projectDataMap.size();
+    }
+}
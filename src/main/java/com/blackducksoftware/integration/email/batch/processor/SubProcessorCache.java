@@ -27,38 +27,52 @@ import java.util.Map;
 import java.util.Set;
 
 import com.blackducksoftware.integration.email.model.batch.ItemEntry;
+import com.blackducksoftware.integration.email.model.batch.ItemEntryTable;
 
 public class SubProcessorCache<T extends NotificationEvent<?>> {
-    private final Map<String, T> eventMap = new LinkedHashMap<>(500);
+    private final Map<EventKey, T> eventMap = new LinkedHashMap<>(500);
 
-    public boolean hasEvent(String eventKey) {
+    private final ItemEntryTable itemEntryTable;
+
+    public SubProcessorCache() {
+        this(new ItemEntryTable());
+    }
+
+    public SubProcessorCache(final ItemEntryTable itemEntryTable) {
+        this.itemEntryTable = itemEntryTable;
+    }
+
+    public boolean hasEvent(final EventKey eventKey) {
         return eventMap.containsKey(eventKey);
     }
 
     public void addEvent(final T event) {
-        final String key = event.getEventKey();
+        final EventKey key = event.getEventKey();
         if (!eventMap.containsKey(key)) {
+            itemEntryTable.internEntries(event.getDataSet());
             eventMap.put(key, event);
         } else {
             final T storedEvent = eventMap.get(key);
             final Set<ItemEntry> storedEventDataMap = storedEvent.getDataSet();
             final Set<ItemEntry> eventDataMap = event.getDataSet();
-            storedEventDataMap.addAll(eventDataMap);
+            for (final ItemEntry entry : eventDataMap) {
+                storedEventDataMap.add(itemEntryTable.intern(entry));
+            }
         }
     }
 
-    public void removeEvent(final String eventKey) {
+    public void removeEvent(final EventKey eventKey) {
         if (eventMap.containsKey(eventKey)) {
             eventMap.remove(eventKey);
         }
     }
 
     public void removeEvent(final T event) {
-        final String key = event.getEventKey();
+        final EventKey key = event.getEventKey();
         removeEvent(key);
     }
 
-    public T getEvent(final String eventKey) {
+    public T getEvent(final EventKey eventKey) {
         return eventMap.get(eventKey);
     }
 
@@ -66,7 +80,11 @@ public class SubProcessorCache<T extends NotificationEvent<?>> {
         return eventMap.values();
     }
 
-    public Map<String, T> getEventMap() {
+    public ItemEntryTable getItemEntryTable() {
+        return itemEntryTable;
+    }
+
+    public Map<EventKey, T> getEventMap() {
         return eventMap;
     }
 }
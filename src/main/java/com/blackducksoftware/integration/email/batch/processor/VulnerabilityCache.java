@@ -23,58 +23,60 @@ package com.blackducksoftware.integration.email.batch.processor;
 
 import java.net.URISyntaxException;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.blackducksoftware.integration.email.model.batch.ItemEntry;
-import com.blackducksoftware.integration.hub.api.component.version.ComponentVersion;
-import com.blackducksoftware.integration.hub.api.vulnerability.SeverityEnum;
-import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityItem;
-import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityRequestService;
-import com.blackducksoftware.integration.hub.dataservice.notification.item.VulnerabilityContentItem;
-import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
-import com.blackducksoftware.integration.hub.service.HubRequestService;
+import com.blackducksoftware.integration.email.model.batch.ItemEntryTable;
 
 public class VulnerabilityCache extends SubProcessorCache<VulnerabilityEvent> {
     private final Logger logger = LoggerFactory.getLogger(VulnerabilityCache.class);
 
-    private final HubRequestService hubRequestService;
+    private final VulnerabilityLookupCache lookupCache;
 
-    private final VulnerabilityRequestService vulnerabilityRequestService;
+    public VulnerabilityCache(final VulnerabilityLookupCache lookupCache) {
+        this(lookupCache, new ItemEntryTable());
+    }
 
-    public VulnerabilityCache(HubRequestService hubRequestService, VulnerabilityRequestService vulnerabilityRequestService) {
-        this.hubRequestService = hubRequestService;
-        this.vulnerabilityRequestService = vulnerabilityRequestService;
+    public VulnerabilityCache(final VulnerabilityLookupCache lookupCache, final ItemEntryTable itemEntryTable) {
+        super(itemEntryTable);
+        this.lookupCache = lookupCache;
     }
 
     @Override
     public void addEvent(final VulnerabilityEvent event) {
-        final String key = event.getEventKey();
+        final EventKey key = event.getEventKey();
         if (!hasEvent(key)) {
+            getItemEntryTable().internEntries(event.getDataSet());
+            getItemEntryTable().internStrings(event.getVulnerabilityIdSet());
             getEventMap().put(key, event);
         } else {
             final VulnerabilityEvent storedEvent = getEventMap().get(key);
             final Set<ItemEntry> storedEventDataMap = storedEvent.getDataSet();
             final Set<ItemEntry> eventDataMap = event.getDataSet();
-            storedEventDataMap.addAll(eventDataMap);
-            if (!event.getVulnerabilityIdSet().isEmpty()) {
-                storedEvent.getVulnerabilityIdSet().addAll(event.getVulnerabilityIdSet());
+            for (final ItemEntry entry : eventDataMap) {
+                storedEventDataMap.add(getItemEntryTable().intern(entry));
+            }
+            for (final String vulnId : event.getVulnerabilityIdSet()) {
+                storedEvent.getVulnerabilityIdSet().add(getItemEntryTable().intern(vulnId));
             }
         }
     }
 
     @Override
     public void removeEvent(final VulnerabilityEvent event) {
-        final String key = event.getEventKey();
+        final EventKey key = event.getEventKey();
         if (getEventMap().containsKey(key)) {
             final VulnerabilityEvent storedEvent = getEventMap().get(key);
             if (!storedEvent.getVulnerabilityIdSet().isEmpty() && !event.getVulnerabilityIdSet().isEmpty()) {
@@ -91,9 +93,20 @@ public class VulnerabilityCache extends SubProcessorCache<VulnerabilityEvent> {
     public Collection<VulnerabilityEvent> getEvents() {
         final Collection<VulnerabilityEvent> vulnerabilities = super.getEvents();
         // need to group the vulnerabilities by severity which can be gathered by the vulnerability API.
+        // start every lookup first so the requests for different components run concurrently, then join them.
+        final Map<String, CompletableFuture<VulnerabilitySeverityIndex>> lookupMap = new HashMap<>();
+        for (final VulnerabilityEvent event : vulnerabilities) {
+            final String componentVersionUrl = event.getNotificationContent().getComponentVersionUrl();
+            if (!lookupMap.containsKey(componentVersionUrl)) {
+                lookupMap.put(componentVersionUrl, lookupCache.getSeverityIndexAsync(componentVersionUrl));
+            }
+        }
+
         final Collection<VulnerabilityEvent> result = new LinkedList<>();
         for (final VulnerabilityEvent event : vulnerabilities) {
-            final List<VulnerabilityEvent> vulnerabilityEvents = createVulnerabilityEvents(event);
+            final String componentVersionUrl = event.getNotificationContent().getComponentVersionUrl();
+            final VulnerabilitySeverityIndex severityIndex = joinLookup(componentVersionUrl, lookupMap.get(componentVersionUrl));
+            final List<VulnerabilityEvent> vulnerabilityEvents = createVulnerabilityEvents(event, severityIndex);
             for (final VulnerabilityEvent vulnerability : vulnerabilityEvents) {
                 result.add(vulnerability);
             }
@@ -102,93 +115,53 @@ public class VulnerabilityCache extends SubProcessorCache<VulnerabilityEvent> {
         return result;
     }
 
-    private List<VulnerabilityEvent> createVulnerabilityEvents(final VulnerabilityEvent originalEvent) {
-        final List<VulnerabilityEvent> eventList = new LinkedList<>();
-        final VulnerabilityContentItem vulnerabilityContent = originalEvent.getNotificationContent();
-        final String vulnerabilityUrl = findVulnerabilityUrl(vulnerabilityContent.getComponentVersionUrl());
-        final List<VulnerabilityItem> vulnerabilityList = createVulnerabilityItemList(vulnerabilityUrl);
-        addEventsToList(originalEvent, vulnerabilityList, eventList);
-        addCountsToDataSet(eventList);
-        return eventList;
-    }
-
-    private String findVulnerabilityUrl(String componentVersionUrl) {
-        String url = null;
+    private VulnerabilitySeverityIndex joinLookup(final String componentVersionUrl, final CompletableFuture<VulnerabilitySeverityIndex> lookup) {
         try {
-            final ComponentVersion compVersion = hubRequestService.getItem(componentVersionUrl, ComponentVersion.class);
-            url = compVersion.getLink("vulnerabilities");
-        } catch (final HubIntegrationException ex) {
-            logger.error("Cannot find the component version for the url {}", componentVersionUrl, ex);
+            return lookup.join();
+        } catch (final CompletionException | CancellationException e) {
+            logger.error("Cannot retrieve vulnerabilites for component version {}", componentVersionUrl, e);
+            return VulnerabilitySeverityIndex.EMPTY;
         }
-        return url;
     }
 
-    private List<VulnerabilityItem> createVulnerabilityItemList(String vulnerabilityUrl) {
-        List<VulnerabilityItem> itemList = Collections.emptyList();
-        if (StringUtils.isBlank(vulnerabilityUrl)) {
-            logger.error("Url to get vulnerabilities not found; skipping creating vulnerability list");
-        } else {
-            try {
-                itemList = vulnerabilityRequestService.getComponentVersionVulnerabilities(vulnerabilityUrl);
-            } catch (final HubIntegrationException ex) {
-                logger.error("Cannot retrieve vulnerabilites from url {}", vulnerabilityUrl, ex);
-            }
-        }
-        return itemList;
+    private List<VulnerabilityEvent> createVulnerabilityEvents(final VulnerabilityEvent originalEvent, final VulnerabilitySeverityIndex severityIndex) {
+        final List<VulnerabilityEvent> eventList = new LinkedList<>();
+        addEventsToList(originalEvent, severityIndex, eventList);
+        addCountsToDataSet(eventList);
+        return eventList;
     }
 
-    private void addEventsToList(VulnerabilityEvent originalEvent, List<VulnerabilityItem> vulnerabilityList, List<VulnerabilityEvent> eventList) {
-        final Map<NotificationCategoryEnum, VulnerabilityEvent> eventMap = new HashMap<>();
+    private void addEventsToList(VulnerabilityEvent originalEvent, VulnerabilitySeverityIndex severityIndex, List<VulnerabilityEvent> eventList) {
+        final Map<NotificationCategoryEnum, VulnerabilityEvent> eventMap = new EnumMap<>(NotificationCategoryEnum.class);
         for (final String vulnId : originalEvent.getVulnerabilityIdSet()) {
-            for (final VulnerabilityItem vulnerability : vulnerabilityList) {
-                final NotificationCategoryEnum eventCategory = getEventCategory(vulnerability.getSeverity());
-                final String vulnName = vulnerability.getVulnerabilityName();
-                if (vulnId.equals(vulnName)) {
-                    if (eventMap.containsKey(eventCategory)) {
-                        final VulnerabilityEvent event = eventMap.get(eventCategory);
-                        event.getVulnerabilityIdSet().add(vulnName);
-                    } else {
-                        try {
-                            final Set<String> vulnset = new HashSet<>();
-                            vulnset.add(vulnName);
-                            final VulnerabilityEvent event = new VulnerabilityEvent(originalEvent.getAction(), eventCategory,
-                                    originalEvent.getNotificationContent(),
-                                    vulnset);
-                            eventMap.put(eventCategory, event);
-                            eventList.add(event);
-                        } catch (final URISyntaxException e) {
-                            logger.error("Error creating vulnerability event for item {} ", originalEvent.getNotificationContent(), e);
-                        }
+            final NotificationCategoryEnum eventCategory = severityIndex.getCategory(vulnId);
+            if (eventCategory != null) {
+                if (eventMap.containsKey(eventCategory)) {
+                    final VulnerabilityEvent event = eventMap.get(eventCategory);
+                    event.getVulnerabilityIdSet().add(vulnId);
+                } else {
+                    try {
+                        final Set<String> vulnset = new HashSet<>();
+                        vulnset.add(vulnId);
+                        final VulnerabilityEvent event = new VulnerabilityEvent(originalEvent.getAction(), eventCategory,
+                                originalEvent.getNotificationContent(),
+                                vulnset);
+                        getItemEntryTable().internEntries(event.getDataSet());
+                        eventMap.put(eventCategory, event);
+                        eventList.add(event);
+                    } catch (final URISyntaxException e) {
+                        logger.error("Error creating vulnerability event for item {} ", originalEvent.getNotificationContent(), e);
                     }
                 }
             }
         }
     }
 
-    private NotificationCategoryEnum getEventCategory(final String severityString) {
-        final SeverityEnum severity = SeverityEnum.getSeverityEnum(severityString);
-
-        switch (severity) {
-        case HIGH: {
-            return NotificationCategoryEnum.HIGH_VULNERABILITY;
-        }
-        case MEDIUM: {
-            return NotificationCategoryEnum.MEDIUM_VULNERABILITY;
-        }
-        case LOW: {
-            return NotificationCategoryEnum.LOW_VULNERABILITY;
-        }
-        default: {
-            return NotificationCategoryEnum.VULNERABILITY;
-        }
-        }
-    }
-
     private void addCountsToDataSet(List<VulnerabilityEvent> eventList) {
         for (final VulnerabilityEvent event : eventList) {
             final int size = event.getVulnerabilityIdSet().size();
             if (size > 1) {
-                event.getDataSet().add(new ItemEntry(ItemTypeEnum.COUNT.name(), String.valueOf(size)));
+                event.getDataSet().add(getItemEntryTable().getEntry(ItemTypeEnum.COUNT.name(), String.valueOf(size)));
             }
         }
     }
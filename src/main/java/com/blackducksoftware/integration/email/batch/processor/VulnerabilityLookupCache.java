@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.batch.processor;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.hub.api.component.version.ComponentVersion;
+import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityItem;
+import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityRequestService;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+import com.blackducksoftware.integration.hub.service.HubRequestService;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+public class VulnerabilityLookupCache {
+    public static final long DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final long DEFAULT_EXPIRATION_MINUTES = 60;
+
+    public static final int DEFAULT_LOOKUP_THREADS = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(VulnerabilityLookupCache.class);
+
+    private final HubRequestService hubRequestService;
+
+    private final VulnerabilityRequestService vulnerabilityRequestService;
+
+    private final LoadingCache<String, VulnerabilitySeverityIndex> vulnerabilityCache;
+
+    private final ConcurrentMap<String, CompletableFuture<VulnerabilitySeverityIndex>> inFlightMap = new ConcurrentHashMap<>();
+
+    private final ExecutorService lookupExecutor;
+
+    public VulnerabilityLookupCache(final HubRequestService hubRequestService, final VulnerabilityRequestService vulnerabilityRequestService) {
+        this(hubRequestService, vulnerabilityRequestService, DEFAULT_MAXIMUM_SIZE, DEFAULT_EXPIRATION_MINUTES);
+    }
+
+    public VulnerabilityLookupCache(final HubRequestService hubRequestService, final VulnerabilityRequestService vulnerabilityRequestService,
+            final long maximumSize, final long expirationMinutes) {
+        this(hubRequestService, vulnerabilityRequestService, maximumSize, expirationMinutes, null);
+    }
+
+    // lookups requested through getSeverityIndexAsync are run on the executor; without an executor they are resolved on
+    // the calling thread.
+    public VulnerabilityLookupCache(final HubRequestService hubRequestService, final VulnerabilityRequestService vulnerabilityRequestService,
+            final long maximumSize, final long expirationMinutes, final ExecutorService lookupExecutor) {
+        this.hubRequestService = hubRequestService;
+        this.vulnerabilityRequestService = vulnerabilityRequestService;
+        this.lookupExecutor = lookupExecutor;
+        vulnerabilityCache = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expirationMinutes, TimeUnit.MINUTES).recordStats()
+                .build(new CacheLoader<String, VulnerabilitySeverityIndex>() {
+                    @Override
+                    public VulnerabilitySeverityIndex load(final String componentVersionUrl) throws HubIntegrationException {
+                        return new VulnerabilitySeverityIndex(loadVulnerabilities(componentVersionUrl));
+                    }
+                });
+    }
+
+    public void shutdown() {
+        if (lookupExecutor != null) {
+            lookupExecutor.shutdownNow();
+        }
+    }
+
+    public List<VulnerabilityItem> getVulnerabilities(final String componentVersionUrl) {
+        return getSeverityIndex(componentVersionUrl).getVulnerabilityList();
+    }
+
+    public VulnerabilitySeverityIndex getSeverityIndex(final String componentVersionUrl) {
+        if (StringUtils.isBlank(componentVersionUrl)) {
+            logger.error("Component version url not found; skipping creating vulnerability list");
+            return VulnerabilitySeverityIndex.EMPTY;
+        }
+        try {
+            return vulnerabilityCache.get(componentVersionUrl);
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            logger.error("Cannot retrieve vulnerabilites for component version {}", componentVersionUrl, e.getCause());
+            return VulnerabilitySeverityIndex.EMPTY;
+        }
+    }
+
+    public CompletableFuture<VulnerabilitySeverityIndex> getSeverityIndexAsync(final String componentVersionUrl) {
+        if (lookupExecutor == null || StringUtils.isBlank(componentVersionUrl)) {
+            return CompletableFuture.completedFuture(getSeverityIndex(componentVersionUrl));
+        }
+        if (vulnerabilityCache.asMap().containsKey(componentVersionUrl)) {
+            return CompletableFuture.completedFuture(getSeverityIndex(componentVersionUrl));
+        }
+        // identical urls requested while a lookup is still running share the same future
+        final CompletableFuture<VulnerabilitySeverityIndex> newFuture = new CompletableFuture<>();
+        final CompletableFuture<VulnerabilitySeverityIndex> inFlightFuture = inFlightMap.putIfAbsent(componentVersionUrl, newFuture);
+        if (inFlightFuture != null) {
+            return inFlightFuture;
+        }
+        try {
+            lookupExecutor.execute(() -> {
+                try {
+                    newFuture.complete(getSeverityIndex(componentVersionUrl));
+                } catch (final RuntimeException e) {
+                    newFuture.completeExceptionally(e);
+                } finally {
+                    inFlightMap.remove(componentVersionUrl, newFuture);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            inFlightMap.remove(componentVersionUrl, newFuture);
+            newFuture.complete(getSeverityIndex(componentVersionUrl));
+        }
+        return newFuture;
+    }
+
+    private List<VulnerabilityItem> loadVulnerabilities(final String componentVersionUrl) throws HubIntegrationException {
+        final ComponentVersion compVersion = hubRequestService.getItem(componentVersionUrl, ComponentVersion.class);
+        if (compVersion == null) {
+            logger.error("Cannot find the component version for the url {}", componentVersionUrl);
+            return Collections.emptyList();
+        }
+        final String vulnerabilityUrl = compVersion.getLink("vulnerabilities");
+        if (StringUtils.isBlank(vulnerabilityUrl)) {
+            logger.error("Url to get vulnerabilities not found for component version {}", componentVersionUrl);
+            return Collections.emptyList();
+        }
+        final List<VulnerabilityItem> itemList = vulnerabilityRequestService.getComponentVersionVulnerabilities(vulnerabilityUrl);
+        if (itemList == null) {
+            return Collections.emptyList();
+        }
+        return itemList;
+    }
+
+    public int getInFlightCount() {
+        return inFlightMap.size();
+    }
+
+    public void invalidateAll() {
+        vulnerabilityCache.invalidateAll();
+    }
+
+    public long size() {
+        return vulnerabilityCache.size();
+    }
+
+    public long getHitCount() {
+        return vulnerabilityCache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return vulnerabilityCache.stats().missCount();
+    }
+
+    public long getEvictionCount() {
+        return vulnerabilityCache.stats().evictionCount();
+    }
+
+    public CacheStats getStats() {
+        return vulnerabilityCache.stats();
+    }
+}
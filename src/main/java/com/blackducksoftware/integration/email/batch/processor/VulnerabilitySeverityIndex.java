@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.batch.processor;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blackducksoftware.integration.hub.api.vulnerability.SeverityEnum;
+import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityItem;
+
+// the vulnerabilities of one component version indexed by name so that a vulnerability id can be mapped to its
+// category without scanning the whole list.
+public class VulnerabilitySeverityIndex {
+    public static final VulnerabilitySeverityIndex EMPTY = new VulnerabilitySeverityIndex(Collections.emptyList());
+
+    private final List<VulnerabilityItem> vulnerabilityList;
+
+    private final Map<String, NotificationCategoryEnum> categoryMap;
+
+    public VulnerabilitySeverityIndex(final List<VulnerabilityItem> vulnerabilityList) {
+        this.vulnerabilityList = Collections.unmodifiableList(vulnerabilityList);
+        final Map<String, NotificationCategoryEnum> map = new HashMap<>(vulnerabilityList.size() * 2);
+        for (final VulnerabilityItem vulnerability : vulnerabilityList) {
+            final String vulnName = vulnerability.getVulnerabilityName();
+            if (vulnName != null && !map.containsKey(vulnName)) {
+                map.put(vulnName, getEventCategory(vulnerability.getSeverity()));
+            }
+        }
+        categoryMap = Collections.unmodifiableMap(map);
+    }
+
+    public NotificationCategoryEnum getCategory(final String vulnerabilityName) {
+        return categoryMap.get(vulnerabilityName);
+    }
+
+    public List<VulnerabilityItem> getVulnerabilityList() {
+        return vulnerabilityList;
+    }
+
+    public int size() {
+        return categoryMap.size();
+    }
+
+    public static NotificationCategoryEnum getEventCategory(final String severityString) {
+        final SeverityEnum severity = SeverityEnum.getSeverityEnum(severityString);
+
+        switch (severity) {
+        case HIGH: {
+            return NotificationCategoryEnum.HIGH_VULNERABILITY;
+        }
+        case MEDIUM: {
+            return NotificationCategoryEnum.MEDIUM_VULNERABILITY;
+        }
+        case LOW: {
+            return NotificationCategoryEnum.LOW_VULNERABILITY;
+        }
+        default: {
+            return NotificationCategoryEnum.VULNERABILITY;
+        }
+        }
+    }
+}
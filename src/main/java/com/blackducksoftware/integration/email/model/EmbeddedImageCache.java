@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.activation.FileTypeMap;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetHeaders;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeUtility;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.email.EmailExtensionConstants;
+
+// embedded images read and base64 encoded once and shared by every message. A body part built from the encoded bytes
+// is written out as is, so sending costs no disk access or encoding. The file is looked at again once the check
+// interval has passed and reloaded when its size or modification time changed.
+public class EmbeddedImageCache {
+    public static final String IMAGES_DIRECTORY = "images";
+
+    private static final String ENCODING = "base64";
+
+    private final Logger logger = LoggerFactory.getLogger(EmbeddedImageCache.class);
+
+    private final long checkIntervalMillis;
+
+    private final ConcurrentMap<String, CachedImage> images = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong loadCount = new AtomicLong();
+
+    public EmbeddedImageCache(final long checkIntervalMillis) {
+        this.checkIntervalMillis = checkIntervalMillis;
+    }
+
+    // the path is used as given when the file exists and taken relative to the images directory of the app otherwise
+    public static File resolveImageFile(final String imageFilePath) {
+        final File imageFile = new File(imageFilePath);
+        if (imageFile.exists()) {
+            return imageFile;
+        }
+        final String appHomeDir = System.getProperty(EmailExtensionConstants.SYSTEM_PROPERTY_KEY_APP_HOME);
+        if (StringUtils.isNotBlank(appHomeDir)) {
+            final File imagesDirImageFile = new File(new File(appHomeDir, IMAGES_DIRECTORY), imageFilePath);
+            if (imagesDirImageFile.exists()) {
+                try {
+                    return imagesDirImageFile.getCanonicalFile();
+                } catch (final IOException e) {
+                    return imagesDirImageFile;
+                }
+            }
+        }
+        return imageFile;
+    }
+
+    public MimeBodyPart createBodyPart(final String imageFilePath, final String contentId) throws MessagingException {
+        final CachedImage image = getImage(imageFilePath);
+        final InternetHeaders headers = new InternetHeaders();
+        headers.setHeader("Content-Type", image.contentType);
+        headers.setHeader("Content-Transfer-Encoding", ENCODING);
+        headers.setHeader("Content-ID", contentId);
+        return new MimeBodyPart(headers, image.encodedContent);
+    }
+
+    public int preload(final Collection<String> imageFilePaths) {
+        int loaded = 0;
+        for (final String imageFilePath : imageFilePaths) {
+            try {
+                getImage(imageFilePath);
+                loaded++;
+            } catch (final MessagingException e) {
+                logger.error("Could not load the embedded image {}", imageFilePath, e);
+            }
+        }
+        return loaded;
+    }
+
+    public void invalidateAll() {
+        images.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getLoadCount() {
+        return loadCount.get();
+    }
+
+    private CachedImage getImage(final String imageFilePath) throws MessagingException {
+        final long now = System.currentTimeMillis();
+        final CachedImage image = images.get(imageFilePath);
+        if (image != null && now - image.checkedAt < checkIntervalMillis) {
+            hitCount.incrementAndGet();
+            return image;
+        }
+        try {
+            return images.compute(imageFilePath, (key, current) -> refresh(key, current, now));
+        } catch (final UncheckedIOException e) {
+            throw new MessagingException("Could not load the embedded image " + imageFilePath, e.getCause());
+        }
+    }
+
+    private CachedImage refresh(final String imageFilePath, final CachedImage current, final long now) {
+        final File imageFile = current != null ? current.file : resolveImageFile(imageFilePath);
+        if (current != null && current.lastModified == imageFile.lastModified() && current.length == imageFile.length()) {
+            current.checkedAt = now;
+            hitCount.incrementAndGet();
+            return current;
+        }
+        try {
+            final CachedImage image = load(imageFile, now);
+            loadCount.incrementAndGet();
+            return image;
+        } catch (final IOException | MessagingException e) {
+            throw new UncheckedIOException(e instanceof IOException ? (IOException) e : new IOException(e));
+        }
+    }
+
+    private CachedImage load(final File imageFile, final long now) throws IOException, MessagingException {
+        // read the stamps first so a change made while reading is picked up by the next check
+        final long lastModified = imageFile.lastModified();
+        final long length = imageFile.length();
+        final byte[] content = FileUtils.readFileToByteArray(imageFile);
+        final ByteArrayOutputStream encodedContent = new ByteArrayOutputStream(content.length / 3 * 4 + content.length / 57 * 2 + 8);
+        try (final OutputStream encoder = MimeUtility.encode(encodedContent, ENCODING)) {
+            encoder.write(content);
+        }
+        final String contentType = FileTypeMap.getDefaultFileTypeMap().getContentType(imageFile);
+        return new CachedImage(imageFile, lastModified, length, contentType, encodedContent.toByteArray(), now);
+    }
+
+    private static class CachedImage {
+        private final File file;
+
+        private final long lastModified;
+
+        private final long length;
+
+        private final String contentType;
+
+        private final byte[] encodedContent;
+
+        private volatile long checkedAt;
+
+        public CachedImage(final File file, final long lastModified, final long length, final String contentType,
+                final byte[] encodedContent, final long checkedAt) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.contentType = contentType;
+            this.encodedContent = encodedContent;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
@@ -26,6 +26,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
@@ -60,6 +61,58 @@ public class ExtensionProperties {
 
     public final static String EMAIL_TEMPLATE_DIRECTORY = "hub.email.template.directory";
 
+    public final static String EMAIL_TEMPLATE_UPDATE_CHECK = "hub.email.template.update.check";
+
+    public final static String EMAIL_TEMPLATE_TEXT_MODE = "hub.email.template.text.mode";
+
+    public final static String RENDER_CACHE_SIZE_KEY = "hub.email.render.cache.size";
+
+    public final static String RENDER_CACHE_EXPIRE_KEY = "hub.email.render.cache.expire.seconds";
+
+    public final static String FRAGMENT_CACHE_SIZE_KEY = "hub.email.fragment.cache.size";
+
+    public final static String GROUP_DELIVERY_ENABLED_KEY = "hub.email.group.delivery.enabled";
+
+    public final static String GROUP_MAX_RECIPIENTS_KEY = "hub.email.group.max.recipients";
+
+    public final static String SMTP_POOL_MAX_IDLE_KEY = "hub.email.smtp.pool.max.idle";
+
+    public final static String SMTP_POOL_MAX_MESSAGES_KEY = "hub.email.smtp.pool.max.messages";
+
+    public final static String SMTP_POOL_IDLE_TIMEOUT_KEY = "hub.email.smtp.pool.idle.timeout.seconds";
+
+    public final static String SMTP_POOL_VALIDATE_AFTER_KEY = "hub.email.smtp.pool.validate.after.seconds";
+
+    public final static String RATE_MESSAGES_PER_SECOND_KEY = "hub.email.rate.messages.per.second";
+
+    public final static String RATE_BYTES_PER_SECOND_KEY = "hub.email.rate.bytes.per.second";
+
+    public final static String RATE_MAX_CONCURRENCY_KEY = "hub.email.rate.max.concurrency";
+
+    public final static String SEND_THREADS_KEY = "hub.email.send.threads";
+
+    public final static String SEND_QUEUE_CAPACITY_KEY = "hub.email.send.queue.capacity";
+
+    public final static String SEND_QUEUE_FULL_POLICY_KEY = "hub.email.send.queue.full.policy";
+
+    public final static String SEND_QUEUE_BLOCK_TIMEOUT_KEY = "hub.email.send.queue.block.timeout.seconds";
+
+    public final static String OUTBOX_ENABLED_KEY = "hub.email.outbox.enabled";
+
+    public final static String OUTBOX_DIRECTORY_KEY = "hub.email.outbox.directory";
+
+    public final static String RETRY_MAX_ATTEMPTS_KEY = "hub.email.retry.max.attempts";
+
+    public final static String RETRY_INITIAL_DELAY_KEY = "hub.email.retry.initial.delay.seconds";
+
+    public final static String RETRY_MAX_DELAY_KEY = "hub.email.retry.max.delay.seconds";
+
+    public final static String RETRY_THREADS_KEY = "hub.email.retry.threads";
+
+    public final static String DEAD_LETTER_DIRECTORY_KEY = "hub.email.dead.letter.directory";
+
+    public final static String DEAD_LETTER_REPLAY_KEY = "hub.email.dead.letter.replay.on.start";
+
     // common javamail properties
     public static final String JAVAMAIL_HOST_KEY = "mail.smtp.host";
 
@@ -184,6 +237,18 @@ public class ExtensionProperties {
         return getSuppliedJavamailConfigProperties();
     }
 
+    // the session settings that may be written to disk; the SMTP user and password are taken from the configuration again
+    // when the email is read back
+    public Map<String, String> getPersistablePropertiesForSession() {
+        final Map<String, String> persistableProperties = new HashMap<>(getPropertiesForSession());
+        persistableProperties.keySet().removeIf(ExtensionProperties::isCredentialKey);
+        return persistableProperties;
+    }
+
+    public static boolean isCredentialKey(final String javamailKey) {
+        return javamailKey.endsWith(".user") || javamailKey.endsWith(".password");
+    }
+
     public String getHost() {
         return getSuppliedJavamailConfigProperties().get(JAVAMAIL_HOST_KEY);
     }
@@ -260,6 +325,115 @@ public class ExtensionProperties {
         return appProperties.getProperty(EMAIL_TEMPLATE_DIRECTORY);
     }
 
+    public boolean isEmailTemplateUpdateCheck() {
+        return !"false".equalsIgnoreCase(StringUtils.trim(appProperties.getProperty(EMAIL_TEMPLATE_UPDATE_CHECK)));
+    }
+
+    // a mode set for the template name wins over the one for all templates
+    public String getEmailTemplateTextMode(final String templateName) {
+        final String templateMode = appProperties.getProperty(EMAIL_TEMPLATE_TEXT_MODE + "." + templateName);
+        if (StringUtils.isNotBlank(templateMode)) {
+            return templateMode;
+        }
+        return appProperties.getProperty(EMAIL_TEMPLATE_TEXT_MODE);
+    }
+
+    public int getRenderCacheSize() {
+        return NumberUtils.toInt(appProperties.getProperty(RENDER_CACHE_SIZE_KEY), 100);
+    }
+
+    public long getRenderCacheExpireMillis() {
+        return getSecondsAsMillis(RENDER_CACHE_EXPIRE_KEY, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    public int getFragmentCacheSize() {
+        return NumberUtils.toInt(appProperties.getProperty(FRAGMENT_CACHE_SIZE_KEY), 1000);
+    }
+
+    public boolean isGroupDeliveryEnabled() {
+        return Boolean.parseBoolean(appProperties.getProperty(GROUP_DELIVERY_ENABLED_KEY));
+    }
+
+    public int getGroupMaxRecipients() {
+        return NumberUtils.toInt(appProperties.getProperty(GROUP_MAX_RECIPIENTS_KEY), 50);
+    }
+
+    public int getSmtpPoolMaxIdle() {
+        return NumberUtils.toInt(appProperties.getProperty(SMTP_POOL_MAX_IDLE_KEY), SmtpTransportPool.DEFAULT_MAX_IDLE);
+    }
+
+    public int getSmtpPoolMaxMessages() {
+        return NumberUtils.toInt(appProperties.getProperty(SMTP_POOL_MAX_MESSAGES_KEY), SmtpTransportPool.DEFAULT_MAX_MESSAGES_PER_CONNECTION);
+    }
+
+    public long getSmtpPoolIdleTimeoutMillis() {
+        return getSecondsAsMillis(SMTP_POOL_IDLE_TIMEOUT_KEY, SmtpTransportPool.DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public long getSmtpPoolValidateAfterMillis() {
+        return getSecondsAsMillis(SMTP_POOL_VALIDATE_AFTER_KEY, SmtpTransportPool.DEFAULT_VALIDATE_AFTER_MILLIS);
+    }
+
+    public double getRateMessagesPerSecond() {
+        return NumberUtils.toDouble(appProperties.getProperty(RATE_MESSAGES_PER_SECOND_KEY), 0);
+    }
+
+    public double getRateBytesPerSecond() {
+        return NumberUtils.toDouble(appProperties.getProperty(RATE_BYTES_PER_SECOND_KEY), 0);
+    }
+
+    public int getRateMaxConcurrency() {
+        return NumberUtils.toInt(appProperties.getProperty(RATE_MAX_CONCURRENCY_KEY), getSendThreads());
+    }
+
+    public int getSendThreads() {
+        return NumberUtils.toInt(appProperties.getProperty(SEND_THREADS_KEY), 2);
+    }
+
+    public int getSendQueueCapacity() {
+        return NumberUtils.toInt(appProperties.getProperty(SEND_QUEUE_CAPACITY_KEY), 100);
+    }
+
+    public String getSendQueueFullPolicy() {
+        return appProperties.getProperty(SEND_QUEUE_FULL_POLICY_KEY);
+    }
+
+    public long getSendQueueBlockTimeoutMillis() {
+        return getSecondsAsMillis(SEND_QUEUE_BLOCK_TIMEOUT_KEY, TimeUnit.MINUTES.toMillis(5));
+    }
+
+    public boolean isOutboxEnabled() {
+        return Boolean.parseBoolean(appProperties.getProperty(OUTBOX_ENABLED_KEY));
+    }
+
+    public String getOutboxDirectory() {
+        return appProperties.getProperty(OUTBOX_DIRECTORY_KEY);
+    }
+
+    public int getRetryMaxAttempts() {
+        return NumberUtils.toInt(appProperties.getProperty(RETRY_MAX_ATTEMPTS_KEY), 6);
+    }
+
+    public long getRetryInitialDelayMillis() {
+        return getSecondsAsMillis(RETRY_INITIAL_DELAY_KEY, TimeUnit.SECONDS.toMillis(30));
+    }
+
+    public long getRetryMaxDelayMillis() {
+        return getSecondsAsMillis(RETRY_MAX_DELAY_KEY, TimeUnit.MINUTES.toMillis(15));
+    }
+
+    public int getRetryThreads() {
+        return NumberUtils.toInt(appProperties.getProperty(RETRY_THREADS_KEY), 1);
+    }
+
+    public String getDeadLetterDirectory() {
+        return appProperties.getProperty(DEAD_LETTER_DIRECTORY_KEY);
+    }
+
+    public boolean isDeadLetterReplayOnStart() {
+        return Boolean.parseBoolean(appProperties.getProperty(DEAD_LETTER_REPLAY_KEY));
+    }
+
     public List<String> getNotifierClassNames() {
         return notifierClassNames;
     }
@@ -311,4 +485,12 @@ public class ExtensionProperties {
     public String getSSLKeyStoreType() {
         return appProperties.getProperty(EXTENSION_SSL_KEYSTORE_TYPE);
     }
+
+    private long getSecondsAsMillis(final String key, final long defaultMillis) {
+        final String value = appProperties.getProperty(key);
+        if (!NumberUtils.isDigits(value)) {
+            return defaultMillis;
+        }
+        return TimeUnit.SECONDS.toMillis(Long.parseLong(value));
+    }
 }
@@ -21,35 +21,114 @@
  *******************************************************************************/
 package com.blackducksoftware.integration.email.model;
 
+import java.io.IOException;
+
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
-import javax.mail.Transport;
+
+import org.apache.commons.io.output.CountingOutputStream;
+import org.apache.commons.io.output.NullOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.email.model.SmtpTransportPool.PooledTransport;
 
 public class JavaMailWrapper {
+    private final Logger logger = LoggerFactory.getLogger(JavaMailWrapper.class);
+
+    private final SmtpTransportPool transportPool;
+
+    private final SmtpRateLimiter rateLimiter;
+
+    public JavaMailWrapper() {
+        this(new SmtpTransportPool());
+    }
+
+    public JavaMailWrapper(final SmtpTransportPool transportPool) {
+        this(transportPool, null);
+    }
+
+    public JavaMailWrapper(final SmtpTransportPool transportPool, final SmtpRateLimiter rateLimiter) {
+        this.transportPool = transportPool;
+        this.rateLimiter = rateLimiter;
+    }
+
     public void sendMessage(final ExtensionProperties customerProperties, final Session session, final Message message)
             throws MessagingException {
-        if (customerProperties.isAuth()) {
-            sendAuthenticated(customerProperties, message, session);
-        } else {
-            Transport.send(message);
+        if (rateLimiter == null) {
+            send(customerProperties, session, message);
+            return;
+        }
+        rateLimiter.acquire(rateLimiter.isByteRateLimited() ? getSize(message) : 0);
+        Throwable failure = null;
+        try {
+            send(customerProperties, session, message);
+        } catch (final MessagingException | RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            rateLimiter.release(failure);
         }
     }
 
-    private void sendAuthenticated(final ExtensionProperties customerProperties, final Message message,
-            final Session session) throws MessagingException {
-        final String host = customerProperties.getHost();
-        final int port = customerProperties.getPort();
-        final String username = customerProperties.getUsername();
-        final String password = customerProperties.getPassword();
+    public void close() {
+        transportPool.close();
+    }
+
+    public SmtpTransportPool getTransportPool() {
+        return transportPool;
+    }
+
+    public SmtpRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
 
-        final Transport transport = session.getTransport("smtp");
+    private void send(final ExtensionProperties customerProperties, final Session session, final Message message)
+            throws MessagingException {
+        final PooledTransport pooledTransport = transportPool.borrow(customerProperties, session);
         try {
-            transport.connect(host, port, username, password);
-            transport.sendMessage(message, message.getAllRecipients());
-        } finally {
-            transport.close();
+            pooledTransport.sendMessage(message);
+        } catch (final SendFailedException e) {
+            // the server refused the recipients but the connection itself is still good
+            transportPool.release(pooledTransport);
+            throw e;
+        } catch (final MessagingException e) {
+            transportPool.discard(pooledTransport);
+            if (!pooledTransport.isReused()) {
+                throw e;
+            }
+            // the server may have dropped a connection that passed its health check, try once more on a new one
+            logger.debug("Sending over a reused SMTP connection failed, reconnecting", e);
+            sendOnNewConnection(customerProperties, session, message);
+            return;
         }
+        transportPool.release(pooledTransport);
     }
 
+    private long getSize(final Message message) throws MessagingException {
+        final CountingOutputStream output = new CountingOutputStream(NullOutputStream.NULL_OUTPUT_STREAM);
+        try {
+            message.writeTo(output);
+        } catch (final IOException e) {
+            throw new MessagingException("Could not measure the message", e);
+        }
+        return output.getByteCount();
+    }
+
+    private void sendOnNewConnection(final ExtensionProperties customerProperties, final Session session, final Message message)
+            throws MessagingException {
+        final PooledTransport pooledTransport = transportPool.connect(customerProperties, session);
+        try {
+            pooledTransport.sendMessage(message);
+        } catch (final SendFailedException e) {
+            transportPool.release(pooledTransport);
+            throw e;
+        } catch (final MessagingException e) {
+            transportPool.discard(pooledTransport);
+            throw e;
+        }
+        transportPool.release(pooledTransport);
+    }
 }
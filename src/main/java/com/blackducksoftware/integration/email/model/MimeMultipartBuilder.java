@@ -21,8 +21,6 @@
  *******************************************************************************/
 package com.blackducksoftware.integration.email.model;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -38,8 +36,6 @@ import javax.mail.internet.MimeMultipart;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 
-import com.blackducksoftware.integration.email.EmailExtensionConstants;
-
 public class MimeMultipartBuilder {
     private String html;
 
@@ -49,11 +45,22 @@ public class MimeMultipartBuilder {
 
     private final List<String> attachmentFilePaths = new ArrayList<>();
 
+    private final EmbeddedImageCache imageCache;
+
+    private MimeBodyPart emailBodyPart;
+
+    public MimeMultipartBuilder() {
+        this(null);
+    }
+
+    public MimeMultipartBuilder(final EmbeddedImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
     public MimeMultipart build() throws MessagingException {
         final MimeMultipart email = new MimeMultipart("mixed");
 
-        final MimeBodyPart emailBodyPart = buildEmailBodyPart();
-        email.addBodyPart(emailBodyPart);
+        email.addBodyPart(emailBodyPart != null ? emailBodyPart : buildEmailBodyPart());
         addAttachmentBodyParts(email);
 
         return email;
@@ -67,6 +74,11 @@ public class MimeMultipartBuilder {
         this.text = text;
     }
 
+    // a body made earlier, sent instead of the html, text and images
+    public void addEmailBodyPart(final MimeBodyPart emailBodyPart) {
+        this.emailBodyPart = emailBodyPart;
+    }
+
     public void addEmbeddedImages(final Map<String, String> contentIdsToFilePaths) {
         this.contentIdsToFilePaths.putAll(contentIdsToFilePaths);
     }
@@ -102,25 +114,12 @@ public class MimeMultipartBuilder {
         htmlContent.addBodyPart(htmlPart);
 
         for (final Map.Entry<String, String> entry : contentIdsToFilePaths.entrySet()) {
-            final MimeBodyPart embeddedImageBodyPart = new MimeBodyPart();
-            String imageFilePath = entry.getValue();
-            File imageFile = new File(imageFilePath);
-
-            if (!imageFile.exists()) {
-                final File imagesDir = findImagesDirectory();
-                if (imagesDir != null) {
-                    imageFile = new File(imagesDir, imageFilePath);
-                    if (imageFile.exists()) {
-                        try {
-                            imageFilePath = imageFile.getCanonicalPath();
-                        } catch (final IOException e) {
-                            // ignore let freemarker fail and log the exception
-                            // up the chain when it cannot find the image file
-                        }
-                    }
-                }
+            if (imageCache != null) {
+                htmlContent.addBodyPart(imageCache.createBodyPart(entry.getValue(), entry.getKey()));
+                continue;
             }
-            final DataSource fds = new FileDataSource(imageFilePath);
+            final MimeBodyPart embeddedImageBodyPart = new MimeBodyPart();
+            final DataSource fds = new FileDataSource(EmbeddedImageCache.resolveImageFile(entry.getValue()));
             embeddedImageBodyPart.setDataHandler(new DataHandler(fds));
             embeddedImageBodyPart.setHeader("Content-ID", entry.getKey());
             htmlContent.addBodyPart(embeddedImageBodyPart);
@@ -146,18 +145,4 @@ public class MimeMultipartBuilder {
             email.addBodyPart(attachmentBodyPart);
         }
     }
-
-    private File findImagesDirectory() {
-        try {
-            File imagesDir = null;
-            final String appHomeDir = System.getProperty(EmailExtensionConstants.SYSTEM_PROPERTY_KEY_APP_HOME);
-            if (StringUtils.isNotBlank(appHomeDir)) {
-                imagesDir = new File(appHomeDir, "images");
-            }
-
-            return imagesDir;
-        } catch (final Exception e) {
-            return null;
-        }
-    }
 }
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import javax.mail.MessagingException;
+
+import com.google.common.util.concurrent.RateLimiter;
+
+// paces the sends so a digest run does not trip the limits of the relay. Token buckets cap the messages and bytes per
+// second, and the number of concurrent sends follows AIMD: it is halved when the relay answers with a throttling reply
+// (421, 450, 451, 452) and grows by one after a full window of successful sends.
+public class SmtpRateLimiter {
+    private static final long DECREASE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    // the reply code of a failed connect only shows up in the message text
+    private static final Pattern THROTTLE_RESPONSE = Pattern.compile("response: (421|45[0-2])\\b");
+
+    private final RateLimiter messageRateLimiter;
+
+    private final RateLimiter byteRateLimiter;
+
+    private final int maxConcurrency;
+
+    private int concurrencyLimit;
+
+    private int inFlight;
+
+    private int successesSinceIncrease;
+
+    private long lastDecrease;
+
+    private final AtomicLong throttledCount = new AtomicLong();
+
+    private final AtomicLong delayedCount = new AtomicLong();
+
+    private final AtomicLong delayMillis = new AtomicLong();
+
+    // a rate of zero or less leaves that rate unlimited
+    public SmtpRateLimiter(final double messagesPerSecond, final double bytesPerSecond, final int maxConcurrency) {
+        messageRateLimiter = messagesPerSecond > 0 ? RateLimiter.create(messagesPerSecond) : null;
+        byteRateLimiter = bytesPerSecond > 0 ? RateLimiter.create(bytesPerSecond) : null;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        concurrencyLimit = this.maxConcurrency;
+    }
+
+    public boolean isByteRateLimited() {
+        return byteRateLimiter != null;
+    }
+
+    // waits for a concurrency slot and for the tokens of the message; every acquire has to be followed by a release
+    public void acquire(final long messageBytes) throws MessagingException {
+        final long start = System.currentTimeMillis();
+        boolean delayed = false;
+        try {
+            synchronized (this) {
+                while (inFlight >= concurrencyLimit) {
+                    delayed = true;
+                    wait();
+                }
+                inFlight++;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting to send", e);
+        }
+        if (messageRateLimiter != null && messageRateLimiter.acquire() > 0) {
+            delayed = true;
+        }
+        if (byteRateLimiter != null && messageBytes > 0 && byteRateLimiter.acquire((int) Math.min(Integer.MAX_VALUE, messageBytes)) > 0) {
+            delayed = true;
+        }
+        if (delayed) {
+            delayedCount.incrementAndGet();
+            delayMillis.addAndGet(System.currentTimeMillis() - start);
+        }
+    }
+
+    // frees the slot of a send and adjusts the concurrency to how it went; failure is null for a successful send
+    public synchronized void release(final Throwable failure) {
+        inFlight--;
+        if (failure == null) {
+            successesSinceIncrease++;
+            if (successesSinceIncrease >= concurrencyLimit && concurrencyLimit < maxConcurrency) {
+                concurrencyLimit++;
+                successesSinceIncrease = 0;
+            }
+        } else if (isThrottled(failure)) {
+            throttledCount.incrementAndGet();
+            // the sends already in flight when the relay pushed back fail together; count that as one signal
+            final long now = System.currentTimeMillis();
+            if (now - lastDecrease >= DECREASE_INTERVAL_MILLIS) {
+                concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+                successesSinceIncrease = 0;
+                lastDecrease = now;
+            }
+        }
+        notifyAll();
+    }
+
+    public boolean isThrottled(final Throwable exception) {
+        final Boolean throttled = SmtpReplyCodes.walkCauses(exception, current -> {
+            final int returnCode = SmtpReplyCodes.getReturnCode(current);
+            if (returnCode > 0) {
+                return returnCode == 421 || returnCode == 450 || returnCode == 451 || returnCode == 452;
+            }
+            if (current.getMessage() != null && THROTTLE_RESPONSE.matcher(current.getMessage()).find()) {
+                return true;
+            }
+            return null;
+        });
+        return Boolean.TRUE.equals(throttled);
+    }
+
+    public synchronized int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public long getThrottledCount() {
+        return throttledCount.get();
+    }
+
+    public long getDelayedCount() {
+        return delayedCount.get();
+    }
+
+    public long getDelayMillis() {
+        return delayMillis.get();
+    }
+}
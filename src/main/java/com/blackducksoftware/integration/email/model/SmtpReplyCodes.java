@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model;
+
+import java.util.function.Function;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+import com.sun.mail.smtp.SMTPSenderFailedException;
+
+// reads the SMTP reply code out of a failed send. JavaMail nests the exception that carries the reply code as the cause
+// or next exception of the one thrown, so the causes are walked as well, up to a fixed depth to stay clear of cycles.
+public class SmtpReplyCodes {
+    public static final int MAX_CAUSE_DEPTH = 10;
+
+    private SmtpReplyCodes() {
+    }
+
+    // the reply code carried by this exception itself, -1 when it has none
+    public static int getReturnCode(final Throwable exception) {
+        if (exception instanceof SMTPSendFailedException) {
+            return ((SMTPSendFailedException) exception).getReturnCode();
+        } else if (exception instanceof SMTPAddressFailedException) {
+            return ((SMTPAddressFailedException) exception).getReturnCode();
+        } else if (exception instanceof SMTPSenderFailedException) {
+            return ((SMTPSenderFailedException) exception).getReturnCode();
+        }
+        return -1;
+    }
+
+    // applies the decision to the exception and then to its causes and returns the first answer that is not null; null
+    // when no level of the chain decided
+    public static <T> T walkCauses(final Throwable exception, final Function<Throwable, T> decision) {
+        Throwable current = exception;
+        int depth = 0;
+        while (current != null && depth++ < MAX_CAUSE_DEPTH) {
+            final T result = decision.apply(current);
+            if (result != null) {
+                return result;
+            }
+            if (current.getCause() == current) {
+                break;
+            }
+            current = current.getCause();
+        }
+        return null;
+    }
+}
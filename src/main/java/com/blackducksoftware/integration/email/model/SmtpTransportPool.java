@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.NoSuchProviderException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+// keeps connected SMTP transports per mail configuration so the TCP, TLS and AUTH handshakes are paid once for many
+// messages instead of once per message. Connections idle for longer than the validation interval are checked with a
+// NOOP before reuse, connections idle for longer than the idle timeout are closed, and a connection is retired after
+// sending the maximum number of messages because many servers limit the messages per session. Closing a connection
+// waits for the QUIT reply, so connections are only closed after the pool lock is released.
+public class SmtpTransportPool {
+    public static final int DEFAULT_MAX_IDLE = 4;
+
+    public static final int DEFAULT_MAX_MESSAGES_PER_CONNECTION = 100;
+
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    public static final long DEFAULT_VALIDATE_AFTER_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    private final int maxIdle;
+
+    private final int maxMessagesPerConnection;
+
+    private final long idleTimeoutMillis;
+
+    private final long validateAfterMillis;
+
+    private final Map<Map<String, String>, Deque<PooledTransport>> idleTransportMap = new HashMap<>();
+
+    private final AtomicLong connectCount = new AtomicLong();
+
+    private final AtomicLong reuseCount = new AtomicLong();
+
+    private final AtomicLong discardCount = new AtomicLong();
+
+    private boolean closed;
+
+    public SmtpTransportPool() {
+        this(DEFAULT_MAX_IDLE, DEFAULT_MAX_MESSAGES_PER_CONNECTION, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_VALIDATE_AFTER_MILLIS);
+    }
+
+    public SmtpTransportPool(final int maxIdle, final int maxMessagesPerConnection, final long idleTimeoutMillis,
+            final long validateAfterMillis) {
+        this.maxIdle = maxIdle;
+        this.maxMessagesPerConnection = maxMessagesPerConnection;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.validateAfterMillis = validateAfterMillis;
+    }
+
+    public PooledTransport borrow(final ExtensionProperties customerProperties, final Session session) throws MessagingException {
+        final Map<String, String> key = new HashMap<>(customerProperties.getPropertiesForSession());
+        PooledTransport pooledTransport;
+        while ((pooledTransport = pollIdle(key)) != null) {
+            if (isUsable(pooledTransport)) {
+                reuseCount.incrementAndGet();
+                return pooledTransport;
+            }
+            discard(pooledTransport);
+        }
+        return connect(key, customerProperties, session);
+    }
+
+    public PooledTransport connect(final ExtensionProperties customerProperties, final Session session) throws MessagingException {
+        return connect(new HashMap<>(customerProperties.getPropertiesForSession()), customerProperties, session);
+    }
+
+    // isConnected costs a NOOP round trip, so a released connection is only checked when it is borrowed after being idle
+    public void release(final PooledTransport pooledTransport) {
+        if (pooledTransport.getMessageCount() >= maxMessagesPerConnection) {
+            discard(pooledTransport);
+            return;
+        }
+        pooledTransport.touch();
+        final List<PooledTransport> expiredTransports = new ArrayList<>();
+        boolean pooled = false;
+        synchronized (idleTransportMap) {
+            if (!closed) {
+                removeExpired(System.currentTimeMillis(), expiredTransports);
+                final Deque<PooledTransport> idleTransports = idleTransportMap.computeIfAbsent(pooledTransport.getKey(), key -> new ArrayDeque<>());
+                if (idleTransports.size() < maxIdle) {
+                    idleTransports.push(pooledTransport);
+                    pooled = true;
+                }
+            }
+        }
+        discardAll(expiredTransports);
+        if (!pooled) {
+            discard(pooledTransport);
+        }
+    }
+
+    public void discard(final PooledTransport pooledTransport) {
+        discardCount.incrementAndGet();
+        close(pooledTransport);
+    }
+
+    public void close() {
+        final List<PooledTransport> idleTransportList = new ArrayList<>();
+        synchronized (idleTransportMap) {
+            closed = true;
+            for (final Deque<PooledTransport> idleTransports : idleTransportMap.values()) {
+                idleTransportList.addAll(idleTransports);
+            }
+            idleTransportMap.clear();
+        }
+        for (final PooledTransport pooledTransport : idleTransportList) {
+            close(pooledTransport);
+        }
+        logger.info("Closed SMTP transport pool. connections {} reused {} discarded {}", connectCount.get(), reuseCount.get(), discardCount.get());
+    }
+
+    public int getIdleCount() {
+        synchronized (idleTransportMap) {
+            int count = 0;
+            for (final Deque<PooledTransport> idleTransports : idleTransportMap.values()) {
+                count += idleTransports.size();
+            }
+            return count;
+        }
+    }
+
+    public long getConnectCount() {
+        return connectCount.get();
+    }
+
+    public long getReuseCount() {
+        return reuseCount.get();
+    }
+
+    public long getDiscardCount() {
+        return discardCount.get();
+    }
+
+    protected Transport createTransport(final Session session) throws NoSuchProviderException {
+        return session.getTransport("smtp");
+    }
+
+    private PooledTransport connect(final Map<String, String> key, final ExtensionProperties customerProperties, final Session session)
+            throws MessagingException {
+        final Transport transport = createTransport(session);
+        if (customerProperties.isAuth()) {
+            transport.connect(customerProperties.getHost(), customerProperties.getPort(), customerProperties.getUsername(),
+                    customerProperties.getPassword());
+        } else {
+            transport.connect();
+        }
+        connectCount.incrementAndGet();
+        logger.debug("Opened SMTP connection to {}:{}", customerProperties.getHost(), customerProperties.getPort());
+        return new PooledTransport(key, transport);
+    }
+
+    private PooledTransport pollIdle(final Map<String, String> key) {
+        final List<PooledTransport> expiredTransports = new ArrayList<>();
+        final PooledTransport pooledTransport;
+        synchronized (idleTransportMap) {
+            removeExpired(System.currentTimeMillis(), expiredTransports);
+            final Deque<PooledTransport> idleTransports = idleTransportMap.get(key);
+            pooledTransport = idleTransports == null ? null : idleTransports.poll();
+        }
+        discardAll(expiredTransports);
+        return pooledTransport;
+    }
+
+    // moves the connections idle for longer than the idle timeout to the expired list; the caller holds the pool lock
+    private void removeExpired(final long now, final List<PooledTransport> expiredTransports) {
+        final Iterator<Deque<PooledTransport>> dequeIterator = idleTransportMap.values().iterator();
+        while (dequeIterator.hasNext()) {
+            final Deque<PooledTransport> idleTransports = dequeIterator.next();
+            final Iterator<PooledTransport> iterator = idleTransports.iterator();
+            while (iterator.hasNext()) {
+                final PooledTransport pooledTransport = iterator.next();
+                if (now - pooledTransport.getLastUsed() > idleTimeoutMillis) {
+                    iterator.remove();
+                    expiredTransports.add(pooledTransport);
+                }
+            }
+            if (idleTransports.isEmpty()) {
+                dequeIterator.remove();
+            }
+        }
+    }
+
+    private void discardAll(final List<PooledTransport> pooledTransports) {
+        for (final PooledTransport pooledTransport : pooledTransports) {
+            discard(pooledTransport);
+        }
+    }
+
+    private boolean isUsable(final PooledTransport pooledTransport) {
+        if (System.currentTimeMillis() - pooledTransport.getLastUsed() < validateAfterMillis) {
+            return true;
+        }
+        // SMTPTransport sends a NOOP here and reports whether the server answered
+        return pooledTransport.getTransport().isConnected();
+    }
+
+    private void close(final PooledTransport pooledTransport) {
+        try {
+            pooledTransport.getTransport().close();
+        } catch (final MessagingException e) {
+            logger.debug("Error closing SMTP connection", e);
+        }
+    }
+
+    public static class PooledTransport {
+        private final Map<String, String> key;
+
+        private final Transport transport;
+
+        private int messageCount;
+
+        private long lastUsed;
+
+        public PooledTransport(final Map<String, String> key, final Transport transport) {
+            this.key = key;
+            this.transport = transport;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        public void sendMessage(final Message message) throws MessagingException {
+            messageCount++;
+            transport.sendMessage(message, message.getAllRecipients());
+        }
+
+        public boolean isReused() {
+            return messageCount > 1;
+        }
+
+        public Map<String, String> getKey() {
+            return key;
+        }
+
+        public Transport getTransport() {
+            return transport;
+        }
+
+        public int getMessageCount() {
+            return messageCount;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+
+        private void touch() {
+            lastUsed = System.currentTimeMillis();
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model.batch;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// symbol table shared by the events of a run. Equal strings and item entries are replaced by a single canonical
+// instance so that the component names, versions and rule names repeated across events are only held once.
+public class ItemEntryTable {
+    // approximate sizes on a 64-bit jvm with compressed references
+    private static final int ITEM_ENTRY_BYTES = 24;
+
+    private static final int STRING_BYTES = 24;
+
+    private static final int CHAR_ARRAY_HEADER_BYTES = 16;
+
+    private final ConcurrentMap<String, String> stringMap = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<ItemEntry, ItemEntry> entryMap = new ConcurrentHashMap<>();
+
+    private final AtomicLong stringReuseCount = new AtomicLong();
+
+    private final AtomicLong entryReuseCount = new AtomicLong();
+
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    public String intern(final String value) {
+        if (value == null) {
+            return null;
+        }
+        final String existing = stringMap.putIfAbsent(value, value);
+        if (existing == null) {
+            return value;
+        }
+        if (existing != value) {
+            stringReuseCount.incrementAndGet();
+            bytesSaved.addAndGet(getStringBytes(value));
+        }
+        return existing;
+    }
+
+    public ItemEntry getEntry(final String key, final String value) {
+        return intern(new ItemEntry(key, value));
+    }
+
+    public ItemEntry intern(final ItemEntry entry) {
+        final ItemEntry existing = entryMap.get(entry);
+        if (existing != null) {
+            if (existing != entry) {
+                entryReuseCount.incrementAndGet();
+                bytesSaved.addAndGet(ITEM_ENTRY_BYTES + getDuplicateBytes(entry.getKey(), existing.getKey())
+                        + getDuplicateBytes(entry.getValue(), existing.getValue()));
+            }
+            return existing;
+        }
+        final ItemEntry canonical = new ItemEntry(intern(entry.getKey()), intern(entry.getValue()));
+        final ItemEntry raced = entryMap.putIfAbsent(canonical, canonical);
+        return raced == null ? canonical : raced;
+    }
+
+    // replaces the entries of the collection in place, keeping their order
+    public void internEntries(final Collection<ItemEntry> entries) {
+        final List<ItemEntry> internedList = new ArrayList<>(entries.size());
+        for (final ItemEntry entry : entries) {
+            internedList.add(intern(entry));
+        }
+        entries.clear();
+        entries.addAll(internedList);
+    }
+
+    public void internStrings(final Collection<String> values) {
+        final List<String> internedList = new ArrayList<>(values.size());
+        for (final String value : values) {
+            internedList.add(intern(value));
+        }
+        values.clear();
+        values.addAll(internedList);
+    }
+
+    public int getStringCount() {
+        return stringMap.size();
+    }
+
+    public int getEntryCount() {
+        return entryMap.size();
+    }
+
+    public long getStringReuseCount() {
+        return stringReuseCount.get();
+    }
+
+    public long getEntryReuseCount() {
+        return entryReuseCount.get();
+    }
+
+    public long getBytesSaved() {
+        return bytesSaved.get();
+    }
+
+    public String getMemoryReport() {
+        return String.format("strings: %d distinct %d reused; item entries: %d distinct %d reused; approximately %d bytes saved",
+                getStringCount(), getStringReuseCount(), getEntryCount(), getEntryReuseCount(), getBytesSaved());
+    }
+
+    private long getDuplicateBytes(final String duplicate, final String canonical) {
+        if (duplicate == null || duplicate == canonical) {
+            return 0;
+        }
+        return getStringBytes(duplicate);
+    }
+
+    private long getStringBytes(final String value) {
+        final long charBytes = CHAR_ARRAY_HEADER_BYTES + 2L * value.length();
+        // objects are aligned to 8 bytes
+        return STRING_BYTES + ((charBytes + 7) / 8) * 8;
+    }
+}
@@ -21,7 +21,10 @@
  *******************************************************************************/
 package com.blackducksoftware.integration.email.notifier;
 
+import java.io.IOException;
+import java.text.ParseException;
 import java.time.DateTimeException;
+import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
@@ -33,28 +36,47 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TimeZone;
 import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.quartz.CronExpression;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.blackducksoftware.integration.email.EmailExtensionConstants;
 import com.blackducksoftware.integration.email.batch.processor.NotificationCategoryEnum;
 import com.blackducksoftware.integration.email.batch.processor.NotificationProcessor;
+import com.blackducksoftware.integration.email.batch.processor.ProjectDataCache;
+import com.blackducksoftware.integration.email.batch.processor.VulnerabilityLookupCache;
 import com.blackducksoftware.integration.email.model.DateRange;
 import com.blackducksoftware.integration.email.model.EmailTarget;
 import com.blackducksoftware.integration.email.model.ExtensionProperties;
+import com.blackducksoftware.integration.email.model.SmtpRateLimiter;
 import com.blackducksoftware.integration.email.model.batch.CategoryData;
+import com.blackducksoftware.integration.email.model.batch.ItemEntryTable;
 import com.blackducksoftware.integration.email.model.batch.ProjectData;
 import com.blackducksoftware.integration.email.service.EmailMessagingService;
+import com.blackducksoftware.integration.email.service.ProjectAssignmentService;
 import com.blackducksoftware.integration.hub.api.user.UserItem;
 import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityRequestService;
 import com.blackducksoftware.integration.hub.dataservice.extension.ExtensionConfigDataService;
 import com.blackducksoftware.integration.hub.dataservice.extension.item.UserConfigItem;
 import com.blackducksoftware.integration.hub.dataservice.notification.NotificationDataService;
 import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 import com.blackducksoftware.integration.hub.service.HubRequestService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public abstract class AbstractDigestNotifier extends AbstractNotifier {
     private static final String KEY_HUB_SERVER_URL = "hub_server_url";
@@ -79,6 +101,10 @@ public abstract class AbstractDigestNotifier extends AbstractNotifier {
 
     public static final String KEY_USER_LAST_NAME = "user_last_name";
 
+    private static final int DEFAULT_USER_THREAD_COUNT = 4;
+
+    private static final int WATERMARK_FLUSH_BATCH = 4;
+
     private final Logger logger = LoggerFactory.getLogger(AbstractDigestNotifier.class);
 
     private final String cronExpression;
@@ -89,6 +115,28 @@ public abstract class AbstractDigestNotifier extends AbstractNotifier {
 
     private final VulnerabilityRequestService vulnerabilityRequestService;
 
+    private final int userThreadCount;
+
+    private final NotificationFetchMode fetchMode;
+
+    private final ProjectAssignmentService projectAssignmentService;
+
+    private final VulnerabilityLookupCache vulnerabilityLookupCache;
+
+    private final long notificationPageMillis;
+
+    private final ExecutorService pagePrefetchExecutor;
+
+    private final NotifierWatermarkStore watermarkStore;
+
+    private volatile boolean digestRunning;
+
+    private final long accumulationIntervalMillis;
+
+    private final DigestAccumulator digestAccumulator;
+
+    private final ReentrantLock accumulationLock = new ReentrantLock();
+
     public AbstractDigestNotifier(final ExtensionProperties extensionProperties,
             final EmailMessagingService emailMessagingService, HubRequestService hubRequestService, VulnerabilityRequestService vulnerabilityRequestService,
             ExtensionConfigDataService extensionConfigDataService,
@@ -101,14 +149,114 @@ public abstract class AbstractDigestNotifier extends AbstractNotifier {
         this.hubRequestService = hubRequestService;
         this.notificationDataService = notificationDataService;
         this.vulnerabilityRequestService = vulnerabilityRequestService;
+        userThreadCount = getUserThreadCount(getExtensionProperties().getNotifierVariableProperties());
+        fetchMode = getFetchMode(getExtensionProperties().getNotifierVariableProperties());
+        projectAssignmentService = new ProjectAssignmentService(hubRequestService);
+        vulnerabilityLookupCache = createVulnerabilityLookupCache(getExtensionProperties().getNotifierVariableProperties());
+        notificationPageMillis = getNotificationPageMillis(getExtensionProperties().getNotifierVariableProperties());
+        pagePrefetchExecutor = createPagePrefetchExecutor(notificationPageMillis);
+        watermarkStore = createWatermarkStore(getExtensionProperties().getNotifierVariableProperties());
+        accumulationIntervalMillis = getAccumulationIntervalMillis(getExtensionProperties().getNotifierVariableProperties());
+        digestAccumulator = accumulationIntervalMillis > 0 ? new DigestAccumulator(notificationDataService, vulnerabilityLookupCache) : null;
     }
 
     public abstract DateRange createDateRange(final ZoneId zone);
 
+    // the window the notifier would use when run at the given time; null when the window does not only depend on the time
+    public DateRange createDateRange(final ZoneId zone, final LocalDateTime currentTime) {
+        return null;
+    }
+
     public abstract String getCategory();
 
+    @Override
+    public long getPollIntervalMilliseconds() {
+        return accumulationIntervalMillis;
+    }
+
+    @Override
+    public void poll() {
+        if (digestAccumulator == null) {
+            return;
+        }
+        // the digest run consumes the accumulated window; a poll has nothing to add while it is running
+        if (!accumulationLock.tryLock()) {
+            logger.debug("Digest run of {} in progress; skipping accumulation", getName());
+            return;
+        }
+        try {
+            final Date pollTime = new Date();
+            final ExtensionProperties globalConfig = createPropertiesFromGlobalConfig();
+            final DateRange nextRange = createNextDateRange(getZoneId(globalConfig), pollTime);
+            if (nextRange == null) {
+                logger.debug("Cannot determine the window of the next {} digest; skipping accumulation", getName());
+                return;
+            }
+            // anything older than the window the next digest run will send can no longer be used
+            digestAccumulator.removeBefore(nextRange.getStart());
+            final Date until = pollTime.before(nextRange.getEnd()) ? pollTime : nextRange.getEnd();
+            final List<UserConfigItem> usersInCategory = createUserListInCategory(getExtensionConfigDataService()
+                    .getUserConfigList(getHubExtensionUri()));
+            final ProjectSubscriptionIndex subscriptionIndex = createSubscriptionIndex(usersInCategory);
+            int notificationCount = 0;
+            for (final UserConfigItem userConfig : usersInCategory) {
+                try {
+                    notificationCount += digestAccumulator.accumulate(userConfig.getUser(), nextRange.getStart(), until, getTriggerSet(userConfig),
+                            subscriptionIndex);
+                } catch (final HubIntegrationException e) {
+                    logger.error("Error accumulating notifications for user {}", userConfig.getUser().getMeta().getHref(), e);
+                }
+            }
+            logger.debug("Accumulated {} notifications for {} users", notificationCount, usersInCategory.size());
+        } catch (final Exception e) {
+            logger.error("Error accumulating notifications", e);
+        } finally {
+            accumulationLock.unlock();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        vulnerabilityLookupCache.shutdown();
+        if (pagePrefetchExecutor != null) {
+            pagePrefetchExecutor.shutdownNow();
+        }
+    }
+
     @Override
     public void run() {
+        accumulationLock.lock();
+        try {
+            digestRunning = true;
+            runDigest();
+        } finally {
+            // the watermarks still waiting in the last batch of the run are written now
+            digestRunning = false;
+            flushWatermarks();
+            accumulationLock.unlock();
+        }
+    }
+
+    private DateRange createNextDateRange(final ZoneId zoneId, final Date pollTime) {
+        if (StringUtils.isBlank(getCronExpression())) {
+            return null;
+        }
+        try {
+            // the notifier manager schedules the cron expression in UTC
+            final CronExpression cron = new CronExpression(getCronExpression());
+            cron.setTimeZone(TimeZone.getTimeZone("UTC"));
+            final Date nextRunTime = cron.getNextValidTimeAfter(pollTime);
+            if (nextRunTime == null) {
+                return null;
+            }
+            return createDateRange(zoneId, LocalDateTime.ofInstant(nextRunTime.toInstant(), ZoneId.systemDefault()));
+        } catch (final ParseException e) {
+            logger.error("Could not parse cron expression {} of {}", getCronExpression(), getName(), e);
+            return null;
+        }
+    }
+
+    private void runDigest() {
         try {
             logger.info("Starting iteration of {} digest email notifier", getName());
             final ExtensionProperties globalConfig = createPropertiesFromGlobalConfig();
@@ -123,48 +271,44 @@ public abstract class AbstractDigestNotifier extends AbstractNotifier {
                 final DateRange dateRange = createDateRange(zoneId);
                 final Date startDate = dateRange.getStart();
                 final Date endDate = dateRange.getEnd();
+                final String hubServerUrl = hubRequestService.getRestConnection().getBaseUrl();
                 logger.info("Getting notification data between start: {} end: {}", startDate, endDate);
                 logger.info("Number of users opted into this email template {}", usersInCategory.size());
-                int filteredUsers = 0;
-                for (final UserConfigItem userConfig : usersInCategory) {
-                    try {
-                        final UserItem userItem = userConfig.getUser();
-                        logger.info("Processing hub user {}", userItem.getMeta().getHref());
-                        final SortedSet<NotificationContentItem> notifications = notificationDataService.getUserNotifications(startDate, endDate,
-                                userItem);
-                        final NotificationProcessor processor = new NotificationProcessor(hubRequestService, vulnerabilityRequestService);
-                        final Collection<ProjectData> projectList = processor.process(notifications);
-                        if (projectList.isEmpty()) {
-                            logger.info("Project Aggregated Data list is empty no email to generate");
-                        } else {
-                            // TODO need to filter out on the user's project
-                            // filter chain pattern make sense?
-                            Collection<ProjectData> projectsDigest = filterUserProjects(projectList, userConfig);
-                            projectsDigest = filterCategories(projectList, userConfig);
-                            if (projectsDigest.isEmpty()) {
-                                filteredUsers++;
-                            } else {
-                                final Map<String, Object> model = new HashMap<>();
-                                model.put(KEY_TOPICS_LIST, projectsDigest);
-                                model.put(KEY_START_DATE, String.valueOf(startDate));
-                                model.put(KEY_END_DATE, String.valueOf(endDate));
-                                model.put(KEY_USER_FIRST_NAME, userConfig.getUser().getFirstName());
-                                model.put(KEY_USER_LAST_NAME, userConfig.getUser().getLastName());
-                                model.put(KEY_NOTIFIER_CATEGORY, getCategory().toUpperCase());
-                                model.put(KEY_HUB_SERVER_URL,
-                                        hubRequestService.getRestConnection().getBaseUrl());
-                                final String emailAddress = userConfig.getUser().getEmail();
-                                final String templateName = getTemplateName(userConfig);
-                                final EmailTarget emailTarget = new EmailTarget(emailAddress, templateName, model);
-                                getEmailMessagingService().sendEmailMessage(emailTarget, globalConfig);
-                            }
-                        }
-
-                    } catch (final Exception e) {
-                        logger.error("Error sending email to user", e);
+                final ProjectNotificationIndex notificationIndex = createNotificationIndex(startDate, endDate);
+                final ProjectDataCache projectDataCache = new ProjectDataCache(vulnerabilityLookupCache);
+                final ProjectSubscriptionIndex subscriptionIndex = createSubscriptionIndex(usersInCategory);
+                logger.info("Number of users following selected projects {}", subscriptionIndex.getSubscriberCount());
+                final AtomicInteger filteredUsers = new AtomicInteger();
+                final AtomicInteger sentEmails = new AtomicInteger();
+                final AtomicInteger queuedEmails = new AtomicInteger();
+                final int threadCount = Math.min(userThreadCount, usersInCategory.size());
+                final ExecutorService executorService = createUserExecutorService(threadCount);
+                try {
+                    final List<Future<?>> userFutureList = new ArrayList<>(usersInCategory.size());
+                    for (final UserConfigItem userConfig : usersInCategory) {
+                        userFutureList.add(executorService.submit(() -> processUser(userConfig, globalConfig, startDate, endDate, hubServerUrl,
+                                notificationIndex, projectDataCache, subscriptionIndex, filteredUsers, sentEmails, queuedEmails)));
                     }
+                    waitForFutures(userFutureList);
+                } finally {
+                    executorService.shutdownNow();
+                    final int groupMessages = getEmailMessagingService().flushGroups();
+                    if (groupMessages > 0) {
+                        logger.info("Sent the last {} shared digest messages of the run", groupMessages);
+                    }
+                }
+                logger.info("Number of users filtered out of email template: {}", filteredUsers.get());
+                // deliveries that need a retry finish after the run; they are counted and logged as they complete
+                logger.info("Number of digest emails queued: {} sent so far: {}", queuedEmails.get(), sentEmails.get());
+                final SmtpRateLimiter rateLimiter = getEmailMessagingService().getRateLimiter();
+                if (rateLimiter != null) {
+                    logger.info("SMTP sends throttled by the relay: {} delayed: {} ({} ms) concurrency limit: {}", rateLimiter.getThrottledCount(),
+                            rateLimiter.getDelayedCount(), rateLimiter.getDelayMillis(), rateLimiter.getConcurrencyLimit());
                 }
-                logger.info("Number of users filtered out of email template: {}", filteredUsers);
+                logger.info("Project version digests computed: {} reused: {}", projectDataCache.getMissCount(), projectDataCache.getHitCount());
+                logger.info("Notification item memory {}", projectDataCache.getItemEntryTable().getMemoryReport());
+                logger.info("Vulnerability lookup cache size: {} hits: {} misses: {} evictions: {}", vulnerabilityLookupCache.size(),
+                        vulnerabilityLookupCache.getHitCount(), vulnerabilityLookupCache.getMissCount(), vulnerabilityLookupCache.getEvictionCount());
             }
         } catch (final Exception e) {
             logger.error("Error sending the email", e);
@@ -174,6 +318,284 @@ public abstract class AbstractDigestNotifier extends AbstractNotifier {
                 getName());
     }
 
+    private void processUser(final UserConfigItem userConfig, final ExtensionProperties globalConfig, final Date startDate, final Date endDate,
+            final String hubServerUrl, final ProjectNotificationIndex notificationIndex, final ProjectDataCache projectDataCache,
+            final ProjectSubscriptionIndex subscriptionIndex, final AtomicInteger filteredUsers, final AtomicInteger sentEmails,
+            final AtomicInteger queuedEmails) {
+        try {
+            final UserItem userItem = userConfig.getUser();
+            logger.info("Processing hub user {}", userItem.getMeta().getHref());
+            final Set<NotificationCategoryEnum> triggerSet = getTriggerSet(userConfig);
+            if (triggerSet.isEmpty()) {
+                logger.info("No email triggers selected by user {}", userItem.getMeta().getHref());
+                filteredUsers.incrementAndGet();
+                updateWatermark(userItem, endDate);
+                return;
+            }
+            final Date userStartDate = getUserStartDate(userItem, startDate);
+            if (userStartDate.after(endDate)) {
+                logger.info("Notifications before {} were already processed for user {}", userStartDate, userItem.getMeta().getHref());
+                return;
+            }
+            Collection<ProjectData> projectList = null;
+            if (digestAccumulator != null) {
+                projectList = digestAccumulator.finish(userItem, userStartDate, endDate, triggerSet, subscriptionIndex);
+            }
+            if (projectList != null) {
+                logger.debug("Using the accumulated digest of user {}", userItem.getMeta().getHref());
+            } else if (notificationIndex == null && pagePrefetchExecutor != null) {
+                projectList = processUserPages(userItem, userStartDate, endDate, projectDataCache.getItemEntryTable(), triggerSet, subscriptionIndex);
+            } else {
+                // the run level index only covers the run window; users catching up on missed runs fetch their own
+                final ProjectNotificationIndex userIndex = userStartDate.equals(startDate) ? notificationIndex : null;
+                final SortedSet<NotificationContentItem> notifications = subscriptionIndex.filter(userItem.getMeta().getHref(),
+                        getUserNotifications(userItem, userStartDate, endDate, userIndex));
+                projectList = projectDataCache.process(notifications, triggerSet);
+            }
+            if (projectList.isEmpty()) {
+                logger.info("Project Aggregated Data list is empty no email to generate");
+            } else {
+                // the notifications were already narrowed down before processing; this catches accumulated digests that were
+                // built before the user changed the projects or triggers
+                Collection<ProjectData> projectsDigest = filterUserProjects(projectList, userItem, subscriptionIndex);
+                projectsDigest = filterCategories(projectsDigest, userConfig);
+                if (projectsDigest.isEmpty()) {
+                    filteredUsers.incrementAndGet();
+                } else {
+                    final Map<String, Object> model = new HashMap<>();
+                    model.put(KEY_TOPICS_LIST, projectsDigest);
+                    model.put(KEY_START_DATE, String.valueOf(userStartDate));
+                    model.put(KEY_END_DATE, String.valueOf(endDate));
+                    model.put(KEY_USER_FIRST_NAME, userConfig.getUser().getFirstName());
+                    model.put(KEY_USER_LAST_NAME, userConfig.getUser().getLastName());
+                    model.put(KEY_NOTIFIER_CATEGORY, getCategory().toUpperCase());
+                    model.put(KEY_HUB_SERVER_URL, hubServerUrl);
+                    final String emailAddress = userConfig.getUser().getEmail();
+                    final String templateName = getTemplateName(userConfig);
+                    final EmailTarget emailTarget = new EmailTarget(emailAddress, templateName, model);
+                    final boolean grouped = getEmailMessagingService().isGroupDelivery() && isGroupDeliveryAllowed(userConfig);
+                    final CompletableFuture<Void> delivery = grouped
+                            ? getEmailMessagingService().sendGroupedEmailMessageAsync(emailTarget, globalConfig)
+                            : getEmailMessagingService().sendEmailMessageAsync(emailTarget, globalConfig);
+                    // a grouped email only reaches the outbox when its group is sent
+                    final boolean spooled = getEmailMessagingService().hasOutbox() && !grouped;
+                    if (spooled) {
+                        // the email is in the outbox and is delivered even if the process stops now
+                        updateWatermark(userItem, endDate);
+                    }
+                    // otherwise the watermark only moves once the mail server accepted the email
+                    queuedEmails.incrementAndGet();
+                    delivery.whenComplete((result, exception) -> {
+                        if (exception != null) {
+                            logger.error("Error sending email to user {}", userItem.getMeta().getHref(), exception);
+                            return;
+                        }
+                        sentEmails.incrementAndGet();
+                        if (!spooled) {
+                            updateWatermark(userItem, endDate);
+                        }
+                    });
+                    return;
+                }
+            }
+            updateWatermark(userItem, endDate);
+        } catch (final Exception e) {
+            logger.error("Error sending email to user", e);
+        }
+    }
+
+    private Date getUserStartDate(final UserItem userItem, final Date startDate) {
+        if (watermarkStore == null) {
+            return startDate;
+        }
+        final Date watermark = watermarkStore.getWatermark(userItem.getMeta().getHref());
+        if (watermark == null) {
+            return startDate;
+        }
+        return watermark;
+    }
+
+    // the watermark is the start of the next window so that a user who is up to date starts exactly at the run window and
+    // can use the run level notification index and the accumulated digests. During a run the watermarks are written every
+    // few emails so a crash only resends the last batch; deliveries completing after the run are written right away.
+    private void updateWatermark(final UserItem userItem, final Date endDate) {
+        if (watermarkStore != null) {
+            watermarkStore.setWatermark(userItem.getMeta().getHref(), new Date(endDate.getTime() + 1));
+            flushWatermarks(digestRunning ? WATERMARK_FLUSH_BATCH : 1);
+        }
+    }
+
+    private void flushWatermarks() {
+        flushWatermarks(1);
+    }
+
+    private void flushWatermarks(final int maxPending) {
+        if (watermarkStore != null) {
+            try {
+                watermarkStore.flush(maxPending);
+            } catch (final IOException e) {
+                logger.error("Could not save the watermarks of {}", getName(), e);
+            }
+        }
+    }
+
+    private ProjectNotificationIndex createNotificationIndex(final Date startDate, final Date endDate) throws HubIntegrationException {
+        if (fetchMode != NotificationFetchMode.RUN) {
+            return null;
+        }
+        final SortedSet<NotificationContentItem> notifications = notificationDataService.getAllNotifications(startDate, endDate);
+        final ProjectNotificationIndex notificationIndex = new ProjectNotificationIndex(notifications);
+        logger.info("Fetched {} notifications for {} projects", notificationIndex.getNotificationCount(), notificationIndex.getProjectCount());
+        return notificationIndex;
+    }
+
+    private SortedSet<NotificationContentItem> getUserNotifications(final UserItem userItem, final Date startDate, final Date endDate,
+            final ProjectNotificationIndex notificationIndex) throws HubIntegrationException {
+        if (notificationIndex != null) {
+            try {
+                final Set<String> projectUrls = projectAssignmentService.getAssignedProjectUrls(userItem);
+                return notificationIndex.getNotifications(projectUrls);
+            } catch (final HubIntegrationException e) {
+                logger.error("Could not get the projects assigned to user {}; fetching the user notifications", userItem.getMeta().getHref(), e);
+            }
+        }
+        return notificationDataService.getUserNotifications(startDate, endDate, userItem);
+    }
+
+    private Collection<ProjectData> processUserPages(final UserItem userItem, final Date startDate, final Date endDate,
+            final ItemEntryTable itemEntryTable, final Set<NotificationCategoryEnum> triggerSet, final ProjectSubscriptionIndex subscriptionIndex)
+            throws HubIntegrationException, InterruptedException {
+        final NotificationProcessor processor = new NotificationProcessor(vulnerabilityLookupCache, itemEntryTable, triggerSet);
+        int pageCount = 0;
+        int notificationCount = 0;
+        try (NotificationPageReader pageReader = new NotificationPageReader(notificationDataService, userItem, startDate, endDate,
+                notificationPageMillis, pagePrefetchExecutor)) {
+            while (pageReader.hasNextPage()) {
+                final SortedSet<NotificationContentItem> page = subscriptionIndex.filter(userItem.getMeta().getHref(), pageReader.nextPage());
+                processor.addPage(page);
+                pageCount++;
+                notificationCount += page.size();
+            }
+        }
+        logger.debug("Processed {} notifications in {} pages for user {}", notificationCount, pageCount, userItem.getMeta().getHref());
+        return processor.finishPages();
+    }
+
+    private void waitForFutures(final List<Future<?>> futureList) {
+        for (final Future<?> future : futureList) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                logger.error("Interrupted waiting for users to be processed", e);
+                Thread.currentThread().interrupt();
+                return;
+            } catch (final ExecutionException e) {
+                logger.error("Error sending email to user", e.getCause());
+            }
+        }
+    }
+
+    private ExecutorService createUserExecutorService(final int threadCount) {
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(getNotifierPropertyKey() + "-user-%d").setDaemon(true).build();
+        return Executors.newFixedThreadPool(Math.max(1, threadCount), threadFactory);
+    }
+
+    private String getNotifierVariable(final Map<String, String> notifierVariableMap, final String name) {
+        final String value = notifierVariableMap.get(getNotifierPropertyKey() + "." + name);
+        if (StringUtils.isNotBlank(value)) {
+            return value;
+        }
+        return notifierVariableMap.get("all." + name);
+    }
+
+    private long getLongNotifierVariable(final Map<String, String> notifierVariableMap, final String name, final long defaultValue) {
+        final String value = StringUtils.trimToNull(getNotifierVariable(notifierVariableMap, name));
+        final long longValue = NumberUtils.toLong(value, defaultValue);
+        if (longValue < 1) {
+            logger.error("Invalid value {} for notifier variable {}; using {}", value, name, defaultValue);
+            return defaultValue;
+        }
+        return longValue;
+    }
+
+    private VulnerabilityLookupCache createVulnerabilityLookupCache(final Map<String, String> notifierVariableMap) {
+        final long maximumSize = getLongNotifierVariable(notifierVariableMap, "vulnerability.cache.size",
+                VulnerabilityLookupCache.DEFAULT_MAXIMUM_SIZE);
+        final long expirationMinutes = getLongNotifierVariable(notifierVariableMap, "vulnerability.cache.expiration.minutes",
+                VulnerabilityLookupCache.DEFAULT_EXPIRATION_MINUTES);
+        final int lookupThreads = (int) getLongNotifierVariable(notifierVariableMap, "vulnerability.lookup.threads",
+                VulnerabilityLookupCache.DEFAULT_LOOKUP_THREADS);
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(getNotifierPropertyKey() + "-vulnerability-%d").setDaemon(true)
+                .build();
+        final ExecutorService lookupExecutor = Executors.newFixedThreadPool(lookupThreads, threadFactory);
+        return new VulnerabilityLookupCache(hubRequestService, vulnerabilityRequestService, maximumSize, expirationMinutes, lookupExecutor);
+    }
+
+    private long getNotificationPageMillis(final Map<String, String> notifierVariableMap) {
+        final String pageHoursValue = StringUtils.trimToNull(getNotifierVariable(notifierVariableMap, "notification.page.hours"));
+        if (pageHoursValue == null) {
+            return 0;
+        }
+        final long pageHours = NumberUtils.toLong(pageHoursValue, 0);
+        if (pageHours < 1) {
+            logger.error("Invalid notification page size {} hours; reading the whole window at once", pageHoursValue);
+            return 0;
+        }
+        return TimeUnit.HOURS.toMillis(pageHours);
+    }
+
+    private ExecutorService createPagePrefetchExecutor(final long pageMillis) {
+        if (pageMillis < 1) {
+            return null;
+        }
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat(getNotifierPropertyKey() + "-page-%d").setDaemon(true).build();
+        return Executors.newCachedThreadPool(threadFactory);
+    }
+
+    private NotifierWatermarkStore createWatermarkStore(final Map<String, String> notifierVariableMap) {
+        final String watermarkValue = StringUtils.trimToNull(getNotifierVariable(notifierVariableMap, "notification.watermark"));
+        if (!Boolean.parseBoolean(watermarkValue)) {
+            return null;
+        }
+        return new NotifierWatermarkStore(getNotifierPropertyKey());
+    }
+
+    private long getAccumulationIntervalMillis(final Map<String, String> notifierVariableMap) {
+        final String intervalValue = StringUtils.trimToNull(getNotifierVariable(notifierVariableMap, "accumulation.interval.minutes"));
+        if (intervalValue == null) {
+            return 0;
+        }
+        final long intervalMinutes = NumberUtils.toLong(intervalValue, 0);
+        if (intervalMinutes < 1) {
+            logger.error("Invalid accumulation interval {} minutes; notifications are fetched at digest time", intervalValue);
+            return 0;
+        }
+        return TimeUnit.MINUTES.toMillis(intervalMinutes);
+    }
+
+    private int getUserThreadCount(final Map<String, String> notifierVariableMap) {
+        final String threadCountValue = getNotifierVariable(notifierVariableMap, "user.threads");
+        final int threadCount = NumberUtils.toInt(StringUtils.trimToNull(threadCountValue), DEFAULT_USER_THREAD_COUNT);
+        if (threadCount < 1) {
+            logger.error("Invalid user thread count {}; using {}", threadCountValue, DEFAULT_USER_THREAD_COUNT);
+            return DEFAULT_USER_THREAD_COUNT;
+        }
+        return threadCount;
+    }
+
+    private NotificationFetchMode getFetchMode(final Map<String, String> notifierVariableMap) {
+        final String fetchModeValue = StringUtils.trimToNull(getNotifierVariable(notifierVariableMap, "notification.fetch.mode"));
+        if (fetchModeValue == null) {
+            return NotificationFetchMode.USER;
+        }
+        try {
+            return NotificationFetchMode.valueOf(fetchModeValue.toUpperCase());
+        } catch (final IllegalArgumentException ex) {
+            logger.error("Could not parse notification fetch mode {}; fetching notifications per user", fetchModeValue, ex);
+            return NotificationFetchMode.USER;
+        }
+    }
+
     private ZoneId getZoneId(final ExtensionProperties globalConfig) {
         final ZoneId defaultZoneId = ZoneId.ofOffset("UTC", ZoneOffset.UTC);
 
@@ -196,13 +618,33 @@ public abstract class AbstractDigestNotifier extends AbstractNotifier {
         }
     }
 
-    private Collection<ProjectData> filterUserProjects(final Collection<ProjectData> projectList,
-            final UserConfigItem userConfig) {
+    private Collection<ProjectData> filterUserProjects(final Collection<ProjectData> projectList, final UserItem userItem,
+            final ProjectSubscriptionIndex subscriptionIndex) {
+        final String userKey = userItem.getMeta().getHref();
+        if (!subscriptionIndex.hasSubscription(userKey)) {
+            return projectList;
+        }
         final List<ProjectData> filteredList = new ArrayList<>(projectList.size());
-
+        for (final ProjectData projectData : projectList) {
+            if (subscriptionIndex.isSubscribed(userKey, projectData.getProjectName(), projectData.getProjectVersion())) {
+                filteredList.add(projectData);
+            }
+        }
         return filteredList;
     }
 
+    private ProjectSubscriptionIndex createSubscriptionIndex(final List<UserConfigItem> userConfigList) {
+        final ProjectSubscriptionIndex subscriptionIndex = new ProjectSubscriptionIndex();
+        for (final UserConfigItem userConfig : userConfigList) {
+            final List<String> projectEntries = new ArrayList<>();
+            for (final String value : getConfigValueList(userConfig, EmailExtensionConstants.CONFIG_KEY_PROJECTS)) {
+                projectEntries.addAll(ProjectSubscriptionIndex.splitEntries(value));
+            }
+            subscriptionIndex.subscribe(userConfig.getUser().getMeta().getHref(), projectEntries);
+        }
+        return subscriptionIndex;
+    }
+
     private Collection<ProjectData> filterCategories(final Collection<ProjectData> projectList,
             final UserConfigItem userConfig) {
         final List<ProjectData> filteredList = new ArrayList<>(projectList.size());
@@ -248,6 +690,10 @@ public abstract class AbstractDigestNotifier extends AbstractNotifier {
         return Boolean.parseBoolean(value);
     }
 
+    private boolean isGroupDeliveryAllowed(final UserConfigItem userConfig) {
+        return !"false".equalsIgnoreCase(getSingleConfigValue(userConfig, EmailExtensionConstants.CONFIG_KEY_GROUP_DELIVERY));
+    }
+
     private String getTemplateName(final UserConfigItem userConfig) {
         final String templateName = getSingleConfigValue(userConfig, EmailExtensionConstants.CONFIG_KEY_TEMPLATE_NAME);
         if (StringUtils.isNotBlank(templateName)) {
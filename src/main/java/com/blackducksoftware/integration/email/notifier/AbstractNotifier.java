@@ -67,6 +67,17 @@ public abstract class AbstractNotifier extends TimerTask {
         return 0;
     }
 
+    public long getPollIntervalMilliseconds() {
+        return 0;
+    }
+
+    public void poll() {
+    }
+
+    // releases the threads the notifier owns; called when the notifier manager stops
+    public void shutdown() {
+    }
+
     public ExtensionProperties getExtensionProperties() {
         return extensionProperties;
     }
@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.email.batch.processor.NotificationCategoryEnum;
+import com.blackducksoftware.integration.email.batch.processor.NotificationProcessor;
+import com.blackducksoftware.integration.email.batch.processor.VulnerabilityLookupCache;
+import com.blackducksoftware.integration.email.model.batch.ItemEntryTable;
+import com.blackducksoftware.integration.email.model.batch.ProjectData;
+import com.blackducksoftware.integration.hub.api.user.UserItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.NotificationDataService;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.VulnerabilityContentItem;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+
+// folds the notifications of the digest window that is still open into a running aggregate per user, so that the
+// digest run only has to fetch the tail of the window before rendering. The aggregate lives in memory; after a restart
+// the first poll rebuilds it from the start of the open window.
+public class DigestAccumulator {
+    private final Logger logger = LoggerFactory.getLogger(DigestAccumulator.class);
+
+    private final NotificationDataService notificationDataService;
+
+    private final VulnerabilityLookupCache vulnerabilityLookupCache;
+
+    private final Map<String, Accumulation> accumulationMap = new ConcurrentHashMap<>();
+
+    // the users accumulating the same window share one symbol table
+    private final Map<Long, ItemEntryTable> itemEntryTableMap = new ConcurrentHashMap<>();
+
+    public DigestAccumulator(final NotificationDataService notificationDataService, final VulnerabilityLookupCache vulnerabilityLookupCache) {
+        this.notificationDataService = notificationDataService;
+        this.vulnerabilityLookupCache = vulnerabilityLookupCache;
+    }
+
+    public int accumulate(final UserItem userItem, final Date windowStart, final Date until, final Set<NotificationCategoryEnum> categoryFilter,
+            final ProjectSubscriptionIndex subscriptionIndex) throws HubIntegrationException {
+        final String key = createKey(userItem, windowStart);
+        final Set<String> subscribedEntries = subscriptionIndex.getSubscribedEntries(userItem.getMeta().getHref());
+        // the events a processor produces depend on the categories, so a change of the user's settings restarts the window.
+        // The notifications of projects the user did not follow were left out, so following more projects restarts it too;
+        // following fewer is handled by the project filter of the digest run.
+        final Accumulation accumulation = accumulationMap.compute(key, (k, existing) -> {
+            if (existing == null) {
+                return createAccumulation(windowStart, categoryFilter, subscribedEntries);
+            }
+            if (!existing.getCategoryFilter().equals(categoryFilter)) {
+                logger.debug("Email triggers of user {} changed; restarting the accumulated window", userItem.getMeta().getHref());
+                return createAccumulation(windowStart, categoryFilter, subscribedEntries);
+            }
+            if (ProjectSubscriptionIndex.isWider(subscribedEntries, existing.getSubscribedEntries())) {
+                logger.debug("User {} follows more projects; restarting the accumulated window", userItem.getMeta().getHref());
+                return createAccumulation(windowStart, categoryFilter, subscribedEntries);
+            }
+            return existing;
+        });
+        synchronized (accumulation) {
+            accumulation.setSubscribedEntries(subscribedEntries);
+            if (!accumulation.getAccumulatedUntil().before(until)) {
+                return 0;
+            }
+            final SortedSet<NotificationContentItem> notifications = subscriptionIndex.filter(userItem.getMeta().getHref(),
+                    fetch(userItem, accumulation.getAccumulatedUntil(), until));
+            // a notification created on the poll time is picked up by the next poll
+            final SortedSet<NotificationContentItem> page = new TreeSet<>();
+            for (final NotificationContentItem notification : notifications) {
+                if (notification.getCreatedAt().before(until)) {
+                    page.add(notification);
+                    if (notification instanceof VulnerabilityContentItem && accumulation.isVulnerabilityWanted()) {
+                        vulnerabilityLookupCache.getSeverityIndexAsync(((VulnerabilityContentItem) notification).getComponentVersionUrl());
+                    }
+                }
+            }
+            accumulation.addPage(page, until);
+            return page.size();
+        }
+    }
+
+    public Collection<ProjectData> finish(final UserItem userItem, final Date windowStart, final Date windowEnd,
+            final Set<NotificationCategoryEnum> categoryFilter, final ProjectSubscriptionIndex subscriptionIndex) throws HubIntegrationException {
+        final Accumulation accumulation = accumulationMap.remove(createKey(userItem, windowStart));
+        if (accumulation == null) {
+            return null;
+        }
+        if (!accumulation.getCategoryFilter().equals(categoryFilter)) {
+            logger.debug("Email triggers of user {} changed since the last poll; fetching the whole window", userItem.getMeta().getHref());
+            return null;
+        }
+        synchronized (accumulation) {
+            if (ProjectSubscriptionIndex.isWider(subscriptionIndex.getSubscribedEntries(userItem.getMeta().getHref()),
+                    accumulation.getSubscribedEntries())) {
+                logger.debug("User {} follows more projects since the last poll; fetching the whole window", userItem.getMeta().getHref());
+                return null;
+            }
+            if (accumulation.getAccumulatedUntil().before(windowEnd)) {
+                accumulation.addPage(subscriptionIndex.filter(userItem.getMeta().getHref(), fetch(userItem, accumulation.getAccumulatedUntil(), windowEnd)),
+                        windowEnd);
+            }
+            logger.debug("Using {} accumulated notifications for user {}", accumulation.getNotificationCount(), userItem.getMeta().getHref());
+            return accumulation.finish();
+        }
+    }
+
+    public void removeBefore(final Date windowStart) {
+        final Iterator<Accumulation> iterator = accumulationMap.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().getWindowStart().before(windowStart)) {
+                iterator.remove();
+            }
+        }
+        itemEntryTableMap.keySet().removeIf(time -> time < windowStart.getTime());
+    }
+
+    public int size() {
+        return accumulationMap.size();
+    }
+
+    private Accumulation createAccumulation(final Date windowStart, final Set<NotificationCategoryEnum> categoryFilter,
+            final Set<String> subscribedEntries) {
+        final Accumulation accumulation = new Accumulation(windowStart, vulnerabilityLookupCache,
+                itemEntryTableMap.computeIfAbsent(windowStart.getTime(), time -> new ItemEntryTable()), categoryFilter);
+        accumulation.setSubscribedEntries(subscribedEntries);
+        return accumulation;
+    }
+
+    private SortedSet<NotificationContentItem> fetch(final UserItem userItem, final Date startDate, final Date endDate) throws HubIntegrationException {
+        return notificationDataService.getUserNotifications(startDate, endDate, userItem);
+    }
+
+    private String createKey(final UserItem userItem, final Date windowStart) {
+        return userItem.getMeta().getHref() + "#" + windowStart.getTime();
+    }
+
+    private static class Accumulation {
+        private final Date windowStart;
+
+        private final Set<NotificationCategoryEnum> categoryFilter;
+
+        private final NotificationProcessor processor;
+
+        private final boolean vulnerabilityWanted;
+
+        private Date accumulatedUntil;
+
+        private int notificationCount;
+
+        // the narrowest project entries the window was filtered with; null when nothing was filtered out
+        private Set<String> subscribedEntries;
+
+        public Accumulation(final Date windowStart, final VulnerabilityLookupCache vulnerabilityLookupCache, final ItemEntryTable itemEntryTable,
+                final Set<NotificationCategoryEnum> categoryFilter) {
+            this.windowStart = windowStart;
+            this.accumulatedUntil = windowStart;
+            this.categoryFilter = new HashSet<>(categoryFilter);
+            processor = new NotificationProcessor(vulnerabilityLookupCache, itemEntryTable, categoryFilter);
+            vulnerabilityWanted = categoryFilter.contains(NotificationCategoryEnum.HIGH_VULNERABILITY)
+                    || categoryFilter.contains(NotificationCategoryEnum.MEDIUM_VULNERABILITY)
+                    || categoryFilter.contains(NotificationCategoryEnum.LOW_VULNERABILITY)
+                    || categoryFilter.contains(NotificationCategoryEnum.VULNERABILITY);
+        }
+
+        public void addPage(final SortedSet<NotificationContentItem> page, final Date until) {
+            processor.addPage(page);
+            notificationCount += page.size();
+            accumulatedUntil = until;
+        }
+
+        public Collection<ProjectData> finish() {
+            return processor.finishPages();
+        }
+
+        public Set<NotificationCategoryEnum> getCategoryFilter() {
+            return categoryFilter;
+        }
+
+        public Set<String> getSubscribedEntries() {
+            return subscribedEntries;
+        }
+
+        public void setSubscribedEntries(final Set<String> subscribedEntries) {
+            this.subscribedEntries = subscribedEntries;
+        }
+
+        public boolean isVulnerabilityWanted() {
+            return vulnerabilityWanted;
+        }
+
+        public Date getWindowStart() {
+            return windowStart;
+        }
+
+        public Date getAccumulatedUntil() {
+            return accumulatedUntil;
+        }
+
+        public int getNotificationCount() {
+            return notificationCount;
+        }
+    }
+}
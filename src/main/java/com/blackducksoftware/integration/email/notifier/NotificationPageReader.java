@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import java.util.Date;
+import java.util.NoSuchElementException;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.blackducksoftware.integration.hub.api.user.UserItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.NotificationDataService;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+
+// reads the notifications of a user one time slice at a time, oldest first, so that the add/remove ordering the
+// sub-processors rely on is the same as reading the whole window. The next page is fetched while the current one is processed.
+public class NotificationPageReader implements AutoCloseable {
+    private final NotificationDataService notificationDataService;
+
+    private final UserItem userItem;
+
+    private final long endTime;
+
+    private final long pageMillis;
+
+    private final ExecutorService prefetchExecutor;
+
+    private long pageStart;
+
+    private Future<SortedSet<NotificationContentItem>> prefetchedPage;
+
+    public NotificationPageReader(final NotificationDataService notificationDataService, final UserItem userItem, final Date startDate,
+            final Date endDate, final long pageMillis, final ExecutorService prefetchExecutor) {
+        this.notificationDataService = notificationDataService;
+        this.userItem = userItem;
+        this.endTime = endDate.getTime();
+        this.pageMillis = Math.max(1, pageMillis);
+        this.prefetchExecutor = prefetchExecutor;
+        pageStart = startDate.getTime();
+        if (hasNextPage()) {
+            prefetchedPage = fetchPage(pageStart);
+        }
+    }
+
+    public boolean hasNextPage() {
+        return pageStart < endTime;
+    }
+
+    public SortedSet<NotificationContentItem> nextPage() throws HubIntegrationException, InterruptedException {
+        if (!hasNextPage()) {
+            throw new NoSuchElementException("No notification pages left for user " + userItem.getMeta().getHref());
+        }
+        final Future<SortedSet<NotificationContentItem>> currentPage = prefetchedPage;
+        final long currentEnd = getPageEnd(pageStart);
+        pageStart = currentEnd;
+        prefetchedPage = hasNextPage() ? fetchPage(pageStart) : null;
+
+        final SortedSet<NotificationContentItem> notifications = getPage(currentPage);
+        if (hasNextPage()) {
+            // a notification created exactly on the boundary belongs to the next page
+            return dropBoundaryNotifications(notifications, currentEnd);
+        }
+        return notifications;
+    }
+
+    @Override
+    public void close() {
+        if (prefetchedPage != null) {
+            prefetchedPage.cancel(true);
+            prefetchedPage = null;
+        }
+        pageStart = endTime;
+    }
+
+    private long getPageEnd(final long start) {
+        return Math.min(endTime, start + pageMillis);
+    }
+
+    private Future<SortedSet<NotificationContentItem>> fetchPage(final long start) {
+        final Date startDate = new Date(start);
+        final Date endDate = new Date(getPageEnd(start));
+        return prefetchExecutor.submit(() -> notificationDataService.getUserNotifications(startDate, endDate, userItem));
+    }
+
+    private SortedSet<NotificationContentItem> getPage(final Future<SortedSet<NotificationContentItem>> page)
+            throws HubIntegrationException, InterruptedException {
+        try {
+            return page.get();
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof HubIntegrationException) {
+                throw (HubIntegrationException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new HubIntegrationException(cause);
+        }
+    }
+
+    private SortedSet<NotificationContentItem> dropBoundaryNotifications(final SortedSet<NotificationContentItem> notifications,
+            final long boundary) {
+        final SortedSet<NotificationContentItem> pageNotifications = new TreeSet<>();
+        for (final NotificationContentItem notification : notifications) {
+            if (notification.getCreatedAt().getTime() < boundary) {
+                pageNotifications.add(notification);
+            }
+        }
+        return pageNotifications;
+    }
+}
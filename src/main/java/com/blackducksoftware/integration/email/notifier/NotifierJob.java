@@ -30,13 +30,19 @@ public class NotifierJob implements Job {
 
     public static final String JOB_DATA_KEY_NOTIFIER = "notifier-object-key";
 
+    public static final String JOB_DATA_KEY_POLL = "notifier-poll-key";
+
     @Override
     public void execute(final JobExecutionContext context) throws JobExecutionException {
         final JobDataMap dataMap = context.getJobDetail().getJobDataMap();
 
         if (dataMap.containsKey(JOB_DATA_KEY_NOTIFIER)) {
             final AbstractNotifier notifier = (AbstractNotifier) dataMap.get(JOB_DATA_KEY_NOTIFIER);
-            notifier.run();
+            if (dataMap.getBooleanValue(JOB_DATA_KEY_POLL)) {
+                notifier.poll();
+            } else {
+                notifier.run();
+            }
         }
     }
 }
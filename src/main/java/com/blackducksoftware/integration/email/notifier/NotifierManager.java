@@ -35,6 +35,7 @@ import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
+import org.quartz.SimpleScheduleBuilder;
 import org.quartz.Trigger;
 import org.quartz.TriggerBuilder;
 import org.quartz.impl.StdSchedulerFactory;
@@ -129,6 +130,26 @@ public class NotifierManager {
                 logger.error("Error scheduling notifier to start {}", notifier.getName(), e);
             }
         }
+        if (notifier.getPollIntervalMilliseconds() > 0) {
+            startPolling(notifier);
+        }
+    }
+
+    private void startPolling(final AbstractNotifier notifier) {
+        try {
+            final JobDataMap jobDataMap = new JobDataMap();
+            jobDataMap.put(NotifierJob.JOB_DATA_KEY_NOTIFIER, notifier);
+            jobDataMap.put(NotifierJob.JOB_DATA_KEY_POLL, true);
+            final JobDetail jobDetail = JobBuilder.newJob(NotifierJob.class).setJobData(jobDataMap)
+                    .withIdentity("PollJob-" + notifier.getName()).build();
+            final SimpleScheduleBuilder pollSchedule = SimpleScheduleBuilder.simpleSchedule()
+                    .withIntervalInMilliseconds(notifier.getPollIntervalMilliseconds()).repeatForever();
+            final Trigger trigger = TriggerBuilder.newTrigger().withIdentity("PollTrigger-" + notifier.getName())
+                    .withSchedule(pollSchedule).forJob(jobDetail).startNow().build();
+            scheduler.scheduleJob(jobDetail, trigger);
+        } catch (final SchedulerException e) {
+            logger.error("Error scheduling notifier polling {}", notifier.getName(), e);
+        }
     }
 
     public void stop() {
@@ -141,6 +162,9 @@ public class NotifierManager {
         } catch (final SchedulerException e) {
             logger.error("Exception occurred stopping the scheduler", e);
         }
+        for (final AbstractNotifier notifier : notifierMap.values()) {
+            notifier.shutdown();
+        }
     }
 
     public List<AbstractNotifier> getNotifiers() {
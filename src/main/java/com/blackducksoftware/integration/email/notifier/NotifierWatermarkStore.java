@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Date;
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+
+// keeps the start of the next notification window to process for each user of a notifier. Watermarks are changed in
+// memory and written by flush, either right away or once a number of changes are waiting; the file is replaced
+// atomically so a crash while saving leaves the previous watermarks intact.
+public class NotifierWatermarkStore {
+    public static final String WATERMARK_FILE_PREFIX = "notifier-watermark-";
+
+    private final Logger logger = LoggerFactory.getLogger(NotifierWatermarkStore.class);
+
+    private final String notifierKey;
+
+    private final File watermarkFile;
+
+    private final Properties watermarks = new Properties();
+
+    private int pendingCount;
+
+    public NotifierWatermarkStore(final String notifierKey) {
+        this(notifierKey, getDefaultWatermarkFile(notifierKey));
+    }
+
+    public NotifierWatermarkStore(final String notifierKey, final File watermarkFile) {
+        this.notifierKey = notifierKey;
+        this.watermarkFile = watermarkFile;
+        load();
+    }
+
+    public synchronized Date getWatermark(final String userKey) {
+        final String value = watermarks.getProperty(createKey(userKey));
+        final long time = NumberUtils.toLong(value, -1);
+        if (time < 0) {
+            return null;
+        }
+        return new Date(time);
+    }
+
+    public synchronized void setWatermark(final String userKey, final Date watermark) {
+        watermarks.setProperty(createKey(userKey), String.valueOf(watermark.getTime()));
+        pendingCount++;
+    }
+
+    public synchronized void flush() throws IOException {
+        flush(1);
+    }
+
+    // writes the watermarks once at least maxPending changes have not been saved yet
+    public synchronized void flush(final int maxPending) throws IOException {
+        if (pendingCount > 0 && pendingCount >= maxPending) {
+            persist();
+            pendingCount = 0;
+        }
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingCount;
+    }
+
+    public synchronized int size() {
+        return watermarks.size();
+    }
+
+    public File getWatermarkFile() {
+        return watermarkFile;
+    }
+
+    private String createKey(final String userKey) {
+        return ExtensionProperties.NOTIFIER_LAST_RUN_PREFIX + notifierKey + "." + userKey;
+    }
+
+    private void load() {
+        if (!watermarkFile.exists()) {
+            logger.info("No watermarks found for notifier {}; the full window will be fetched", notifierKey);
+            return;
+        }
+        try (FileInputStream inputStream = new FileInputStream(watermarkFile)) {
+            watermarks.load(inputStream);
+        } catch (final IOException | IllegalArgumentException e) {
+            logger.error("Could not load the watermarks of notifier {} from {}", notifierKey, watermarkFile, e);
+        }
+    }
+
+    private void persist() throws IOException {
+        final File parent = watermarkFile.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        final File tempFile = new File(parent, watermarkFile.getName() + ".tmp");
+        try (FileOutputStream outputStream = new FileOutputStream(tempFile)) {
+            watermarks.store(outputStream, "Last notification window processed per user");
+            outputStream.getFD().sync();
+        }
+        try {
+            Files.move(tempFile.toPath(), watermarkFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile.toPath(), watermarkFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static File getDefaultWatermarkFile(final String notifierKey) {
+        final String fileName = WATERMARK_FILE_PREFIX + notifierKey + ".properties";
+        final String parentLocation = System.getProperty("ext.config.location");
+        if (StringUtils.isNotBlank(parentLocation)) {
+            return new File(parentLocation, fileName);
+        } else {
+            return new File(fileName);
+        }
+    }
+}
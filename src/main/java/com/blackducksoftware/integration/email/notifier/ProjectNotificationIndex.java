@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+
+// notifications for a whole date range grouped by the project they belong to so that each user's slice can be
+// assembled from memory instead of being downloaded again from the Hub.
+public class ProjectNotificationIndex {
+    private static final String VERSIONS_URL_SEGMENT = "/versions/";
+
+    private final Map<String, List<NotificationContentItem>> projectNotificationMap = new HashMap<>();
+
+    private final int notificationCount;
+
+    public ProjectNotificationIndex(final Collection<NotificationContentItem> notifications) {
+        for (final NotificationContentItem notification : notifications) {
+            final String projectUrl = getProjectUrl(notification.getProjectVersion().getUrl());
+            List<NotificationContentItem> projectNotifications = projectNotificationMap.get(projectUrl);
+            if (projectNotifications == null) {
+                projectNotifications = new ArrayList<>();
+                projectNotificationMap.put(projectUrl, projectNotifications);
+            }
+            projectNotifications.add(notification);
+        }
+        notificationCount = notifications.size();
+    }
+
+    public SortedSet<NotificationContentItem> getNotifications(final Set<String> projectUrls) {
+        final SortedSet<NotificationContentItem> notifications = new TreeSet<>();
+        for (final String projectUrl : projectUrls) {
+            final List<NotificationContentItem> projectNotifications = projectNotificationMap.get(projectUrl);
+            if (projectNotifications != null) {
+                notifications.addAll(projectNotifications);
+            }
+        }
+        return notifications;
+    }
+
+    public int getProjectCount() {
+        return projectNotificationMap.size();
+    }
+
+    public int getNotificationCount() {
+        return notificationCount;
+    }
+
+    public static String getProjectUrl(final String projectVersionUrl) {
+        final String url = StringUtils.trimToEmpty(projectVersionUrl);
+        final int index = url.lastIndexOf(VERSIONS_URL_SEGMENT);
+        if (index < 0) {
+            return url;
+        }
+        return url.substring(0, index);
+    }
+}
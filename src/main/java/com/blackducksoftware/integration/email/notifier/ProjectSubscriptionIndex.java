@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackducksoftware.integration.hub.api.project.ProjectVersion;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+
+// the projects each user follows, as a bit set over ids given to the project names and "project:version" entries of a
+// run. Users without an entry follow every project. The index is filled before the users are handed to the worker
+// threads and only read afterwards.
+public class ProjectSubscriptionIndex {
+    public static final String PROJECT_VERSION_SEPARATOR = ":";
+
+    public static final char ENTRY_SEPARATOR = ',';
+
+    public static final char ESCAPE = '\\';
+
+    private final Map<String, Integer> projectIdMap = new HashMap<>();
+
+    private final List<String> projectEntryList = new ArrayList<>();
+
+    private final Map<String, BitSet> subscriptionMap = new HashMap<>();
+
+    public void subscribe(final String userKey, final Collection<String> projectEntries) {
+        final BitSet projectIds = new BitSet();
+        for (final String projectEntry : projectEntries) {
+            final String trimmedEntry = StringUtils.trimToNull(projectEntry);
+            if (trimmedEntry != null) {
+                projectIds.set(getOrCreateProjectId(trimmedEntry));
+            }
+        }
+        if (projectIds.isEmpty()) {
+            subscriptionMap.remove(userKey);
+        } else {
+            subscriptionMap.put(userKey, projectIds);
+        }
+    }
+
+    // splits a configured value on the commas that are not escaped; "\," stands for a comma and "\\" for a backslash
+    // inside a project name
+    public static List<String> splitEntries(final String value) {
+        final List<String> projectEntries = new ArrayList<>();
+        if (value == null) {
+            return projectEntries;
+        }
+        final StringBuilder projectEntry = new StringBuilder();
+        for (int index = 0; index < value.length(); index++) {
+            final char current = value.charAt(index);
+            if (current == ESCAPE && index + 1 < value.length()) {
+                index++;
+                projectEntry.append(value.charAt(index));
+            } else if (current == ENTRY_SEPARATOR) {
+                projectEntries.add(projectEntry.toString());
+                projectEntry.setLength(0);
+            } else {
+                projectEntry.append(current);
+            }
+        }
+        projectEntries.add(projectEntry.toString());
+        return projectEntries;
+    }
+
+    public boolean hasSubscription(final String userKey) {
+        return subscriptionMap.containsKey(userKey);
+    }
+
+    public boolean isSubscribed(final String userKey, final String projectName, final String projectVersionName) {
+        final BitSet projectIds = subscriptionMap.get(userKey);
+        if (projectIds == null) {
+            return true;
+        }
+        return isSet(projectIds, projectName) || isSet(projectIds, projectName + PROJECT_VERSION_SEPARATOR + projectVersionName);
+    }
+
+    // the project entries the user follows; null when the user follows every project
+    public Set<String> getSubscribedEntries(final String userKey) {
+        final BitSet projectIds = subscriptionMap.get(userKey);
+        if (projectIds == null) {
+            return null;
+        }
+        final Set<String> projectEntries = new HashSet<>();
+        for (int projectId = projectIds.nextSetBit(0); projectId >= 0; projectId = projectIds.nextSetBit(projectId + 1)) {
+            projectEntries.add(projectEntryList.get(projectId));
+        }
+        return projectEntries;
+    }
+
+    // true when a user following the current entries can see projects that the previous entries excluded
+    public static boolean isWider(final Set<String> currentEntries, final Set<String> previousEntries) {
+        if (previousEntries == null) {
+            return false;
+        }
+        return currentEntries == null || !previousEntries.containsAll(currentEntries);
+    }
+
+    public SortedSet<NotificationContentItem> filter(final String userKey, final SortedSet<NotificationContentItem> notifications) {
+        if (!hasSubscription(userKey)) {
+            return notifications;
+        }
+        final SortedSet<NotificationContentItem> filteredNotifications = new TreeSet<>();
+        for (final NotificationContentItem notification : notifications) {
+            final ProjectVersion projectVersion = notification.getProjectVersion();
+            if (isSubscribed(userKey, projectVersion.getProjectName(), projectVersion.getProjectVersionName())) {
+                filteredNotifications.add(notification);
+            }
+        }
+        return filteredNotifications;
+    }
+
+    public int getProjectCount() {
+        return projectIdMap.size();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptionMap.size();
+    }
+
+    private boolean isSet(final BitSet projectIds, final String projectEntry) {
+        final Integer projectId = projectIdMap.get(projectEntry);
+        return projectId != null && projectIds.get(projectId);
+    }
+
+    private int getOrCreateProjectId(final String projectEntry) {
+        Integer projectId = projectIdMap.get(projectEntry);
+        if (projectId == null) {
+            projectId = projectIdMap.size();
+            projectIdMap.put(projectEntry, projectId);
+            projectEntryList.add(projectEntry);
+        }
+        return projectId;
+    }
+}
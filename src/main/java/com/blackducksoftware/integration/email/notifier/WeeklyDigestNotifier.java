@@ -44,14 +44,18 @@ public class WeeklyDigestNotifier extends AbstractDigestNotifier {
 
     @Override
     public DateRange createDateRange(final ZoneId zone) {
-        final LocalDateTime currentTime = LocalDateTime.now();
+        return createDateRange(zone, LocalDateTime.now());
+    }
+
+    @Override
+    public DateRange createDateRange(final ZoneId zone, final LocalDateTime currentTime) {
 
         final ZonedDateTime endZonedTime = ZonedDateTime.of(currentTime.getYear(), currentTime.getMonthValue(),
-                currentTime.getDayOfMonth(), 23, 59, 59, 999, zone).minusDays(1);
+                currentTime.getDayOfMonth(), 23, 59, 59, 999_000_000, zone).minusDays(1);
 
         final ZonedDateTime startZonedTime = ZonedDateTime
                 .of(currentTime.getYear(), currentTime.getMonthValue(), currentTime.getDayOfMonth(), 0, 0, 0, 0, zone)
-                .minusDays(8);
+                .minusDays(7);
 
         return new DateRange(Date.from(startZonedTime.toInstant()), Date.from(endZonedTime.toInstant()));
     }
@@ -0,0 +1,163 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+
+// emails that could not be delivered. Each one is a plain .eml file that can be opened in a mail client, next to a
+// .properties file with the mail settings it was sent with and why it failed. The SMTP credentials are left out of the
+// settings. Deleting both files discards it.
+public class DeadLetterStore {
+    public static final String DEAD_LETTER_DIRECTORY_NAME = "dead-letter";
+
+    public static final String MESSAGE_SUFFIX = ".eml";
+
+    public static final String DETAILS_SUFFIX = ".properties";
+
+    public static final String KEY_REASON = "dead.letter.reason";
+
+    public static final String KEY_ATTEMPTS = "dead.letter.attempts";
+
+    public static final String KEY_TIME = "dead.letter.time";
+
+    private final Logger logger = LoggerFactory.getLogger(DeadLetterStore.class);
+
+    private final File directory;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public DeadLetterStore(final File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create the dead letter directory " + directory);
+        }
+    }
+
+    public synchronized DeadLetter store(final ExtensionProperties properties, final Message message, final Throwable reason, final int attempts)
+            throws IOException, MessagingException {
+        final String name = String.format("%d-%04d", System.currentTimeMillis(), sequence.incrementAndGet() % 10000);
+        final Properties details = new Properties();
+        for (final Map.Entry<String, String> entry : properties.getPersistablePropertiesForSession().entrySet()) {
+            details.setProperty(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + entry.getKey(), entry.getValue());
+        }
+        details.setProperty(KEY_REASON, StringUtils.defaultString(reason.getMessage(), reason.getClass().getName()));
+        details.setProperty(KEY_ATTEMPTS, String.valueOf(attempts));
+        details.setProperty(KEY_TIME, String.valueOf(System.currentTimeMillis()));
+
+        final File messageFile = new File(directory, name + MESSAGE_SUFFIX);
+        try (FileOutputStream outputStream = new FileOutputStream(messageFile)) {
+            message.writeTo(outputStream);
+        }
+        // the details are written last; a message without them is ignored until they exist
+        try (FileOutputStream outputStream = new FileOutputStream(new File(directory, name + DETAILS_SUFFIX))) {
+            details.store(outputStream, "Undelivered email " + name);
+        }
+        logger.warn("Moved an undelivered email to {} after {} attempts: {}", messageFile, attempts, details.getProperty(KEY_REASON));
+        return new DeadLetter(name, details);
+    }
+
+    public synchronized List<DeadLetter> list() {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(DETAILS_SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        Arrays.sort(files);
+        final List<DeadLetter> deadLetterList = new ArrayList<>(files.length);
+        for (final File file : files) {
+            final String name = StringUtils.removeEnd(file.getName(), DETAILS_SUFFIX);
+            if (!new File(directory, name + MESSAGE_SUFFIX).exists()) {
+                continue;
+            }
+            final Properties details = new Properties();
+            try (FileInputStream inputStream = new FileInputStream(file)) {
+                details.load(inputStream);
+                deadLetterList.add(new DeadLetter(name, details));
+            } catch (final IOException | IllegalArgumentException e) {
+                logger.error("Could not read the dead letter {}", file, e);
+            }
+        }
+        return deadLetterList;
+    }
+
+    public synchronized void remove(final DeadLetter deadLetter) {
+        new File(directory, deadLetter.getName() + DETAILS_SUFFIX).delete();
+        new File(directory, deadLetter.getName() + MESSAGE_SUFFIX).delete();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public class DeadLetter {
+        private final String name;
+
+        private final Properties details;
+
+        public DeadLetter(final String name, final Properties details) {
+            this.name = name;
+            this.details = details;
+        }
+
+        public Message createMessage(final Session session) throws IOException, MessagingException {
+            try (FileInputStream inputStream = new FileInputStream(new File(directory, name + MESSAGE_SUFFIX))) {
+                return new MimeMessage(session, inputStream);
+            }
+        }
+
+        public ExtensionProperties getProperties() {
+            return new ExtensionProperties(details);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getReason() {
+            return details.getProperty(KEY_REASON);
+        }
+
+        public int getAttempts() {
+            return NumberUtils.toInt(details.getProperty(KEY_ATTEMPTS));
+        }
+    }
+}
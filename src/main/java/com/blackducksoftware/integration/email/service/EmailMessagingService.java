@@ -27,7 +27,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.mail.Address;
 import javax.mail.Message;
@@ -35,18 +37,27 @@ import javax.mail.MessagingException;
 import javax.mail.Session;
 import javax.mail.internet.AddressException;
 import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeMultipart;
 
+import org.apache.commons.lang3.EnumUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.jsoup.Jsoup;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.blackducksoftware.integration.email.model.EmailTarget;
+import com.blackducksoftware.integration.email.model.EmbeddedImageCache;
 import com.blackducksoftware.integration.email.model.ExtensionProperties;
 import com.blackducksoftware.integration.email.model.JavaMailWrapper;
 import com.blackducksoftware.integration.email.model.MimeMultipartBuilder;
+import com.blackducksoftware.integration.email.model.SmtpRateLimiter;
+import com.blackducksoftware.integration.email.service.DeadLetterStore.DeadLetter;
+import com.blackducksoftware.integration.email.service.EmailOutbox.OutboxEmail;
+import com.blackducksoftware.integration.email.service.RecipientGroupBuffer.Member;
+import com.blackducksoftware.integration.email.service.RecipientGroupBuffer.RecipientGroup;
+import com.blackducksoftware.integration.email.service.RenderCache.TrackingModel;
 
 import freemarker.core.ParseException;
 import freemarker.template.Configuration;
@@ -58,17 +69,53 @@ import freemarker.template.TemplateNotFoundException;
 public class EmailMessagingService {
     private final Logger log = LoggerFactory.getLogger(EmailMessagingService.class);
 
-    private final ExtensionProperties localProperties;
+    private final MailConfigurationCache mailConfigurationCache;
 
     private final JavaMailWrapper javaMailWrapper;
 
-    private final Configuration configuration;
+    private final TemplateCache templateCache;
+
+    private final EmbeddedImageCache imageCache;
+
+    private final RenderCache renderCache;
+
+    private final FragmentCache fragmentCache;
+
+    private final RecipientGroupBuffer groupBuffer;
+
+    private final HtmlTextExtractor htmlTextExtractor = new HtmlTextExtractor();
+
+    private final EmailSendQueue sendQueue;
+
+    private final EmailOutbox outbox;
+
+    private final EmailRetryScheduler retryScheduler;
+
+    private final DeadLetterStore deadLetterStore;
 
     public EmailMessagingService(final ExtensionProperties customerProperties, final Configuration configuration,
             final JavaMailWrapper javaMailWrapper) {
-        this.localProperties = customerProperties;
-        this.configuration = configuration;
+        this(customerProperties, configuration, javaMailWrapper, null, null, null, null);
+    }
+
+    public EmailMessagingService(final ExtensionProperties customerProperties, final Configuration configuration,
+            final JavaMailWrapper javaMailWrapper, final EmailSendQueue sendQueue, final EmailOutbox outbox,
+            final EmailRetryScheduler retryScheduler, final DeadLetterStore deadLetterStore) {
+        this.mailConfigurationCache = new MailConfigurationCache(customerProperties);
+        this.templateCache = new TemplateCache(configuration);
+        // images are checked for changes as often as the templates are
+        this.imageCache = new EmbeddedImageCache(configuration.getTemplateUpdateDelayMilliseconds());
+        final int renderCacheSize = customerProperties.getRenderCacheSize();
+        this.renderCache = renderCacheSize > 0 ? new RenderCache(renderCacheSize, customerProperties.getRenderCacheExpireMillis()) : null;
+        final Object fragmentDirective = configuration.getSharedVariable(FragmentCache.DIRECTIVE_NAME);
+        this.fragmentCache = fragmentDirective instanceof FragmentCache ? (FragmentCache) fragmentDirective : null;
+        this.groupBuffer = customerProperties.isGroupDeliveryEnabled() && renderCache != null
+                ? new RecipientGroupBuffer(Math.max(1, customerProperties.getGroupMaxRecipients())) : null;
         this.javaMailWrapper = javaMailWrapper;
+        this.sendQueue = sendQueue;
+        this.outbox = outbox;
+        this.retryScheduler = retryScheduler;
+        this.deadLetterStore = deadLetterStore;
     }
 
     public void sendEmailMessage(final EmailTarget emailTarget) throws MessagingException, TemplateNotFoundException,
@@ -79,53 +126,359 @@ public class EmailMessagingService {
     public void sendEmailMessage(final EmailTarget emailTarget, final ExtensionProperties hubConfiguredProperties)
             throws MessagingException, TemplateNotFoundException, MalformedTemplateNameException, ParseException,
             IOException, TemplateException {
+        final ExtensionProperties properties = mailConfigurationCache.getProperties(hubConfiguredProperties);
+        final Session session = mailConfigurationCache.getSession(properties);
+        final Message message = createEmailMessage(emailTarget, properties, session);
+        if (message != null) {
+            javaMailWrapper.sendMessage(properties, session, message);
+        }
+    }
+
+    // renders the email on the calling thread and hands it to the send queue; the future completes once the mail
+    // server accepted the message. Without a send queue the message is sent before returning. With an outbox the message
+    // is on disk before this returns and is delivered after a restart if the process stops first.
+    public CompletableFuture<Void> sendEmailMessageAsync(final EmailTarget emailTarget, final ExtensionProperties hubConfiguredProperties)
+            throws MessagingException, TemplateNotFoundException, MalformedTemplateNameException, ParseException,
+            IOException, TemplateException {
+        final ExtensionProperties properties = mailConfigurationCache.getProperties(hubConfiguredProperties);
+        final Session session = mailConfigurationCache.getSession(properties);
+        final Message message = createEmailMessage(emailTarget, properties, session);
+        if (message == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return spool(properties, session, message);
+    }
+
+    // like sendEmailMessageAsync, but with group delivery on the email waits for others with the same content and goes
+    // out as one message to all of them once the group is full or flushGroups is called. A grouped email only reaches
+    // the outbox when its group is sent.
+    public CompletableFuture<Void> sendGroupedEmailMessageAsync(final EmailTarget emailTarget, final ExtensionProperties hubConfiguredProperties)
+            throws MessagingException, TemplateNotFoundException, MalformedTemplateNameException, ParseException,
+            IOException, TemplateException {
+        if (groupBuffer == null) {
+            return sendEmailMessageAsync(emailTarget, hubConfiguredProperties);
+        }
+        final ExtensionProperties properties = mailConfigurationCache.getProperties(hubConfiguredProperties);
+        final Session session = mailConfigurationCache.getSession(properties);
+        final Message message = createEmailMessage(emailTarget, properties, session);
+        if (message == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final RecipientGroup fullGroup = groupBuffer.add(properties, session, (MimeMessage) message, future);
+        if (fullGroup != null) {
+            sendGroup(fullGroup);
+        }
+        return future;
+    }
+
+    // sends every group still waiting for recipients and returns the number of messages sent
+    public int flushGroups() {
+        if (groupBuffer == null) {
+            return 0;
+        }
+        final List<RecipientGroup> groups = groupBuffer.drain();
+        for (final RecipientGroup group : groups) {
+            sendGroup(group);
+        }
+        return groups.size();
+    }
+
+    public boolean isGroupDelivery() {
+        return groupBuffer != null;
+    }
+
+    // sends the emails a previous process left in the outbox
+    public int resumeOutbox(final ExtensionProperties hubConfiguredProperties) throws IOException {
+        if (outbox == null) {
+            return 0;
+        }
+        int resumed = 0;
+        for (final OutboxEmail outboxEmail : outbox.getPending()) {
+            final ExtensionProperties properties = mailConfigurationCache.restoreCredentials(outboxEmail.getProperties(), hubConfiguredProperties);
+            final Session session = mailConfigurationCache.getSession(properties);
+            try {
+                deliver(properties, session, outboxEmail.createMessage(session))
+                        .whenComplete((result, exception) -> acknowledge(outboxEmail.getId(), exception));
+                resumed++;
+            } catch (final MessagingException e) {
+                log.error("Could not read email {} from the outbox", outboxEmail.getId(), e);
+                acknowledge(outboxEmail.getId(), e);
+            }
+        }
+        return resumed;
+    }
+
+    // sends the dead letters again; the ones that fail again are stored as new dead letters
+    public int replayDeadLetters(final ExtensionProperties hubConfiguredProperties) {
+        if (deadLetterStore == null) {
+            return 0;
+        }
+        int replayed = 0;
+        for (final DeadLetter deadLetter : deadLetterStore.list()) {
+            final ExtensionProperties properties = mailConfigurationCache.restoreCredentials(deadLetter.getProperties(), hubConfiguredProperties);
+            final Session session = mailConfigurationCache.getSession(properties);
+            try {
+                deliver(properties, session, deadLetter.createMessage(session)).whenComplete((result, exception) -> {
+                    if (!isRejected(exception)) {
+                        deadLetterStore.remove(deadLetter);
+                    }
+                });
+                replayed++;
+            } catch (final IOException | MessagingException e) {
+                log.error("Could not read the dead letter {}", deadLetter.getName(), e);
+            }
+        }
+        return replayed;
+    }
+
+    public boolean hasOutbox() {
+        return outbox != null;
+    }
+
+    public void shutdown(final long timeoutMillis) {
+        flushGroups();
+        if (sendQueue != null) {
+            sendQueue.shutdown(timeoutMillis);
+        }
+        if (retryScheduler != null) {
+            // with an outbox the emails waiting for a retry are still pending there and go out after the next start
+            retryScheduler.shutdown(outbox == null);
+        }
+        if (outbox != null) {
+            outbox.close();
+        }
+    }
+
+    // the rendered bodies and fragments were produced by the old template, so they are dropped together with it
+    public void invalidateTemplate(final String templateName) {
+        templateCache.invalidate(templateName);
+        invalidateRenderedContent();
+    }
+
+    public void invalidateTemplates() {
+        templateCache.invalidateAll();
+        invalidateRenderedContent();
+    }
+
+    public TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    public RenderCache getRenderCache() {
+        return renderCache;
+    }
+
+    public FragmentCache getFragmentCache() {
+        return fragmentCache;
+    }
+
+    public EmbeddedImageCache getImageCache() {
+        return imageCache;
+    }
+
+    public MailConfigurationCache getMailConfigurationCache() {
+        return mailConfigurationCache;
+    }
+
+    public SmtpRateLimiter getRateLimiter() {
+        return javaMailWrapper.getRateLimiter();
+    }
+
+    private void invalidateRenderedContent() {
+        if (renderCache != null) {
+            renderCache.invalidateAll();
+        }
+        if (fragmentCache != null) {
+            fragmentCache.invalidateAll();
+        }
+    }
+
+    public EmailSendQueue getSendQueue() {
+        return sendQueue;
+    }
+
+    private void sendGroup(final RecipientGroup group) {
+        try {
+            spool(group.getProperties(), group.getSession(), group.createMessage()).whenComplete((result, exception) -> {
+                final List<Member> unsentMembers = group.complete(unwrap(exception));
+                if (!unsentMembers.isEmpty()) {
+                    log.info("Shared digest message was rejected for some recipients; sending it to {} others one by one", unsentMembers.size());
+                }
+                for (final Member member : unsentMembers) {
+                    sendMember(group, member);
+                }
+            });
+        } catch (final IOException | MessagingException e) {
+            for (final CompletableFuture<Void> future : group.getFutures()) {
+                future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void sendMember(final RecipientGroup group, final Member member) {
+        try {
+            spool(group.getProperties(), group.getSession(), group.createMessage(member)).whenComplete((result, exception) -> {
+                if (exception == null) {
+                    member.getFuture().complete(null);
+                } else {
+                    member.getFuture().completeExceptionally(unwrap(exception));
+                }
+            });
+        } catch (final IOException | MessagingException e) {
+            member.getFuture().completeExceptionally(e);
+        }
+    }
+
+    private CompletableFuture<Void> spool(final ExtensionProperties properties, final Session session, final Message message)
+            throws IOException, MessagingException {
+        if (outbox == null) {
+            return deliver(properties, session, message);
+        }
+        final long outboxId = outbox.append(properties, message);
+        return deliver(properties, session, message).whenComplete((result, exception) -> acknowledge(outboxId, exception));
+    }
+
+    private CompletableFuture<Void> deliver(final ExtensionProperties properties, final Session session, final Message message) {
+        final CompletableFuture<Void> firstAttempt = send(properties, session, message);
+        if (retryScheduler == null) {
+            return firstAttempt;
+        }
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        firstAttempt.whenComplete((result, exception) -> {
+            final Throwable cause = unwrap(exception);
+            if (cause == null) {
+                future.complete(null);
+            } else if (cause instanceof MessagingException) {
+                retryScheduler.handleFailure(properties, session, message, (MessagingException) cause, future);
+            } else {
+                future.completeExceptionally(cause);
+            }
+        });
+        return future;
+    }
+
+    private CompletableFuture<Void> send(final ExtensionProperties properties, final Session session, final Message message) {
+        if (sendQueue == null) {
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            try {
+                javaMailWrapper.sendMessage(properties, session, message);
+                future.complete(null);
+            } catch (final MessagingException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        }
+        return sendQueue.submit(properties, session, message);
+    }
+
+    private void acknowledge(final long outboxId, final Throwable exception) {
+        try {
+            if (exception == null) {
+                outbox.markSent(outboxId);
+            } else if (!isRejected(exception)) {
+                outbox.markFailed(outboxId);
+            }
+            // emails the send queue could not take stay pending and go out after the next start
+        } catch (final IOException e) {
+            log.error("Could not update email {} in the outbox", outboxId, e);
+        }
+    }
+
+    private boolean isRejected(final Throwable exception) {
+        return unwrap(exception) instanceof RejectedExecutionException;
+    }
+
+    private Throwable unwrap(final Throwable exception) {
+        if (exception instanceof CompletionException && exception.getCause() != null) {
+            return exception.getCause();
+        }
+        return exception;
+    }
+
+    private Message createEmailMessage(final EmailTarget emailTarget, final ExtensionProperties properties, final Session session)
+            throws MessagingException, TemplateNotFoundException, MalformedTemplateNameException, ParseException,
+            IOException, TemplateException {
         final String emailAddress = StringUtils.trimToEmpty(emailTarget.getEmailAddress());
         final String templateName = StringUtils.trimToEmpty(emailTarget.getTemplateName());
         final Map<String, Object> model = emailTarget.getModel();
         if (StringUtils.isBlank(emailAddress) || StringUtils.isBlank(templateName)) {
             // we've got nothing to do...might as well get out of here...
-            return;
+            return null;
         }
 
-        ExtensionProperties properties = localProperties;
-        // use the hub global configuration as default and let the local
-        // properties file value override the values from
-        // the Hub
-        if (hubConfiguredProperties != null) {
-            properties = new ExtensionProperties(localProperties.getAppProperties(), hubConfiguredProperties.getAppProperties());
-        }
-
-        final Session session = createMailSession(properties);
         final Map<String, String> contentIdsToFilePaths = new HashMap<>();
         populateModelWithAdditionalProperties(properties, model, templateName, contentIdsToFilePaths);
-        final String html = getResolvedTemplate(model, templateName);
+        final TextContentMode textContentMode = getTextContentMode(properties, templateName);
+        final String resolvedSubjectLine = getResolvedSubjectLine(model);
+        final MimeMultipartBuilder mimeMultipartBuilder = new MimeMultipartBuilder(imageCache);
+        if (renderCache == null) {
+            addEmailContent(mimeMultipartBuilder, model, templateName, textContentMode, contentIdsToFilePaths);
+            return createMessage(emailAddress, resolvedSubjectLine, session, mimeMultipartBuilder.build(), properties);
+        }
 
-        final MimeMultipartBuilder mimeMultipartBuilder = new MimeMultipartBuilder();
-        mimeMultipartBuilder.addHtmlContent(html);
-        mimeMultipartBuilder.addTextContent(Jsoup.parse(html).text());
-        mimeMultipartBuilder.addEmbeddedImages(contentIdsToFilePaths);
+        final String renderName = renderCache.getRenderName(templateName, textContentMode, contentIdsToFilePaths);
+        final MimeBodyPart renderedBodyPart = renderCache.getBodyPart(renderName, model);
+        if (renderedBodyPart != null) {
+            mimeMultipartBuilder.addEmailBodyPart(renderedBodyPart);
+            return createMessage(emailAddress, resolvedSubjectLine, session, mimeMultipartBuilder.build(), properties);
+        }
+        final TrackingModel trackingModel = renderCache.track(model, templateCache.getTemplate(templateName).getObjectWrapper());
+        addEmailContent(mimeMultipartBuilder, trackingModel, templateName, textContentMode, contentIdsToFilePaths);
         final MimeMultipart mimeMultipart = mimeMultipartBuilder.build();
-
-        final String resolvedSubjectLine = getResolvedSubjectLine(model);
         final Message message = createMessage(emailAddress, resolvedSubjectLine, session, mimeMultipart, properties);
-        javaMailWrapper.sendMessage(properties, session, message);
+        // fills in the content headers so the body is cached exactly as it is sent
+        message.saveChanges();
+        renderCache.putBodyPart(renderName, trackingModel, (MimeBodyPart) mimeMultipart.getBodyPart(0));
+        return message;
+    }
+
+    private void addEmailContent(final MimeMultipartBuilder mimeMultipartBuilder, final Object dataModel, final String templateName,
+            final TextContentMode textContentMode, final Map<String, String> contentIdsToFilePaths) throws IOException, TemplateException {
+        final String html = getResolvedTemplate(dataModel, templateName);
+        mimeMultipartBuilder.addHtmlContent(html);
+        mimeMultipartBuilder.addTextContent(getTextContent(dataModel, templateName, textContentMode, html));
+        mimeMultipartBuilder.addEmbeddedImages(contentIdsToFilePaths);
     }
 
-    private String getResolvedTemplate(final Map<String, Object> model, final String templateName)
+    private String getResolvedTemplate(final Object dataModel, final String templateName)
             throws TemplateNotFoundException, MalformedTemplateNameException, ParseException, IOException,
             TemplateException {
         final StringWriter stringWriter = new StringWriter();
-        final Template template = configuration.getTemplate(templateName);
-        template.process(model, stringWriter);
+        final Template template = templateCache.getTemplate(templateName);
+        template.process(dataModel, stringWriter);
         return stringWriter.toString();
     }
 
+    private String getTextContent(final Object dataModel, final String templateName, final TextContentMode mode,
+            final String html) throws IOException, TemplateException {
+        if (mode == TextContentMode.JSOUP) {
+            return Jsoup.parse(html).text();
+        }
+        if (mode == TextContentMode.TEMPLATE) {
+            final Template textTemplate = templateCache.getTextTemplate(templateName);
+            if (textTemplate != null) {
+                final StringWriter stringWriter = new StringWriter();
+                textTemplate.process(dataModel, stringWriter);
+                return stringWriter.toString();
+            }
+            log.debug("No plain text template found for {}, extracting the text from the html", templateName);
+        }
+        return htmlTextExtractor.extract(html);
+    }
+
+    private TextContentMode getTextContentMode(final ExtensionProperties properties, final String templateName) {
+        final String mode = StringUtils.upperCase(StringUtils.trimToEmpty(properties.getEmailTemplateTextMode(templateName)));
+        final TextContentMode textContentMode = EnumUtils.getEnum(TextContentMode.class, mode);
+        return textContentMode == null ? TextContentMode.STREAM : textContentMode;
+    }
+
     private String getResolvedSubjectLine(final Map<String, Object> model) throws IOException, TemplateException {
         String subjectLine = (String) model.get("subject_line");
         if (StringUtils.isBlank(subjectLine)) {
             subjectLine = "Default Subject Line - please define one in extension.properties";
         }
-        final Template subjectLineTemplate = new Template("subjectLineTemplate", subjectLine, configuration);
+        final Template subjectLineTemplate = templateCache.getSubjectTemplate(subjectLine);
         final StringWriter stringWriter = new StringWriter();
         subjectLineTemplate.process(model, stringWriter);
         return stringWriter.toString();
@@ -170,14 +523,6 @@ public class EmailMessagingService {
         }
     }
 
-    private Session createMailSession(final ExtensionProperties customerProperties) {
-        final Map<String, String> sessionProps = customerProperties.getPropertiesForSession();
-        final Properties props = new Properties();
-        props.putAll(sessionProps);
-
-        return Session.getInstance(props);
-    }
-
     private Message createMessage(final String emailAddress, final String subjectLine, final Session session,
             final MimeMultipart mimeMultipart, final ExtensionProperties properties) throws MessagingException {
         final List<InternetAddress> addresses = new ArrayList<>();
@@ -0,0 +1,409 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+
+// append only spool of rendered emails so a restart resumes delivery instead of rendering and sending the run again.
+// The spool is split into segment files of records laid out as
+// magic (int) | state (byte) | id (long) | length (int) | crc32 (int) | javamail properties and MIME bytes. The SMTP
+// credentials are not part of the stored javamail properties.
+// The index keeps the segment and offset of every pending record so marking it delivered is a single byte write, and a
+// segment file is deleted once none of its records are pending.
+public class EmailOutbox {
+    public static final String OUTBOX_DIRECTORY_NAME = "outbox";
+
+    public static final String SEGMENT_FILE_PREFIX = "outbox-";
+
+    public static final String SEGMENT_FILE_SUFFIX = ".seg";
+
+    public static final long DEFAULT_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    public static final byte STATE_PENDING = 0;
+
+    public static final byte STATE_SENT = 1;
+
+    public static final byte STATE_FAILED = 2;
+
+    private static final int RECORD_MAGIC = 0x4544424f;
+
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 4 + 4;
+
+    private static final int STATE_OFFSET = 4;
+
+    private final Logger logger = LoggerFactory.getLogger(EmailOutbox.class);
+
+    private final File directory;
+
+    private final long segmentSize;
+
+    private final TreeMap<Long, Segment> segmentMap = new TreeMap<>();
+
+    private final Map<Long, RecordLocation> pendingIndex = new HashMap<>();
+
+    private Segment activeSegment;
+
+    private long nextId = 1;
+
+    public EmailOutbox(final File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public EmailOutbox(final File directory, final long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Could not create the outbox directory " + directory);
+        }
+        recover();
+    }
+
+    public synchronized long append(final ExtensionProperties properties, final Message message) throws IOException, MessagingException {
+        final byte[] data = serialize(properties, message);
+        if (activeSegment == null || activeSegment.getSize() + HEADER_SIZE + data.length > segmentSize && activeSegment.getSize() > 0) {
+            rollSegment();
+        }
+        final long id = nextId++;
+        final long offset = activeSegment.getSize();
+        final CRC32 crc = new CRC32();
+        crc.update(data);
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + data.length);
+        buffer.putInt(RECORD_MAGIC).put(STATE_PENDING).putLong(id).putInt(data.length).putInt((int) crc.getValue()).put(data);
+        buffer.flip();
+        writeFully(activeSegment.getChannel(), buffer, offset);
+        activeSegment.getChannel().force(false);
+        activeSegment.setSize(offset + buffer.limit());
+        activeSegment.incrementPending();
+        pendingIndex.put(id, new RecordLocation(activeSegment, offset));
+        return id;
+    }
+
+    public synchronized void markSent(final long id) throws IOException {
+        complete(id, STATE_SENT);
+    }
+
+    public synchronized void markFailed(final long id) throws IOException {
+        complete(id, STATE_FAILED);
+    }
+
+    public synchronized List<OutboxEmail> getPending() throws IOException {
+        final List<Long> idList = new ArrayList<>(pendingIndex.keySet());
+        idList.sort(null);
+        final List<OutboxEmail> pendingList = new ArrayList<>(idList.size());
+        for (final Long id : idList) {
+            final RecordLocation location = pendingIndex.get(id);
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(location.getSegment().getChannel(), header, location.getOffset());
+            header.flip();
+            final byte[] data = new byte[header.getInt(HEADER_SIZE - 8)];
+            readFully(location.getSegment().getChannel(), ByteBuffer.wrap(data), location.getOffset() + HEADER_SIZE);
+            pendingList.add(deserialize(id, data));
+        }
+        return pendingList;
+    }
+
+    public synchronized int getPendingCount() {
+        return pendingIndex.size();
+    }
+
+    public synchronized int getSegmentCount() {
+        return segmentMap.size();
+    }
+
+    public synchronized void close() {
+        for (final Segment segment : segmentMap.values()) {
+            closeQuietly(segment);
+        }
+        segmentMap.clear();
+        pendingIndex.clear();
+        activeSegment = null;
+    }
+
+    private void complete(final long id, final byte state) throws IOException {
+        final RecordLocation location = pendingIndex.remove(id);
+        if (location == null) {
+            return;
+        }
+        final Segment segment = location.getSegment();
+        writeFully(segment.getChannel(), ByteBuffer.wrap(new byte[] { state }), location.getOffset() + STATE_OFFSET);
+        segment.getChannel().force(false);
+        if (segment.decrementPending() == 0 && segment != activeSegment) {
+            deleteSegment(segment);
+        }
+    }
+
+    private void recover() throws IOException {
+        final File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_FILE_PREFIX) && name.endsWith(SEGMENT_FILE_SUFFIX));
+        if (files != null) {
+            Arrays.sort(files);
+            for (final File file : files) {
+                final long sequence = Long.parseLong(StringUtils.removeEnd(StringUtils.removeStart(file.getName(), SEGMENT_FILE_PREFIX), SEGMENT_FILE_SUFFIX));
+                final Segment segment = new Segment(sequence, file, FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE));
+                segmentMap.put(sequence, segment);
+                scan(segment);
+            }
+        }
+        for (final Segment segment : new ArrayList<>(segmentMap.values())) {
+            if (segment.getPending() == 0) {
+                deleteSegment(segment);
+            }
+        }
+        if (!pendingIndex.isEmpty()) {
+            logger.info("Recovered {} undelivered emails from the outbox {}", pendingIndex.size(), directory);
+        }
+    }
+
+    private void scan(final Segment segment) throws IOException {
+        final FileChannel channel = segment.getChannel();
+        final long fileSize = channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long offset = 0;
+        while (offset + HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(channel, header, offset);
+            header.flip();
+            final int magic = header.getInt();
+            final byte state = header.get();
+            final long id = header.getLong();
+            final int length = header.getInt();
+            final int checksum = header.getInt();
+            if (magic != RECORD_MAGIC || length < 0 || offset + HEADER_SIZE + length > fileSize) {
+                break;
+            }
+            if (state == STATE_PENDING) {
+                final byte[] data = new byte[length];
+                readFully(channel, ByteBuffer.wrap(data), offset + HEADER_SIZE);
+                final CRC32 crc = new CRC32();
+                crc.update(data);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                pendingIndex.put(id, new RecordLocation(segment, offset));
+                segment.incrementPending();
+            }
+            nextId = Math.max(nextId, id + 1);
+            offset += HEADER_SIZE + length;
+        }
+        if (offset < fileSize) {
+            // the process stopped in the middle of an append; the rest of the file was never acknowledged to a caller
+            logger.warn("Truncating the incomplete outbox record at {} of {}", offset, segment.getFile());
+            channel.truncate(offset);
+        }
+        segment.setSize(offset);
+    }
+
+    private void rollSegment() throws IOException {
+        final Segment previousSegment = activeSegment;
+        final long sequence = segmentMap.isEmpty() ? 1 : segmentMap.lastKey() + 1;
+        final File file = new File(directory, String.format("%s%020d%s", SEGMENT_FILE_PREFIX, sequence, SEGMENT_FILE_SUFFIX));
+        activeSegment = new Segment(sequence, file,
+                FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        segmentMap.put(sequence, activeSegment);
+        if (previousSegment != null && previousSegment.getPending() == 0) {
+            deleteSegment(previousSegment);
+        }
+    }
+
+    private void deleteSegment(final Segment segment) {
+        segmentMap.remove(segment.getSequence());
+        closeQuietly(segment);
+        if (!segment.getFile().delete()) {
+            logger.warn("Could not delete the delivered outbox segment {}", segment.getFile());
+        }
+    }
+
+    private void closeQuietly(final Segment segment) {
+        try {
+            segment.getChannel().close();
+        } catch (final IOException e) {
+            logger.debug("Error closing outbox segment {}", segment.getFile(), e);
+        }
+    }
+
+    private byte[] serialize(final ExtensionProperties properties, final Message message) throws IOException, MessagingException {
+        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        final DataOutputStream dataStream = new DataOutputStream(byteStream);
+        final Map<String, String> sessionProperties = properties.getPersistablePropertiesForSession();
+        dataStream.writeInt(sessionProperties.size());
+        for (final Map.Entry<String, String> entry : sessionProperties.entrySet()) {
+            dataStream.writeUTF(entry.getKey());
+            dataStream.writeUTF(entry.getValue());
+        }
+        dataStream.flush();
+        message.writeTo(byteStream);
+        return byteStream.toByteArray();
+    }
+
+    private OutboxEmail deserialize(final long id, final byte[] data) throws IOException {
+        final ByteArrayInputStream byteStream = new ByteArrayInputStream(data);
+        final DataInputStream dataStream = new DataInputStream(byteStream);
+        final Properties appProperties = new Properties();
+        final int propertyCount = dataStream.readInt();
+        for (int index = 0; index < propertyCount; index++) {
+            final String key = dataStream.readUTF();
+            appProperties.setProperty(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + key, dataStream.readUTF());
+        }
+        final byte[] mimeBytes = new byte[byteStream.available()];
+        dataStream.readFully(mimeBytes);
+        return new OutboxEmail(id, new ExtensionProperties(appProperties), mimeBytes);
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long writePosition = position;
+        while (buffer.hasRemaining()) {
+            writePosition += channel.write(buffer, writePosition);
+        }
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long readPosition = position;
+        while (buffer.hasRemaining()) {
+            final int count = channel.read(buffer, readPosition);
+            if (count < 0) {
+                throw new IOException("Unexpected end of outbox segment");
+            }
+            readPosition += count;
+        }
+    }
+
+    public static class OutboxEmail {
+        private final long id;
+
+        private final ExtensionProperties properties;
+
+        private final byte[] mimeBytes;
+
+        public OutboxEmail(final long id, final ExtensionProperties properties, final byte[] mimeBytes) {
+            this.id = id;
+            this.properties = properties;
+            this.mimeBytes = mimeBytes;
+        }
+
+        public Message createMessage(final Session session) throws MessagingException {
+            return new MimeMessage(session, new ByteArrayInputStream(mimeBytes));
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public ExtensionProperties getProperties() {
+            return properties;
+        }
+    }
+
+    private static class Segment {
+        private final long sequence;
+
+        private final File file;
+
+        private final FileChannel channel;
+
+        private long size;
+
+        private int pending;
+
+        public Segment(final long sequence, final File file, final FileChannel channel) {
+            this.sequence = sequence;
+            this.file = file;
+            this.channel = channel;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public FileChannel getChannel() {
+            return channel;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public void setSize(final long size) {
+            this.size = size;
+        }
+
+        public int getPending() {
+            return pending;
+        }
+
+        public void incrementPending() {
+            pending++;
+        }
+
+        public int decrementPending() {
+            return --pending;
+        }
+    }
+
+    private static class RecordLocation {
+        private final Segment segment;
+
+        private final long offset;
+
+        public RecordLocation(final Segment segment, final long offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+
+        public Segment getSegment() {
+            return segment;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+    }
+}
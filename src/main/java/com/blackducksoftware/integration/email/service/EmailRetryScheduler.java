@@ -0,0 +1,209 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+import com.blackducksoftware.integration.email.model.JavaMailWrapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+// retries transiently failed sends on its own threads so a throttling relay never holds up fresh emails. The delay
+// doubles with every attempt up to the maximum and a random part of it is dropped so throttled senders do not come back
+// in lock step. Permanent failures and emails out of attempts go to the dead letter store.
+public class EmailRetryScheduler {
+    private final Logger logger = LoggerFactory.getLogger(EmailRetryScheduler.class);
+
+    private final JavaMailWrapper javaMailWrapper;
+
+    private final DeadLetterStore deadLetterStore;
+
+    private final SmtpFailureClassifier failureClassifier;
+
+    private final int maxAttempts;
+
+    private final long initialDelayMillis;
+
+    private final long maxDelayMillis;
+
+    private final ScheduledExecutorService executor;
+
+    private final Set<RetryTask> pendingTasks = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong retryCount = new AtomicLong();
+
+    private final AtomicLong recoveredCount = new AtomicLong();
+
+    private final AtomicLong deadLetterCount = new AtomicLong();
+
+    public EmailRetryScheduler(final JavaMailWrapper javaMailWrapper, final DeadLetterStore deadLetterStore, final SmtpFailureClassifier failureClassifier,
+            final int retryThreads, final int maxAttempts, final long initialDelayMillis, final long maxDelayMillis) {
+        this.javaMailWrapper = javaMailWrapper;
+        this.deadLetterStore = deadLetterStore;
+        this.failureClassifier = failureClassifier;
+        this.maxAttempts = maxAttempts;
+        this.initialDelayMillis = initialDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("email-retry-%d").setDaemon(true).build();
+        executor = new ScheduledThreadPoolExecutor(Math.max(1, retryThreads), threadFactory);
+    }
+
+    // takes over a message whose first send failed; the future completes when a retry delivers it or fails once it
+    // is given up on
+    public void handleFailure(final ExtensionProperties properties, final Session session, final Message message, final MessagingException exception,
+            final CompletableFuture<Void> future) {
+        final RetryTask task = new RetryTask(properties, session, message, future);
+        task.failed(exception);
+    }
+
+    public void shutdown(final boolean deadLetterPending) {
+        executor.shutdownNow();
+        for (final RetryTask task : new ArrayList<>(pendingTasks)) {
+            if (deadLetterPending) {
+                task.giveUp();
+            } else {
+                pendingTasks.remove(task);
+                task.getFuture().completeExceptionally(new RejectedExecutionException("Stopped before the email could be retried"));
+            }
+        }
+        logger.info("Email retry scheduler stopped. retries {} recovered {} dead letters {}", retryCount.get(), recoveredCount.get(),
+                deadLetterCount.get());
+    }
+
+    public int getPendingCount() {
+        return pendingTasks.size();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getRecoveredCount() {
+        return recoveredCount.get();
+    }
+
+    public long getDeadLetterCount() {
+        return deadLetterCount.get();
+    }
+
+    public long computeDelay(final int attempt) {
+        final long maxDelay = getMaxDelay(attempt);
+        // keep at least half of the delay so retries still back off
+        return maxDelay / 2 + ThreadLocalRandom.current().nextLong(maxDelay / 2 + 1);
+    }
+
+    private long getMaxDelay(final int attempt) {
+        final int shift = Math.min(attempt - 1, 30);
+        return Math.min(maxDelayMillis, initialDelayMillis << shift);
+    }
+
+    private class RetryTask implements Runnable {
+        private final ExtensionProperties properties;
+
+        private final Session session;
+
+        private final Message message;
+
+        private final CompletableFuture<Void> future;
+
+        private int attempts = 1;
+
+        private Throwable lastFailure;
+
+        public RetryTask(final ExtensionProperties properties, final Session session, final Message message, final CompletableFuture<Void> future) {
+            this.properties = properties;
+            this.session = session;
+            this.message = message;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            attempts++;
+            retryCount.incrementAndGet();
+            try {
+                javaMailWrapper.sendMessage(properties, session, message);
+                pendingTasks.remove(this);
+                recoveredCount.incrementAndGet();
+                logger.info("Delivered an email on attempt {}", attempts);
+                future.complete(null);
+            } catch (final MessagingException e) {
+                failed(e);
+            } catch (final RuntimeException e) {
+                lastFailure = e;
+                giveUp();
+            }
+        }
+
+        public void failed(final MessagingException exception) {
+            lastFailure = exception;
+            if (!failureClassifier.isTransient(exception) || attempts >= maxAttempts) {
+                giveUp();
+                return;
+            }
+            final long delay = computeDelay(attempts);
+            logger.debug("Retrying an email in {} ms after attempt {} failed: {}", delay, attempts, exception.getMessage());
+            pendingTasks.add(this);
+            try {
+                executor.schedule(this, delay, TimeUnit.MILLISECONDS);
+            } catch (final RejectedExecutionException e) {
+                pendingTasks.remove(this);
+                future.completeExceptionally(e);
+            }
+        }
+
+        public void giveUp() {
+            pendingTasks.remove(this);
+            deadLetterCount.incrementAndGet();
+            if (deadLetterStore != null) {
+                try {
+                    deadLetterStore.store(properties, message, lastFailure, attempts);
+                } catch (final IOException | MessagingException e) {
+                    logger.error("Could not store the undelivered email in the dead letter store", e);
+                }
+            }
+            future.completeExceptionally(lastFailure);
+        }
+
+        public CompletableFuture<Void> getFuture() {
+            return future;
+        }
+    }
+}
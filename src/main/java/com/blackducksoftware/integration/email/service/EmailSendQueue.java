@@ -0,0 +1,175 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Message;
+import javax.mail.Session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+import com.blackducksoftware.integration.email.model.JavaMailWrapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+// bounded queue of rendered messages drained by a fixed set of sender threads so a slow mail relay only holds up the
+// senders and not the threads fetching and rendering the digests.
+public class EmailSendQueue {
+    private final Logger logger = LoggerFactory.getLogger(EmailSendQueue.class);
+
+    private final JavaMailWrapper javaMailWrapper;
+
+    private final ArrayBlockingQueue<Runnable> queue;
+
+    private final ThreadPoolExecutor executor;
+
+    private final SendQueueFullPolicy fullPolicy;
+
+    private final long blockTimeoutMillis;
+
+    private final AtomicLong sentCount = new AtomicLong();
+
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public EmailSendQueue(final JavaMailWrapper javaMailWrapper, final int senderThreads, final int capacity, final SendQueueFullPolicy fullPolicy,
+            final long blockTimeoutMillis) {
+        this.javaMailWrapper = javaMailWrapper;
+        this.fullPolicy = fullPolicy;
+        this.blockTimeoutMillis = blockTimeoutMillis;
+        queue = new ArrayBlockingQueue<>(capacity);
+        final ThreadFactory threadFactory = new ThreadFactoryBuilder().setNameFormat("email-sender-%d").setDaemon(true).build();
+        executor = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS, queue, threadFactory);
+        // the tasks are offered to the queue directly so the senders have to be running already
+        executor.prestartAllCoreThreads();
+    }
+
+    public CompletableFuture<Void> submit(final ExtensionProperties properties, final Session session, final Message message) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final SendTask task = new SendTask(properties, session, message, future);
+        if (executor.isShutdown()) {
+            reject(future, "The email send queue is shut down");
+            return future;
+        }
+        boolean queued;
+        try {
+            if (fullPolicy == SendQueueFullPolicy.BLOCK) {
+                queued = queue.offer(task, blockTimeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                queued = queue.offer(task);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+        if (!queued) {
+            reject(future, "The email send queue is full");
+        } else if (executor.isShutdown() && queue.remove(task)) {
+            // shut down while offering; the senders may already be gone
+            reject(future, "The email send queue is shut down");
+        }
+        return future;
+    }
+
+    public void shutdown(final long timeoutMillis) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("{} emails were still queued when the send queue was stopped", queue.size());
+                cancelQueued();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancelQueued();
+        }
+        logger.info("Email send queue stopped. sent {} failed {} rejected {}", sentCount.get(), failedCount.get(), rejectedCount.get());
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private void cancelQueued() {
+        for (final Runnable task : executor.shutdownNow()) {
+            reject(((SendTask) task).getFuture(), "The email send queue was stopped before the email was sent");
+        }
+    }
+
+    private void reject(final CompletableFuture<Void> future, final String reason) {
+        rejectedCount.incrementAndGet();
+        future.completeExceptionally(new RejectedExecutionException(reason));
+    }
+
+    private class SendTask implements Runnable {
+        private final ExtensionProperties properties;
+
+        private final Session session;
+
+        private final Message message;
+
+        private final CompletableFuture<Void> future;
+
+        public SendTask(final ExtensionProperties properties, final Session session, final Message message, final CompletableFuture<Void> future) {
+            this.properties = properties;
+            this.session = session;
+            this.message = message;
+            this.future = future;
+        }
+
+        @Override
+        public void run() {
+            try {
+                javaMailWrapper.sendMessage(properties, session, message);
+                sentCount.incrementAndGet();
+                future.complete(null);
+            } catch (final Exception e) {
+                failedCount.incrementAndGet();
+                future.completeExceptionally(e);
+            }
+        }
+
+        public CompletableFuture<Void> getFuture() {
+            return future;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import freemarker.core.Environment;
+import freemarker.template.TemplateDirectiveBody;
+import freemarker.template.TemplateDirectiveModel;
+import freemarker.template.TemplateException;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+import freemarker.template.utility.DeepUnwrap;
+
+// the <@fragment name="..." key=...> directive: the nested content is rendered once per template, name and key content
+// and pasted in from the cache afterwards. digest.ftl wraps each project block with the project as key, so a project
+// shared by many users is only rendered once. The nested content must only depend on the key; keys whose class does not
+// print its content are rendered every time.
+public class FragmentCache implements TemplateDirectiveModel {
+    public static final String DIRECTIVE_NAME = "fragment";
+
+    private static final String NAME_PARAMETER = "name";
+
+    private static final String KEY_PARAMETER = "key";
+
+    private final Cache<String, String> fragmentCache;
+
+    private final boolean enabled;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    public FragmentCache(final long maximumSize, final long expireAfterWriteMillis) {
+        enabled = maximumSize > 0;
+        fragmentCache = CacheBuilder.newBuilder().maximumSize(Math.max(0, maximumSize))
+                .expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS).build();
+    }
+
+    @Override
+    public void execute(final Environment env, @SuppressWarnings("rawtypes") final Map params, final TemplateModel[] loopVars,
+            final TemplateDirectiveBody body) throws TemplateException, IOException {
+        if (body == null) {
+            return;
+        }
+        final String fragmentKey = enabled ? getFragmentKey(env, params) : null;
+        if (fragmentKey == null) {
+            body.render(env.getOut());
+            return;
+        }
+        final String cached = fragmentCache.getIfPresent(fragmentKey);
+        if (cached != null) {
+            hitCount.incrementAndGet();
+            env.getOut().write(cached);
+            return;
+        }
+        missCount.incrementAndGet();
+        try {
+            env.getOut().write(fragmentCache.get(fragmentKey, () -> render(body)));
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof TemplateException) {
+                throw (TemplateException) e.getCause();
+            }
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new TemplateModelException(e.getCause());
+        }
+    }
+
+    public void invalidateAll() {
+        fragmentCache.invalidateAll();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private String render(final TemplateDirectiveBody body) throws TemplateException, IOException {
+        final StringWriter writer = new StringWriter();
+        body.render(writer);
+        return writer.toString();
+    }
+
+    private String getFragmentKey(final Environment env, @SuppressWarnings("rawtypes") final Map params) throws TemplateModelException {
+        final TemplateModel keyModel = (TemplateModel) params.get(KEY_PARAMETER);
+        if (keyModel == null) {
+            throw new TemplateModelException("The " + DIRECTIVE_NAME + " directive needs a " + KEY_PARAMETER + " parameter");
+        }
+        final Object key = DeepUnwrap.unwrap(keyModel);
+        if (!printsContent(key)) {
+            return null;
+        }
+        final TemplateModel nameModel = (TemplateModel) params.get(NAME_PARAMETER);
+        final String name = nameModel == null ? "" : String.valueOf(DeepUnwrap.unwrap(nameModel));
+        final String fragment = env.getCurrentTemplate().getName() + "|" + name + "|" + key;
+        return Hashing.sha256().hashString(fragment, StandardCharsets.UTF_8).toString();
+    }
+
+    private boolean printsContent(final Object key) {
+        try {
+            return key != null && key.getClass().getMethod("toString").getDeclaringClass() != Object.class;
+        } catch (final NoSuchMethodException e) {
+            return false;
+        }
+    }
+}
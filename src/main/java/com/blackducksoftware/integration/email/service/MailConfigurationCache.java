@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.Session;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+
+// the local properties merged with the Hub global configuration and the JavaMail sessions built from them. A run
+// passes the same global configuration for every email, so the merge and the session are only rebuilt when the
+// content of the global configuration changes.
+public class MailConfigurationCache {
+    private static final int MAX_SESSIONS = 16;
+
+    private final ExtensionProperties localProperties;
+
+    private final Map<Map<String, String>, Session> sessionMap = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private volatile MergedProperties mergedProperties;
+
+    public MailConfigurationCache(final ExtensionProperties localProperties) {
+        this.localProperties = localProperties;
+    }
+
+    public ExtensionProperties getProperties(final ExtensionProperties hubConfiguredProperties) {
+        if (hubConfiguredProperties == null) {
+            return localProperties;
+        }
+        final Properties hubProperties = hubConfiguredProperties.getAppProperties();
+        final MergedProperties current = mergedProperties;
+        if (current != null && current.matches(hubProperties)) {
+            hitCount.incrementAndGet();
+            return current.getProperties();
+        }
+        missCount.incrementAndGet();
+        // use the hub global configuration as default and let the local
+        // properties file value override the values from
+        // the Hub
+        final ExtensionProperties properties = new ExtensionProperties(localProperties.getAppProperties(), hubProperties);
+        mergedProperties = new MergedProperties(hubProperties, properties);
+        return properties;
+    }
+
+    // settings read back from disk hold no credentials; they get the ones of the current configuration when it is for the
+    // same mail server
+    public ExtensionProperties restoreCredentials(final ExtensionProperties storedProperties, final ExtensionProperties hubConfiguredProperties) {
+        final ExtensionProperties currentProperties = getProperties(hubConfiguredProperties);
+        final Properties appProperties = new Properties();
+        for (final Map.Entry<String, String> entry : storedProperties.getPropertiesForSession().entrySet()) {
+            appProperties.setProperty(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + entry.getKey(), entry.getValue());
+        }
+        if (StringUtils.equals(currentProperties.getHost(), storedProperties.getHost())) {
+            for (final Map.Entry<String, String> entry : currentProperties.getPropertiesForSession().entrySet()) {
+                if (ExtensionProperties.isCredentialKey(entry.getKey())) {
+                    appProperties.setProperty(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return new ExtensionProperties(appProperties);
+    }
+
+    public Session getSession(final ExtensionProperties properties) {
+        final Map<String, String> sessionProperties = properties.getPropertiesForSession();
+        Session session = sessionMap.get(sessionProperties);
+        if (session == null) {
+            if (sessionMap.size() >= MAX_SESSIONS) {
+                sessionMap.clear();
+            }
+            final Properties props = new Properties();
+            props.putAll(sessionProperties);
+            session = Session.getInstance(props);
+            sessionMap.put(new HashMap<>(sessionProperties), session);
+        }
+        return session;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    private static class MergedProperties {
+        private final Map<Object, Object> fingerprint;
+
+        private final ExtensionProperties properties;
+
+        public MergedProperties(final Properties source, final ExtensionProperties properties) {
+            this.fingerprint = new HashMap<>(source);
+            this.properties = properties;
+        }
+
+        public boolean matches(final Properties hubProperties) {
+            return fingerprint.equals(hubProperties);
+        }
+
+        public ExtensionProperties getProperties() {
+            return properties;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackducksoftware.integration.email.model.AssignedProjectItem;
+import com.blackducksoftware.integration.email.model.AssignedProjectPage;
+import com.blackducksoftware.integration.hub.api.user.UserItem;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+import com.blackducksoftware.integration.hub.service.HubRequestService;
+
+public class ProjectAssignmentService {
+    private static final int PAGE_SIZE = 100;
+
+    private final HubRequestService hubRequestService;
+
+    public ProjectAssignmentService(final HubRequestService hubRequestService) {
+        this.hubRequestService = hubRequestService;
+    }
+
+    public Set<String> getAssignedProjectUrls(final UserItem user) throws HubIntegrationException {
+        final String projectsUrl = user.getMeta().getHref() + "/projects";
+        final Set<String> projectUrlSet = new HashSet<>();
+        int offset = 0;
+        int totalCount = 0;
+        do {
+            final String pageUrl = projectsUrl + "?limit=" + PAGE_SIZE + "&offset=" + offset;
+            final AssignedProjectPage page = hubRequestService.getItem(pageUrl, AssignedProjectPage.class);
+            if (page == null || page.getItems().isEmpty()) {
+                break;
+            }
+            for (final AssignedProjectItem item : page.getItems()) {
+                if (StringUtils.isNotBlank(item.getProject())) {
+                    projectUrlSet.add(item.getProject());
+                }
+            }
+            totalCount = page.getTotalCount();
+            offset += page.getItems().size();
+        } while (offset < totalCount);
+        return projectUrlSet;
+    }
+}
@@ -0,0 +1,236 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import javax.mail.Address;
+import javax.mail.BodyPart;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Multipart;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+import com.google.common.hash.Funnels;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+// collects emails whose subject, sender and body are byte for byte the same and turns each collection into one message
+// with every address as a blind copy recipient, so the mail server gets one transaction per group instead of one per
+// user. Bodies only match when they came out of the render cache, so grouping needs it turned on.
+public class RecipientGroupBuffer {
+    private static final String[] SHARED_HEADERS = new String[] { "Subject", "From", "Reply-To" };
+
+    private final int maxRecipients;
+
+    private final Map<String, RecipientGroup> groupMap = new LinkedHashMap<>();
+
+    public RecipientGroupBuffer(final int maxRecipients) {
+        this.maxRecipients = maxRecipients;
+    }
+
+    // returns the group once it reached the recipient limit, null while it can take more recipients
+    public synchronized RecipientGroup add(final ExtensionProperties properties, final Session session, final MimeMessage message,
+            final CompletableFuture<Void> future) throws MessagingException, IOException {
+        final String groupKey = createGroupKey(properties, message);
+        RecipientGroup group = groupMap.get(groupKey);
+        if (group == null) {
+            group = new RecipientGroup(properties, session, message);
+            groupMap.put(groupKey, group);
+        }
+        group.add(message.getRecipients(Message.RecipientType.TO), future);
+        if (group.getRecipientCount() >= maxRecipients) {
+            groupMap.remove(groupKey);
+            return group;
+        }
+        return null;
+    }
+
+    public synchronized List<RecipientGroup> drain() {
+        final List<RecipientGroup> groups = new ArrayList<>(groupMap.values());
+        groupMap.clear();
+        return groups;
+    }
+
+    public synchronized int getPendingCount() {
+        int pending = 0;
+        for (final RecipientGroup group : groupMap.values()) {
+            pending += group.getRecipientCount();
+        }
+        return pending;
+    }
+
+    private String createGroupKey(final ExtensionProperties properties, final MimeMessage message) throws MessagingException, IOException {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        hasher.putString(String.valueOf(properties.getPropertiesForSession()), StandardCharsets.UTF_8);
+        for (final String header : SHARED_HEADERS) {
+            hasher.putString(header, StandardCharsets.UTF_8).putString(String.valueOf(message.getHeader(header, ",")), StandardCharsets.UTF_8);
+        }
+        // the top level multipart gets a new boundary per message; its parts are the shared content
+        final Object content = message.getContent();
+        try (final OutputStream output = Funnels.asOutputStream(hasher)) {
+            if (content instanceof Multipart) {
+                final Multipart multipart = (Multipart) content;
+                for (int index = 0; index < multipart.getCount(); index++) {
+                    final BodyPart bodyPart = multipart.getBodyPart(index);
+                    bodyPart.writeTo(output);
+                }
+            } else {
+                message.writeTo(output, new String[] { "To", "Cc", "Bcc", "Message-ID", "Date" });
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    public static class RecipientGroup {
+        private final ExtensionProperties properties;
+
+        private final Session session;
+
+        private final MimeMessage message;
+
+        private final List<Address> recipients = new ArrayList<>();
+
+        private final List<Member> members = new ArrayList<>();
+
+        public RecipientGroup(final ExtensionProperties properties, final Session session, final MimeMessage message) {
+            this.properties = properties;
+            this.session = session;
+            this.message = message;
+        }
+
+        private void add(final Address[] addresses, final CompletableFuture<Void> future) {
+            final Address[] memberAddresses = addresses == null ? new Address[0] : addresses;
+            Collections.addAll(recipients, memberAddresses);
+            members.add(new Member(memberAddresses, future));
+        }
+
+        // a single recipient keeps the message as it was made; more get it as blind copies with no visible recipients
+        public Message createMessage() throws MessagingException {
+            if (recipients.size() > 1) {
+                message.setRecipients(Message.RecipientType.TO, (Address[]) null);
+                message.setRecipients(Message.RecipientType.BCC, recipients.toArray(new Address[recipients.size()]));
+                message.saveChanges();
+            }
+            return message;
+        }
+
+        // the message of one member on its own, for members the group message did not reach
+        public Message createMessage(final Member member) throws MessagingException {
+            final MimeMessage memberMessage = new MimeMessage(message);
+            memberMessage.setRecipients(Message.RecipientType.TO, member.getAddresses());
+            memberMessage.setRecipients(Message.RecipientType.BCC, (Address[]) null);
+            memberMessage.saveChanges();
+            return memberMessage;
+        }
+
+        // completes the future of every member from the outcome of the group message and returns the members that have to
+        // be sent on their own. When the server rejected some addresses, only their members fail; members whose addresses
+        // were accepted but did not get the message because of the rejection are returned.
+        public List<Member> complete(final Throwable exception) {
+            final List<Member> unsentMembers = new ArrayList<>();
+            if (exception == null) {
+                for (final Member member : members) {
+                    member.getFuture().complete(null);
+                }
+                return unsentMembers;
+            }
+            final Set<Address> sentAddresses = new HashSet<>();
+            final Set<Address> invalidAddresses = new HashSet<>();
+            if (exception instanceof SendFailedException && members.size() > 1) {
+                final SendFailedException sendFailure = (SendFailedException) exception;
+                addAll(sentAddresses, sendFailure.getValidSentAddresses());
+                addAll(invalidAddresses, sendFailure.getInvalidAddresses());
+            }
+            for (final Member member : members) {
+                final List<Address> addresses = Arrays.asList(member.getAddresses());
+                if (!addresses.isEmpty() && sentAddresses.containsAll(addresses)) {
+                    member.getFuture().complete(null);
+                } else if (invalidAddresses.isEmpty() || !Collections.disjoint(invalidAddresses, addresses)) {
+                    member.getFuture().completeExceptionally(exception);
+                } else {
+                    unsentMembers.add(member);
+                }
+            }
+            return unsentMembers;
+        }
+
+        public ExtensionProperties getProperties() {
+            return properties;
+        }
+
+        public Session getSession() {
+            return session;
+        }
+
+        public int getRecipientCount() {
+            return recipients.size();
+        }
+
+        public List<CompletableFuture<Void>> getFutures() {
+            final List<CompletableFuture<Void>> futures = new ArrayList<>(members.size());
+            for (final Member member : members) {
+                futures.add(member.getFuture());
+            }
+            return futures;
+        }
+
+        private void addAll(final Set<Address> addressSet, final Address[] addresses) {
+            if (addresses != null) {
+                Collections.addAll(addressSet, addresses);
+            }
+        }
+    }
+
+    public static class Member {
+        private final Address[] addresses;
+
+        private final CompletableFuture<Void> future;
+
+        public Member(final Address[] addresses, final CompletableFuture<Void> future) {
+            this.addresses = addresses;
+            this.future = future;
+        }
+
+        public Address[] getAddresses() {
+            return addresses;
+        }
+
+        public CompletableFuture<Void> getFuture() {
+            return future;
+        }
+    }
+}
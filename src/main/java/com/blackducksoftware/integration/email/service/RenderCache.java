@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.mail.MessagingException;
+import javax.mail.internet.MimeBodyPart;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import freemarker.template.ObjectWrapper;
+import freemarker.template.TemplateHashModel;
+import freemarker.template.TemplateModel;
+import freemarker.template.TemplateModelException;
+
+// rendered email bodies (html, text and embedded images, already MIME encoded) keyed by a hash of the model values the
+// templates read while rendering them. A template that never looks at the user fields gives every user with the same
+// digest the same key, so it is rendered once per distinct digest; one that does is simply rendered per user. The
+// subject and the headers are still made per message.
+public class RenderCache {
+    private static final int MAX_KEY_SETS = 8;
+
+    private final Cache<String, byte[]> bodyCache;
+
+    // the model keys each render read, per template; a model matching a cached render on all of them renders the same
+    private final ConcurrentMap<String, List<Set<String>>> keySetMap = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    public RenderCache(final long maximumSize, final long expireAfterWriteMillis) {
+        bodyCache = CacheBuilder.newBuilder().maximumSize(maximumSize).expireAfterWrite(expireAfterWriteMillis, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    // everything besides the model that goes into the body: the template, how the text is made and the image files
+    public String getRenderName(final String templateName, final TextContentMode textContentMode,
+            final Map<String, String> contentIdsToFilePaths) {
+        return templateName + "|" + textContentMode + "|" + new TreeMap<>(contentIdsToFilePaths);
+    }
+
+    // a fresh copy of the cached body for the model, null when it has to be rendered
+    public MimeBodyPart getBodyPart(final String renderName, final Map<String, Object> model) throws MessagingException {
+        final List<Set<String>> keySets = keySetMap.get(renderName);
+        if (keySets != null) {
+            for (final Set<String> keySet : keySets) {
+                final byte[] body = bodyCache.getIfPresent(fingerprint(renderName, keySet, model));
+                if (body != null) {
+                    hitCount.incrementAndGet();
+                    return new RenderedBodyPart(body);
+                }
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    public void putBodyPart(final String renderName, final TrackingModel trackingModel, final MimeBodyPart bodyPart)
+            throws MessagingException, IOException {
+        final Set<String> keySet = trackingModel.getAccessedKeys();
+        final List<Set<String>> keySets = keySetMap.computeIfAbsent(renderName, key -> new CopyOnWriteArrayList<>());
+        if (!keySets.contains(keySet)) {
+            if (keySets.size() >= MAX_KEY_SETS) {
+                return;
+            }
+            keySets.add(keySet);
+        }
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        bodyPart.writeTo(body);
+        bodyCache.put(fingerprint(renderName, keySet, trackingModel.getModel()), body.toByteArray());
+    }
+
+    public TrackingModel track(final Map<String, Object> model, final ObjectWrapper objectWrapper) {
+        return new TrackingModel(model, objectWrapper);
+    }
+
+    public void invalidateAll() {
+        bodyCache.invalidateAll();
+        keySetMap.clear();
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    // the digest model objects print their whole content, so equal strings mean the template sees equal values; objects
+    // without a content based toString only cost a cache miss
+    private String fingerprint(final String renderName, final Set<String> keySet, final Map<String, Object> model) {
+        final Hasher hasher = Hashing.sha256().newHasher();
+        putString(hasher, renderName);
+        for (final String key : keySet) {
+            putString(hasher, key);
+            putString(hasher, String.valueOf(model.get(key)));
+        }
+        return hasher.hash().toString();
+    }
+
+    private void putString(final Hasher hasher, final String value) {
+        hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+    }
+
+    // the data model handed to Freemarker; it records every top level variable the templates look up
+    public static class TrackingModel implements TemplateHashModel {
+        private final Map<String, Object> model;
+
+        private final ObjectWrapper objectWrapper;
+
+        private final Set<String> accessedKeys = Collections.synchronizedSet(new HashSet<>());
+
+        public TrackingModel(final Map<String, Object> model, final ObjectWrapper objectWrapper) {
+            this.model = model;
+            this.objectWrapper = objectWrapper;
+        }
+
+        @Override
+        public TemplateModel get(final String key) throws TemplateModelException {
+            accessedKeys.add(key);
+            return objectWrapper.wrap(model.get(key));
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return model.isEmpty();
+        }
+
+        public Map<String, Object> getModel() {
+            return model;
+        }
+
+        public Set<String> getAccessedKeys() {
+            return new TreeSet<>(accessedKeys);
+        }
+    }
+
+    // a body part parsed from the cached bytes; its headers are final so it is written out as it was cached
+    private static class RenderedBodyPart extends MimeBodyPart {
+        public RenderedBodyPart(final byte[] body) throws MessagingException {
+            super(new ByteArrayInputStream(body));
+        }
+
+        @Override
+        protected void updateHeaders() {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.io.IOException;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.SendFailedException;
+
+import com.blackducksoftware.integration.email.model.SmtpReplyCodes;
+
+// decides whether a failed send is worth retrying. 4xx replies (greylisting, throttling, mailbox busy) and connection
+// problems are transient, 5xx replies, rejected credentials and rejected addresses without a reply code are permanent.
+public class SmtpFailureClassifier {
+    public boolean isTransient(final Throwable exception) {
+        final Boolean transientFailure = SmtpReplyCodes.walkCauses(exception, current -> {
+            final int returnCode = SmtpReplyCodes.getReturnCode(current);
+            if (returnCode > 0) {
+                return returnCode / 100 == 4;
+            }
+            if (current instanceof AuthenticationFailedException) {
+                return false;
+            }
+            if (current instanceof IOException) {
+                return true;
+            }
+            return null;
+        });
+        if (transientFailure != null) {
+            return transientFailure;
+        }
+        return !(exception instanceof SendFailedException);
+    }
+}
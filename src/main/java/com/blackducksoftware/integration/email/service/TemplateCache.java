@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateNotFoundException;
+
+// compiled subject line templates keyed by their source text and body templates keyed by name. Body templates are
+// looked up again once the Freemarker update delay has passed so edited files are still picked up; with update checks
+// turned off they stay until invalidated. Invalidate through EmailMessagingService so the content rendered with the old
+// templates is dropped as well.
+public class TemplateCache {
+    public static final String SUBJECT_LINE_TEMPLATE_NAME = "subjectLineTemplate";
+
+    public static final String TEMPLATE_FILE_SUFFIX = ".ftl";
+
+    public static final String TEXT_TEMPLATE_FILE_SUFFIX = ".txt.ftl";
+
+    public static final long MAX_SUBJECT_TEMPLATES = 256;
+
+    private final Logger logger = LoggerFactory.getLogger(TemplateCache.class);
+
+    private final Configuration configuration;
+
+    private final LoadingCache<String, Template> subjectTemplateCache;
+
+    private final LoadingCache<String, Template> templateCache;
+
+    private final LoadingCache<String, Optional<Template>> textTemplateCache;
+
+    public TemplateCache(final Configuration configuration) {
+        this.configuration = configuration;
+        subjectTemplateCache = CacheBuilder.newBuilder().maximumSize(MAX_SUBJECT_TEMPLATES).recordStats().build(new CacheLoader<String, Template>() {
+            @Override
+            public Template load(final String subjectLine) throws IOException {
+                return new Template(SUBJECT_LINE_TEMPLATE_NAME, subjectLine, configuration);
+            }
+        });
+        final CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+        final long updateDelay = configuration.getTemplateUpdateDelayMilliseconds();
+        if (updateDelay < Long.MAX_VALUE) {
+            builder.expireAfterWrite(updateDelay, TimeUnit.MILLISECONDS);
+        }
+        templateCache = builder.build(new CacheLoader<String, Template>() {
+            @Override
+            public Template load(final String templateName) throws IOException {
+                return configuration.getTemplate(templateName);
+            }
+        });
+        // a missing companion is remembered as well so templates without one do not hit the template loader per email
+        textTemplateCache = builder.build(new CacheLoader<String, Optional<Template>>() {
+            @Override
+            public Optional<Template> load(final String templateName) throws IOException {
+                try {
+                    return Optional.of(configuration.getTemplate(getTextTemplateName(templateName)));
+                } catch (final TemplateNotFoundException e) {
+                    return Optional.absent();
+                }
+            }
+        });
+    }
+
+    public static String getTextTemplateName(final String templateName) {
+        return StringUtils.removeEnd(templateName, TEMPLATE_FILE_SUFFIX) + TEXT_TEMPLATE_FILE_SUFFIX;
+    }
+
+    public Template getSubjectTemplate(final String subjectLine) throws IOException {
+        return get(subjectTemplateCache, subjectLine);
+    }
+
+    public Template getTemplate(final String templateName) throws IOException {
+        return get(templateCache, templateName);
+    }
+
+    // the plain text companion of a template, null when there is none
+    public Template getTextTemplate(final String templateName) throws IOException {
+        return get(textTemplateCache, templateName).orNull();
+    }
+
+    public void invalidate(final String templateName) {
+        templateCache.invalidate(templateName);
+        textTemplateCache.invalidate(templateName);
+        textTemplateCache.invalidate(StringUtils.removeEnd(templateName, TEXT_TEMPLATE_FILE_SUFFIX) + TEMPLATE_FILE_SUFFIX);
+        try {
+            configuration.removeTemplateFromCache(templateName);
+        } catch (final IOException e) {
+            logger.debug("Could not remove the template {} from the Freemarker cache", templateName, e);
+        }
+    }
+
+    public void invalidateAll() {
+        subjectTemplateCache.invalidateAll();
+        templateCache.invalidateAll();
+        textTemplateCache.invalidateAll();
+        configuration.clearTemplateCache();
+    }
+
+    // compiles every template of the directory and the given subject lines so the first emails of a run do not pay for
+    // parsing
+    public int preload(final File templateDirectory, final Collection<String> subjectLines) {
+        int loaded = 0;
+        final File[] templateFiles = templateDirectory == null ? null
+                : templateDirectory.listFiles((dir, name) -> name.endsWith(TEMPLATE_FILE_SUFFIX));
+        if (templateFiles != null) {
+            for (final File templateFile : templateFiles) {
+                try {
+                    getTemplate(templateFile.getName());
+                    loaded++;
+                } catch (final IOException e) {
+                    logger.error("Could not compile the template {}", templateFile, e);
+                }
+            }
+        }
+        for (final String subjectLine : subjectLines) {
+            try {
+                getSubjectTemplate(subjectLine);
+                loaded++;
+            } catch (final IOException e) {
+                logger.error("Could not compile the subject line {}", subjectLine, e);
+            }
+        }
+        return loaded;
+    }
+
+    public long getHitCount() {
+        return subjectTemplateCache.stats().hitCount() + templateCache.stats().hitCount() + textTemplateCache.stats().hitCount();
+    }
+
+    public long getMissCount() {
+        return subjectTemplateCache.stats().missCount() + templateCache.stats().missCount() + textTemplateCache.stats().missCount();
+    }
+
+    private <T> T get(final LoadingCache<String, T> cache, final String key) throws IOException {
+        try {
+            return cache.get(key);
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
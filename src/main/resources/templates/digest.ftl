@@ -22,6 +22,7 @@
         <br/>
           <#if topicsList?? && topicsList?size gt 0> 
               <#list topicsList as topic>
+                <@fragment name="project" key=topic>
                   <div style="background: #DDDDDD;margin:0px;padding-left: 15px;padding-top: 20px;padding-bottom: 20px;">
                     <div style="font-family: Arial, FreeSans, Helvetica, sans-serif;font-weight: bold;font-size: 18px;color: #445B68;margin-bottom: 10px;">${topic.projectName} > ${topic.projectVersion}</div>
                     <#if topic.categoryMap?? && topic.categoryMap?size gt 0> 
@@ -71,6 +72,7 @@
                       </#list>
                     </#if>
                   </div>
+                </@fragment>
                   <div style="height: 20px;"></div>
               </#list>
           </#if>
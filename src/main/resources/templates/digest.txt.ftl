@@ -0,0 +1,48 @@
+<#-- plain text part of digest.ftl, used when hub.email.template.text.mode is set to TEMPLATE -->
+BLACKDUCK ${emailCategory} DIGEST
+
+Black Duck captured the following new policy violations and vulnerabilities.
+See more details in the Hub: ${hub_server_url}
+
+<#if topicsList?? && topicsList?size gt 0>
+<#list topicsList as topic>
+<@fragment name="project" key=topic>
+${topic.projectName} > ${topic.projectVersion}
+<#if topic.categoryMap?? && topic.categoryMap?size gt 0>
+<#list topic.categoryMap?values as categoryItem>
+<#if categoryItem.itemList?? && categoryItem.itemList?size gt 0>
+<#assign categoryType="${categoryItem.categoryKey}">
+<#if categoryType == "POLICY_VIOLATION">
+<#assign categoryName="Policy Violations">
+<#elseif categoryType == "POLICY_VIOLATION_CLEARED">
+<#assign categoryName="Policy Violations Cleared">
+<#elseif categoryType == "POLICY_VIOLATION_OVERRIDE">
+<#assign categoryName="Policy Violation Overrides">
+<#elseif categoryType == "HIGH_VULNERABILITY">
+<#assign categoryName="High Vulnerabilities">
+<#elseif categoryType == "MEDIUM_VULNERABILITY">
+<#assign categoryName="Medium Vulnerabilities">
+<#elseif categoryType == "LOW_VULNERABILITY">
+<#assign categoryName="Low Vulnerabilities">
+<#else>
+<#assign categoryName="${categoryItem.categoryKey}">
+</#if>
+
+  ${categoryItem.itemCount} ${categoryName}
+<#list categoryItem.itemList as item>
+<#if item.dataSet?? && item.dataSet?size gt 0>
+   <#list item.dataSet as itemEntry><#if itemEntry?index gte 10><#break></#if><#assign itemType="${itemEntry.key}"><#if itemType == "RULE"> Rule: ${itemEntry.value}<#elseif itemType == "COMPONENT"> Component: ${itemEntry.value}<#elseif itemType == "COUNT"> (${itemEntry.value})<#elseif itemType == "PERSON"> By: ${itemEntry.value}<#else> ${itemEntry.key}${itemEntry.value}</#if></#list>
+
+</#if>
+<#if item.dataSet?size gt 10>
+    ${item.dataSet?size - 10} more
+</#if>
+</#list>
+</#if>
+</#list>
+</#if>
+</@fragment>
+
+</#list>
+</#if>
+Powered by BLACKDUCK
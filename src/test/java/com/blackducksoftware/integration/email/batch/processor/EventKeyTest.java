@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.batch.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class EventKeyTest {
+
+    @Test
+    public void testEqualParts() {
+        final EventKey key = EventKey.create("p", "http://localhost/api/projects/1/versions/1", "http://localhost/api/components/1");
+        final EventKey sameKey = EventKey.create("p", "http://localhost/api/projects/1/versions/1", "http://localhost/api/components/1");
+        assertEquals(key, sameKey);
+        assertEquals(key.hashCode(), sameKey.hashCode());
+        assertEquals(key.toString(), sameKey.toString());
+        assertEquals(32, key.toString().length());
+    }
+
+    @Test
+    public void testStringHashCollisions() {
+        // "Aa" and "BB" have the same String.hashCode()
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertNotEquals(EventKey.create("v", "Aa"), EventKey.create("v", "BB"));
+    }
+
+    @Test
+    public void testPartBoundaries() {
+        assertNotEquals(EventKey.create("v", "ab", "c"), EventKey.create("v", "a", "bc"));
+        assertNotEquals(EventKey.create("v", null, "a"), EventKey.create("v", "", "a"));
+    }
+
+    @Test
+    public void testManyDistinctKeys() {
+        final Set<EventKey> keys = new HashSet<>();
+        for (int index = 0; index < 100000; index++) {
+            keys.add(EventKey.create("v", "http://localhost/api/projects/1/versions/1", "http://localhost/api/components/" + index + "/versions/1"));
+        }
+        assertEquals(100000, keys.size());
+    }
+}
@@ -34,7 +34,10 @@ import java.util.TreeSet;
 import org.joda.time.DateTime;
 import org.junit.Test;
 import org.mockito.Mockito;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import com.blackducksoftware.integration.email.model.batch.ItemEntryTable;
 import com.blackducksoftware.integration.email.model.batch.ProjectData;
 import com.blackducksoftware.integration.hub.api.component.version.ComponentVersion;
 import com.blackducksoftware.integration.hub.api.notification.VulnerabilitySourceQualifiedId;
@@ -49,6 +52,11 @@ import com.blackducksoftware.integration.hub.service.HubRequestService;
 public class NotificationCapacityTest {
     private static final int NOTIFICATION_COUNT = 1000;
 
+    // the smallest saving of a reused item entry: the duplicate ItemEntry object itself
+    private static final int MINIMUM_ENTRY_BYTES_SAVED = 24;
+
+    private final Logger logger = LoggerFactory.getLogger(NotificationCapacityTest.class);
+
     private final ProcessorTestUtil testUtil = new ProcessorTestUtil();
 
     private List<VulnerabilitySourceQualifiedId> createVulnerbilityList() {
@@ -374,4 +382,55 @@ public class NotificationCapacityTest {
         assertFalse(projectData.isEmpty());
     }
 
+    // every vulnerability of the component is read once to build its severity index no matter how many events
+    // reference it, so matching the 100 CVE events stays linear in the number of vulnerability ids.
+    @Test
+    public void testProcessorVulnerabilitiesLinearLookups() throws Exception {
+        final List<VulnerabilitySourceQualifiedId> vulnerabilitySourceList = createVulnerbilityList();
+        // setup rest service mocks
+        final List<VulnerabilityItem> vulnerabilityList = new ArrayList<>();
+        for (final VulnerabilityItem vulnerability : testUtil.createVulnerabiltyItemList(vulnerabilitySourceList)) {
+            vulnerabilityList.add(Mockito.spy(vulnerability));
+        }
+        final VulnerabilityRequestService vulnerabilityRequestService = Mockito.mock(VulnerabilityRequestService.class);
+        final HubRequestService hubRequestService = Mockito.mock(HubRequestService.class);
+        final ComponentVersion compVersion = Mockito.mock(ComponentVersion.class);
+        Mockito.when(compVersion.getLink(Mockito.anyString())).thenReturn(ProcessorTestUtil.COMPONENT_VERSION_URL);
+        Mockito.when(hubRequestService.getItem(Mockito.anyString(), Mockito.eq(ComponentVersion.class))).thenReturn(compVersion);
+        Mockito.when(vulnerabilityRequestService.getComponentVersionVulnerabilities(Mockito.anyString())).thenReturn(vulnerabilityList);
+
+        final SortedSet<NotificationContentItem> notificationSet = createVulnerabilityAddedList(vulnerabilitySourceList);
+        final NotificationProcessor processor = new NotificationProcessor(hubRequestService, vulnerabilityRequestService);
+        final Collection<ProjectData> projectData = processor.process(notificationSet);
+        assertFalse(projectData.isEmpty());
+        Mockito.verify(vulnerabilityRequestService, Mockito.times(1)).getComponentVersionVulnerabilities(Mockito.anyString());
+        for (final VulnerabilityItem vulnerability : vulnerabilityList) {
+            Mockito.verify(vulnerability, Mockito.atMost(1)).getVulnerabilityName();
+            Mockito.verify(vulnerability, Mockito.atMost(1)).getSeverity();
+        }
+    }
+
+    @Test
+    public void testProcessorComplexNotificationSetMemory() throws Exception {
+        final List<VulnerabilitySourceQualifiedId> vulnerabilitySourceList = createVulnerbilityList();
+        // setup rest service mocks
+        final List<VulnerabilityItem> vulnerabilityList = testUtil.createVulnerabiltyItemList(vulnerabilitySourceList);
+        final ComponentVersion compVersion = Mockito.mock(ComponentVersion.class);
+        Mockito.when(compVersion.getLink(Mockito.anyString())).thenReturn(ProcessorTestUtil.COMPONENT_VERSION_URL);
+        final VulnerabilityRequestService vulnerabilityRequestService = Mockito.mock(VulnerabilityRequestService.class);
+        final HubRequestService hubRequestService = Mockito.mock(HubRequestService.class);
+        Mockito.when(hubRequestService.getItem(Mockito.anyString(), Mockito.eq(ComponentVersion.class))).thenReturn(compVersion);
+        Mockito.when(vulnerabilityRequestService.getComponentVersionVulnerabilities(Mockito.anyString())).thenReturn(vulnerabilityList);
+
+        final SortedSet<NotificationContentItem> notificationSet = createComplexNotificationList(vulnerabilitySourceList);
+        final ItemEntryTable itemEntryTable = new ItemEntryTable();
+        final NotificationProcessor processor = new NotificationProcessor(new VulnerabilityLookupCache(hubRequestService, vulnerabilityRequestService),
+                itemEntryTable);
+        final Collection<ProjectData> projectData = processor.process(notificationSet);
+        logger.info("Complex notification list memory: {}", itemEntryTable.getMemoryReport());
+        assertFalse(projectData.isEmpty());
+        // the events repeat a small set of components and rules, so most entries are shared
+        assertTrue(itemEntryTable.getEntryReuseCount() > itemEntryTable.getEntryCount());
+        assertTrue(itemEntryTable.getBytesSaved() >= itemEntryTable.getEntryReuseCount() * MINIMUM_ENTRY_BYTES_SAVED);
+    }
 }
@@ -29,6 +29,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -44,6 +45,7 @@ import org.mockito.Mockito;
 import com.blackducksoftware.integration.email.model.batch.CategoryData;
 import com.blackducksoftware.integration.email.model.batch.ItemData;
 import com.blackducksoftware.integration.email.model.batch.ItemEntry;
+import com.blackducksoftware.integration.email.model.batch.ItemEntryTable;
 import com.blackducksoftware.integration.email.model.batch.ProjectData;
 import com.blackducksoftware.integration.hub.api.component.version.ComponentVersion;
 import com.blackducksoftware.integration.hub.api.notification.VulnerabilitySourceQualifiedId;
@@ -113,6 +115,18 @@ public class NotificationProcessorTest {
         assertPolicyDataValid(projectList, NotificationCategoryEnum.POLICY_VIOLATION);
     }
 
+    @Test(expected = UnsupportedOperationException.class)
+    public void testItemDataReadOnly() throws Exception {
+        final SortedSet<NotificationContentItem> notifications = new TreeSet<>();
+        notifications.add(
+                testUtil.createPolicyViolation(new Date(), ProcessorTestUtil.PROJECT_NAME, ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT,
+                        ProcessorTestUtil.VERSION));
+        final Collection<ProjectData> projectList = createMockedNotificationProcessor().process(notifications);
+
+        final CategoryData categoryData = projectList.iterator().next().getCategoryMap().get(NotificationCategoryEnum.POLICY_VIOLATION);
+        categoryData.getItemList().get(0).getDataSet().add(new ItemEntry(ItemTypeEnum.RULE.name(), "added later"));
+    }
+
     @Test
     public void testPolicyViolationOverride() throws Exception {
         final SortedSet<NotificationContentItem> notifications = new TreeSet<>();
@@ -594,4 +608,44 @@ public class NotificationProcessorTest {
         assertEquals(1, categoryItemMap.get(NotificationCategoryEnum.HIGH_VULNERABILITY.name()).intValue());
         assertEquals(2, categoryItemMap.get(NotificationCategoryEnum.MEDIUM_VULNERABILITY.name()).intValue());
     }
+
+    @Test
+    public void testPolicyOnlyFilter() throws Exception {
+        final SortedSet<NotificationContentItem> notifications = new TreeSet<>();
+        final List<VulnerabilitySourceQualifiedId> vulnerabilities = new LinkedList<>();
+        vulnerabilities.add(new VulnerabilitySourceQualifiedId(ProcessorTestUtil.VULN_SOURCE, ProcessorTestUtil.HIGH_VULN_ID));
+        DateTime dateTime = new DateTime();
+        notifications.add(testUtil.createPolicyViolation(dateTime.toDate(), ProcessorTestUtil.PROJECT_NAME,
+                ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+        dateTime = dateTime.plusSeconds(1);
+        notifications.add(testUtil.createVulnerability(dateTime.toDate(), ProcessorTestUtil.PROJECT_NAME,
+                ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION, vulnerabilities, Collections.emptyList(),
+                Collections.emptyList()));
+        final VulnerabilityRequestService vulnerabilityRequestService = Mockito.mock(VulnerabilityRequestService.class);
+        final HubRequestService hubRequestService = Mockito.mock(HubRequestService.class);
+        final NotificationProcessor processor = new NotificationProcessor(new VulnerabilityLookupCache(hubRequestService, vulnerabilityRequestService),
+                new ItemEntryTable(), EnumSet.of(NotificationCategoryEnum.POLICY_VIOLATION));
+        final Collection<ProjectData> projectList = processor.process(notifications);
+
+        assertFalse(projectList.isEmpty());
+        for (final ProjectData projectData : projectList) {
+            assertEquals(1, projectData.getCategoryMap().size());
+            assertTrue(projectData.getCategoryMap().containsKey(NotificationCategoryEnum.POLICY_VIOLATION));
+        }
+        Mockito.verifyZeroInteractions(hubRequestService, vulnerabilityRequestService);
+    }
+
+    @Test
+    public void testViolationFilterStillCancelled() throws Exception {
+        final SortedSet<NotificationContentItem> notifications = new TreeSet<>();
+        DateTime dateTime = new DateTime();
+        notifications.add(testUtil.createPolicyViolation(dateTime.toDate(), ProcessorTestUtil.PROJECT_NAME,
+                ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+        dateTime = dateTime.plusSeconds(1);
+        notifications.add(testUtil.createPolicyCleared(dateTime.toDate(), ProcessorTestUtil.PROJECT_NAME,
+                ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+        final NotificationProcessor processor = new NotificationProcessor(new VulnerabilityLookupCache(Mockito.mock(HubRequestService.class),
+                Mockito.mock(VulnerabilityRequestService.class)), new ItemEntryTable(), EnumSet.of(NotificationCategoryEnum.POLICY_VIOLATION));
+        assertTrue(processor.process(notifications).isEmpty());
+    }
 }
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.batch.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.blackducksoftware.integration.email.model.batch.ProjectData;
+import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityRequestService;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+import com.blackducksoftware.integration.hub.service.HubRequestService;
+
+public class ProjectDataCacheTest {
+    private final ProcessorTestUtil testUtil = new ProcessorTestUtil();
+
+    private ProjectDataCache createCache() {
+        final VulnerabilityRequestService vulnerabilityRequestService = Mockito.mock(VulnerabilityRequestService.class);
+        final HubRequestService hubRequestService = Mockito.mock(HubRequestService.class);
+        return new ProjectDataCache(new VulnerabilityLookupCache(hubRequestService, vulnerabilityRequestService));
+    }
+
+    @Test
+    public void testProjectDataShared() throws Exception {
+        final DateTime dateTime = DateTime.now();
+        final SortedSet<NotificationContentItem> notifications = new TreeSet<>();
+        notifications.add(testUtil.createPolicyViolation(dateTime.plusSeconds(1).toDate(), ProcessorTestUtil.PROJECT_NAME,
+                ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+        notifications.add(testUtil.createPolicyViolation(dateTime.plusSeconds(2).toDate(), ProcessorTestUtil.PROJECT_NAME2,
+                ProcessorTestUtil.PROJECT_VERSION_NAME2, ProcessorTestUtil.COMPONENT2, ProcessorTestUtil.VERSION2));
+
+        final ProjectDataCache cache = createCache();
+        final Collection<ProjectData> firstUser = cache.process(notifications);
+        final Collection<ProjectData> secondUser = cache.process(notifications);
+        assertEquals(2, firstUser.size());
+        assertEquals(2, secondUser.size());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.getHitCount());
+        final Iterator<ProjectData> secondIterator = secondUser.iterator();
+        for (final ProjectData projectData : firstUser) {
+            assertSame(projectData, secondIterator.next());
+        }
+    }
+
+    @Test
+    public void testSameSizeSlicesNotShared() throws Exception {
+        final DateTime dateTime = DateTime.now();
+        final SortedSet<NotificationContentItem> firstSlice = new TreeSet<>();
+        firstSlice.add(testUtil.createPolicyViolation(dateTime.plusSeconds(1).toDate(), ProcessorTestUtil.PROJECT_NAME,
+                ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+        final SortedSet<NotificationContentItem> secondSlice = new TreeSet<>();
+        secondSlice.add(testUtil.createPolicyViolation(dateTime.plusSeconds(2).toDate(), ProcessorTestUtil.PROJECT_NAME,
+                ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT2, ProcessorTestUtil.VERSION2));
+
+        final ProjectDataCache cache = createCache();
+        final Collection<ProjectData> firstUser = cache.process(firstSlice);
+        final Collection<ProjectData> secondUser = cache.process(secondSlice);
+        assertEquals(2, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+        assertNotSame(firstUser.iterator().next(), secondUser.iterator().next());
+    }
+
+    @Test
+    public void testCancellationWithinProjectVersion() throws Exception {
+        final DateTime dateTime = DateTime.now();
+        final SortedSet<NotificationContentItem> notifications = new TreeSet<>();
+        notifications.add(testUtil.createPolicyViolation(dateTime.plusSeconds(1).toDate(), ProcessorTestUtil.PROJECT_NAME,
+                ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+        notifications.add(testUtil.createPolicyCleared(dateTime.plusSeconds(2).toDate(), ProcessorTestUtil.PROJECT_NAME,
+                ProcessorTestUtil.PROJECT_VERSION_NAME, ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+        notifications.add(testUtil.createPolicyViolation(dateTime.plusSeconds(3).toDate(), ProcessorTestUtil.PROJECT_NAME2,
+                ProcessorTestUtil.PROJECT_VERSION_NAME2, ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+
+        final Collection<ProjectData> projectList = createCache().process(notifications);
+        assertEquals(1, projectList.size());
+        assertEquals(ProcessorTestUtil.PROJECT_NAME2, projectList.iterator().next().getProjectName());
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.batch.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.blackducksoftware.integration.hub.api.component.version.ComponentVersion;
+import com.blackducksoftware.integration.hub.api.vulnerability.SeverityEnum;
+import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityItem;
+import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityRequestService;
+import com.blackducksoftware.integration.hub.service.HubRequestService;
+
+public class VulnerabilityLookupCacheTest {
+    private static final String COMPONENT_VERSION_URL_1 = ProcessorTestUtil.COMPONENT_URL_PREFIX + "component1/versions/1";
+
+    private static final String COMPONENT_VERSION_URL_2 = ProcessorTestUtil.COMPONENT_URL_PREFIX + "component2/versions/2";
+
+    private final ProcessorTestUtil testUtil = new ProcessorTestUtil();
+
+    @Test
+    public void testLookupsCached() throws Exception {
+        final List<VulnerabilityItem> vulnerabilityList = Collections
+                .singletonList(testUtil.createVulnerability(ProcessorTestUtil.HIGH_VULN_ID, SeverityEnum.HIGH));
+        final ComponentVersion compVersion = Mockito.mock(ComponentVersion.class);
+        Mockito.when(compVersion.getLink(Mockito.anyString())).thenReturn(ProcessorTestUtil.COMPONENT_VERSION_URL);
+        final VulnerabilityRequestService vulnerabilityRequestService = Mockito.mock(VulnerabilityRequestService.class);
+        final HubRequestService hubRequestService = Mockito.mock(HubRequestService.class);
+        Mockito.when(hubRequestService.getItem(Mockito.anyString(), Mockito.eq(ComponentVersion.class))).thenReturn(compVersion);
+        Mockito.when(vulnerabilityRequestService.getComponentVersionVulnerabilities(Mockito.anyString())).thenReturn(vulnerabilityList);
+
+        final VulnerabilityLookupCache cache = new VulnerabilityLookupCache(hubRequestService, vulnerabilityRequestService, 1, 60);
+        for (int index = 0; index < 5; index++) {
+            assertEquals(vulnerabilityList, cache.getVulnerabilities(COMPONENT_VERSION_URL_1));
+        }
+        Mockito.verify(hubRequestService, Mockito.times(1)).getItem(COMPONENT_VERSION_URL_1, ComponentVersion.class);
+        Mockito.verify(vulnerabilityRequestService, Mockito.times(1)).getComponentVersionVulnerabilities(ProcessorTestUtil.COMPONENT_VERSION_URL);
+        assertEquals(4, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.getVulnerabilities(COMPONENT_VERSION_URL_2);
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testMissingComponentVersion() throws Exception {
+        final VulnerabilityRequestService vulnerabilityRequestService = Mockito.mock(VulnerabilityRequestService.class);
+        final HubRequestService hubRequestService = Mockito.mock(HubRequestService.class);
+        final VulnerabilityLookupCache cache = new VulnerabilityLookupCache(hubRequestService, vulnerabilityRequestService);
+        assertTrue(cache.getVulnerabilities(COMPONENT_VERSION_URL_1).isEmpty());
+        assertTrue(cache.getVulnerabilities("").isEmpty());
+    }
+
+    @Test
+    public void testAsyncLookupsDeduplicated() throws Exception {
+        final List<VulnerabilityItem> vulnerabilityList = Collections
+                .singletonList(testUtil.createVulnerability(ProcessorTestUtil.HIGH_VULN_ID, SeverityEnum.HIGH));
+        final ComponentVersion compVersion = Mockito.mock(ComponentVersion.class);
+        Mockito.when(compVersion.getLink(Mockito.anyString())).thenReturn(ProcessorTestUtil.COMPONENT_VERSION_URL);
+        final VulnerabilityRequestService vulnerabilityRequestService = Mockito.mock(VulnerabilityRequestService.class);
+        final HubRequestService hubRequestService = Mockito.mock(HubRequestService.class);
+        final CountDownLatch lookupStarted = new CountDownLatch(1);
+        final CountDownLatch releaseLookup = new CountDownLatch(1);
+        Mockito.when(hubRequestService.getItem(Mockito.anyString(), Mockito.eq(ComponentVersion.class))).thenAnswer(invocation -> {
+            lookupStarted.countDown();
+            releaseLookup.await(10, TimeUnit.SECONDS);
+            return compVersion;
+        });
+        Mockito.when(vulnerabilityRequestService.getComponentVersionVulnerabilities(Mockito.anyString())).thenReturn(vulnerabilityList);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final VulnerabilityLookupCache cache = new VulnerabilityLookupCache(hubRequestService, vulnerabilityRequestService, 10, 60, executor);
+            final CompletableFuture<VulnerabilitySeverityIndex> first = cache.getSeverityIndexAsync(COMPONENT_VERSION_URL_1);
+            assertTrue(lookupStarted.await(10, TimeUnit.SECONDS));
+            final CompletableFuture<VulnerabilitySeverityIndex> second = cache.getSeverityIndexAsync(COMPONENT_VERSION_URL_1);
+            assertSame(first, second);
+            assertEquals(1, cache.getInFlightCount());
+            releaseLookup.countDown();
+            assertEquals(vulnerabilityList, first.get(10, TimeUnit.SECONDS).getVulnerabilityList());
+            Mockito.verify(hubRequestService, Mockito.times(1)).getItem(COMPONENT_VERSION_URL_1, ComponentVersion.class);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
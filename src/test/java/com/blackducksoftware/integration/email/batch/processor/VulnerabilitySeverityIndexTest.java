@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.batch.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.api.vulnerability.SeverityEnum;
+import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityItem;
+
+public class VulnerabilitySeverityIndexTest {
+
+    @Test
+    public void testCategoryLookup() {
+        final ProcessorTestUtil testUtil = new ProcessorTestUtil();
+        final List<VulnerabilityItem> vulnerabilityList = new ArrayList<>();
+        vulnerabilityList.add(testUtil.createVulnerability("CVE-1", SeverityEnum.HIGH));
+        vulnerabilityList.add(testUtil.createVulnerability("CVE-2", SeverityEnum.MEDIUM));
+        vulnerabilityList.add(testUtil.createVulnerability("CVE-3", SeverityEnum.LOW));
+        vulnerabilityList.add(testUtil.createVulnerability("CVE-4", SeverityEnum.UNKNOWN));
+        final VulnerabilitySeverityIndex index = new VulnerabilitySeverityIndex(vulnerabilityList);
+
+        assertEquals(4, index.size());
+        assertEquals(vulnerabilityList, index.getVulnerabilityList());
+        assertEquals(NotificationCategoryEnum.HIGH_VULNERABILITY, index.getCategory("CVE-1"));
+        assertEquals(NotificationCategoryEnum.MEDIUM_VULNERABILITY, index.getCategory("CVE-2"));
+        assertEquals(NotificationCategoryEnum.LOW_VULNERABILITY, index.getCategory("CVE-3"));
+        assertEquals(NotificationCategoryEnum.VULNERABILITY, index.getCategory("CVE-4"));
+        assertNull(index.getCategory("CVE-5"));
+    }
+}
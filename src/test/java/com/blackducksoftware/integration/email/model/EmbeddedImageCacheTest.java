@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Properties;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeBodyPart;
+import javax.mail.internet.MimeMessage;
+import javax.mail.internet.MimeMultipart;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EmbeddedImageCacheTest {
+    private static final byte[] IMAGE = new byte[] { (byte) 0x89, 'P', 'N', 'G', 0, 1, 2, 3, 4, 5, 6, 7, 8, 9 };
+
+    private static final byte[] CHANGED_IMAGE = new byte[] { (byte) 0x89, 'P', 'N', 'G', 9, 8, 7, 6, 5, 4, 3, 2, 1, 0, 1 };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File createImage() throws Exception {
+        final File imageFile = folder.newFile("logo.png");
+        FileUtils.writeByteArrayToFile(imageFile, IMAGE);
+        return imageFile;
+    }
+
+    private void changeImage(final File imageFile) throws Exception {
+        final long lastModified = imageFile.lastModified();
+        FileUtils.writeByteArrayToFile(imageFile, CHANGED_IMAGE);
+        imageFile.setLastModified(lastModified + 2000);
+    }
+
+    private byte[] readContent(final MimeBodyPart bodyPart) throws Exception {
+        return IOUtils.toByteArray(bodyPart.getInputStream());
+    }
+
+    @Test
+    public void testImageLoadedOnce() throws Exception {
+        final File imageFile = createImage();
+        final EmbeddedImageCache imageCache = new EmbeddedImageCache(Long.MAX_VALUE);
+        final MimeBodyPart first = imageCache.createBodyPart(imageFile.getAbsolutePath(), "<logo@blackducksoftware.com>");
+        final MimeBodyPart second = imageCache.createBodyPart(imageFile.getAbsolutePath(), "<logo@blackducksoftware.com>");
+        assertArrayEquals(IMAGE, readContent(first));
+        assertArrayEquals(IMAGE, readContent(second));
+        assertEquals("<logo@blackducksoftware.com>", second.getContentID());
+        assertEquals("base64", second.getEncoding());
+        assertEquals(1, imageCache.getLoadCount());
+        assertEquals(1, imageCache.getHitCount());
+
+        changeImage(imageFile);
+        assertArrayEquals(IMAGE, readContent(imageCache.createBodyPart(imageFile.getAbsolutePath(), "<logo>")));
+        imageCache.invalidateAll();
+        assertArrayEquals(CHANGED_IMAGE, readContent(imageCache.createBodyPart(imageFile.getAbsolutePath(), "<logo>")));
+    }
+
+    @Test
+    public void testChangedImageReloaded() throws Exception {
+        final File imageFile = createImage();
+        final EmbeddedImageCache imageCache = new EmbeddedImageCache(0);
+        assertArrayEquals(IMAGE, readContent(imageCache.createBodyPart(imageFile.getAbsolutePath(), "<logo>")));
+        assertArrayEquals(IMAGE, readContent(imageCache.createBodyPart(imageFile.getAbsolutePath(), "<logo>")));
+        assertEquals(1, imageCache.getLoadCount());
+
+        changeImage(imageFile);
+        assertArrayEquals(CHANGED_IMAGE, readContent(imageCache.createBodyPart(imageFile.getAbsolutePath(), "<logo>")));
+        assertEquals(2, imageCache.getLoadCount());
+    }
+
+    @Test
+    public void testMessageWrittenFromCache() throws Exception {
+        final File imageFile = createImage();
+        final EmbeddedImageCache imageCache = new EmbeddedImageCache(Long.MAX_VALUE);
+        final MimeMultipartBuilder builder = new MimeMultipartBuilder(imageCache);
+        builder.addHtmlContent("<img src=\"cid:logo\"/>");
+        builder.addEmbeddedImages(Collections.singletonMap("<logo>", imageFile.getAbsolutePath()));
+        final MimeMultipart mimeMultipart = builder.build();
+        final MimeMessage message = new MimeMessage(Session.getInstance(new Properties()));
+        message.setContent(mimeMultipart);
+        message.saveChanges();
+
+        // the file is gone, the message has to be written from the cached bytes
+        FileUtils.forceDelete(imageFile);
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        message.writeTo(output);
+        assertTrue(output.toString("US-ASCII").contains("Content-ID: <logo>"));
+        assertTrue(output.toString("US-ASCII").contains(Base64.getMimeEncoder().encodeToString(IMAGE)));
+    }
+
+    @Test
+    public void testPreload() throws Exception {
+        final File imageFile = createImage();
+        final EmbeddedImageCache imageCache = new EmbeddedImageCache(Long.MAX_VALUE);
+        assertEquals(1, imageCache.preload(Arrays.asList(imageFile.getAbsolutePath(), new File(folder.getRoot(), "missing.png").getAbsolutePath())));
+        imageCache.createBodyPart(imageFile.getAbsolutePath(), "<logo>");
+        assertEquals(1, imageCache.getHitCount());
+    }
+
+    @Test(expected = MessagingException.class)
+    public void testMissingImage() throws Exception {
+        new EmbeddedImageCache(Long.MAX_VALUE).createBodyPart(new File(folder.getRoot(), "missing.png").getAbsolutePath(), "<logo>");
+    }
+}
@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Test;
+import org.mockito.Matchers;
+import org.mockito.Mockito;
+
+public class JavaMailWrapperTest {
+    private final List<Transport> transportList = new ArrayList<>();
+
+    private final Session session = Session.getInstance(new Properties());
+
+    private ExtensionProperties createProperties() {
+        final Properties properties = new Properties();
+        properties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_HOST_KEY, "localhost");
+        properties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_PORT_KEY, "2525");
+        return new ExtensionProperties(properties);
+    }
+
+    private SmtpTransportPool createPool(final int maxMessages, final long validateAfterMillis) {
+        return createPool(maxMessages, 60000, validateAfterMillis);
+    }
+
+    private SmtpTransportPool createPool(final int maxMessages, final long idleTimeoutMillis, final long validateAfterMillis) {
+        return new SmtpTransportPool(2, maxMessages, idleTimeoutMillis, validateAfterMillis) {
+            @Override
+            protected Transport createTransport(final Session session) {
+                final Transport transport = Mockito.mock(Transport.class);
+                Mockito.when(transport.isConnected()).thenReturn(true);
+                transportList.add(transport);
+                return transport;
+            }
+        };
+    }
+
+    private Message createMessage() throws MessagingException {
+        final Message message = new MimeMessage(session);
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("user@localhost"));
+        return message;
+    }
+
+    @Test
+    public void testConnectionReused() throws Exception {
+        final JavaMailWrapper wrapper = new JavaMailWrapper(createPool(100, 60000));
+        final ExtensionProperties properties = createProperties();
+        for (int index = 0; index < 5; index++) {
+            wrapper.sendMessage(properties, session, createMessage());
+        }
+        assertEquals(1, transportList.size());
+        Mockito.verify(transportList.get(0)).connect();
+        Mockito.verify(transportList.get(0), Mockito.times(5)).sendMessage(Matchers.any(Message.class), Matchers.any());
+        assertEquals(4, wrapper.getTransportPool().getReuseCount());
+        assertEquals(1, wrapper.getTransportPool().getIdleCount());
+        // connections used within the validation interval are not checked with a NOOP
+        Mockito.verify(transportList.get(0), Mockito.never()).isConnected();
+
+        wrapper.close();
+        Mockito.verify(transportList.get(0)).close();
+        assertEquals(0, wrapper.getTransportPool().getIdleCount());
+    }
+
+    @Test
+    public void testMaxMessagesPerConnection() throws Exception {
+        final JavaMailWrapper wrapper = new JavaMailWrapper(createPool(2, 60000));
+        final ExtensionProperties properties = createProperties();
+        for (int index = 0; index < 5; index++) {
+            wrapper.sendMessage(properties, session, createMessage());
+        }
+        assertEquals(3, transportList.size());
+        Mockito.verify(transportList.get(0)).close();
+        Mockito.verify(transportList.get(1)).close();
+    }
+
+    @Test
+    public void testFailedHealthCheck() throws Exception {
+        final JavaMailWrapper wrapper = new JavaMailWrapper(createPool(100, 0));
+        final ExtensionProperties properties = createProperties();
+        wrapper.sendMessage(properties, session, createMessage());
+        Mockito.when(transportList.get(0).isConnected()).thenReturn(false);
+        wrapper.sendMessage(properties, session, createMessage());
+        assertEquals(2, transportList.size());
+        Mockito.verify(transportList.get(0)).close();
+        Mockito.verify(transportList.get(1)).sendMessage(Matchers.any(Message.class), Matchers.any());
+    }
+
+    @Test
+    public void testReconnectOnDroppedConnection() throws Exception {
+        final JavaMailWrapper wrapper = new JavaMailWrapper(createPool(100, 60000));
+        final ExtensionProperties properties = createProperties();
+        wrapper.sendMessage(properties, session, createMessage());
+        Mockito.doThrow(new MessagingException("connection dropped")).when(transportList.get(0)).sendMessage(Matchers.any(Message.class),
+                Matchers.any());
+        wrapper.sendMessage(properties, session, createMessage());
+        assertEquals(2, transportList.size());
+        Mockito.verify(transportList.get(0)).close();
+        Mockito.verify(transportList.get(1)).sendMessage(Matchers.any(Message.class), Matchers.any());
+        assertEquals(1, wrapper.getTransportPool().getIdleCount());
+    }
+
+    @Test
+    public void testRejectedRecipientKeepsConnection() throws Exception {
+        final JavaMailWrapper wrapper = new JavaMailWrapper(createPool(100, 60000));
+        final ExtensionProperties properties = createProperties();
+        wrapper.sendMessage(properties, session, createMessage());
+        Mockito.doThrow(new SendFailedException("recipient rejected")).when(transportList.get(0)).sendMessage(Matchers.any(Message.class),
+                Matchers.any());
+        try {
+            wrapper.sendMessage(properties, session, createMessage());
+            fail("Expected the rejected recipient to be reported");
+        } catch (final SendFailedException e) {
+            assertEquals(1, transportList.size());
+            assertEquals(1, wrapper.getTransportPool().getIdleCount());
+        }
+    }
+
+    // closing waits for the server, so other threads must still be able to use the pool while an expired connection closes
+    @Test
+    public void testExpiredConnectionClosedOutsideLock() throws Exception {
+        final SmtpTransportPool pool = createPool(100, 10, 60000);
+        final JavaMailWrapper wrapper = new JavaMailWrapper(pool);
+        final ExtensionProperties properties = createProperties();
+        wrapper.sendMessage(properties, session, createMessage());
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final AtomicInteger idleCountWhileClosing = new AtomicInteger(-1);
+        try {
+            Mockito.doAnswer(invocation -> {
+                idleCountWhileClosing.set(executorService.submit(() -> pool.getIdleCount()).get(5, TimeUnit.SECONDS));
+                return null;
+            }).when(transportList.get(0)).close();
+            Thread.sleep(50);
+            wrapper.sendMessage(properties, session, createMessage());
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(2, transportList.size());
+        Mockito.verify(transportList.get(0)).close();
+        assertEquals(0, idleCountWhileClosing.get());
+        assertEquals(1, pool.getDiscardCount());
+    }
+}
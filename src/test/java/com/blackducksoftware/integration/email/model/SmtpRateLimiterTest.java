@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.MessagingException;
+
+import org.junit.Test;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+public class SmtpRateLimiterTest {
+    private MessagingException createReply(final int returnCode) {
+        return new SMTPSendFailedException("DATA", returnCode, returnCode + " try again later", null, null, null, null);
+    }
+
+    @Test
+    public void testThrottlingReplies() {
+        final SmtpRateLimiter rateLimiter = new SmtpRateLimiter(0, 0, 4);
+        assertTrue(rateLimiter.isThrottled(createReply(421)));
+        assertTrue(rateLimiter.isThrottled(createReply(451)));
+        assertTrue(rateLimiter.isThrottled(new MessagingException("Could not connect to SMTP host: relay, port: 25, response: 421")));
+        assertTrue(rateLimiter.isThrottled(new MessagingException("send failed", createReply(452))));
+        assertFalse(rateLimiter.isThrottled(createReply(550)));
+        assertFalse(rateLimiter.isThrottled(new MessagingException("Exception reading response")));
+    }
+
+    @Test
+    public void testConcurrencyHalvedAndRegrown() throws Exception {
+        final SmtpRateLimiter rateLimiter = new SmtpRateLimiter(0, 0, 4);
+        assertEquals(4, rateLimiter.getConcurrencyLimit());
+        rateLimiter.acquire(0);
+        rateLimiter.acquire(0);
+        rateLimiter.release(createReply(421));
+        // the second failure of the same burst does not halve again
+        rateLimiter.release(createReply(421));
+        assertEquals(2, rateLimiter.getConcurrencyLimit());
+        assertEquals(2, rateLimiter.getThrottledCount());
+
+        for (int index = 0; index < 2; index++) {
+            rateLimiter.acquire(0);
+            rateLimiter.release(null);
+        }
+        assertEquals(3, rateLimiter.getConcurrencyLimit());
+        rateLimiter.acquire(0);
+        rateLimiter.release(createReply(550));
+        assertEquals(3, rateLimiter.getConcurrencyLimit());
+        assertEquals(0, rateLimiter.getInFlight());
+    }
+
+    @Test
+    public void testSendWaitsForSlot() throws Exception {
+        final SmtpRateLimiter rateLimiter = new SmtpRateLimiter(0, 0, 1);
+        rateLimiter.acquire(0);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread sender = new Thread(() -> {
+            try {
+                rateLimiter.acquire(0);
+                acquired.countDown();
+            } catch (final MessagingException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        sender.start();
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+        rateLimiter.release(null);
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        sender.join();
+        assertEquals(1, rateLimiter.getDelayedCount());
+        assertEquals(1, rateLimiter.getInFlight());
+    }
+
+    @Test
+    public void testMessageRate() throws Exception {
+        final SmtpRateLimiter rateLimiter = new SmtpRateLimiter(20, 0, 1);
+        final long start = System.currentTimeMillis();
+        for (int index = 0; index < 5; index++) {
+            rateLimiter.acquire(0);
+            rateLimiter.release(null);
+        }
+        // the first send goes right away, the others are spaced 50 ms apart
+        assertTrue(System.currentTimeMillis() - start >= 150);
+        assertTrue(rateLimiter.getDelayedCount() >= 3);
+    }
+}
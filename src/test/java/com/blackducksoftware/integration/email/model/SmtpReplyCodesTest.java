@@ -0,0 +1,57 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import javax.mail.MessagingException;
+
+import org.junit.Test;
+
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+public class SmtpReplyCodesTest {
+    @Test
+    public void testNestedReturnCode() {
+        final MessagingException exception = new MessagingException("send failed",
+                new SMTPSendFailedException("DATA", 452, "452 too many messages", null, null, null, null));
+        assertEquals(-1, SmtpReplyCodes.getReturnCode(exception));
+        assertEquals(Integer.valueOf(452), SmtpReplyCodes.walkCauses(exception, current -> {
+            final int returnCode = SmtpReplyCodes.getReturnCode(current);
+            return returnCode > 0 ? returnCode : null;
+        }));
+    }
+
+    @Test
+    public void testCauseDepthLimited() {
+        final MessagingException first = new MessagingException("first");
+        final MessagingException second = new MessagingException("second", first);
+        first.setNextException(second);
+        final int[] visited = new int[1];
+        assertNull(SmtpReplyCodes.walkCauses(second, current -> {
+            visited[0]++;
+            return null;
+        }));
+        assertEquals(SmtpReplyCodes.MAX_CAUSE_DEPTH, visited[0]);
+    }
+}
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.model.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class ItemEntryTableTest {
+
+    @Test
+    public void testEntriesShared() {
+        final ItemEntryTable table = new ItemEntryTable();
+        final ItemEntry first = table.getEntry("COMPONENT", new String("component"));
+        final ItemEntry second = table.getEntry("COMPONENT", new String("component"));
+        assertSame(first, second);
+        assertEquals(1, table.getEntryCount());
+        assertEquals(1, table.getEntryReuseCount());
+        assertTrue(table.getBytesSaved() > 0);
+    }
+
+    @Test
+    public void testStringsShared() {
+        final ItemEntryTable table = new ItemEntryTable();
+        final String value = table.intern(new String("1.0"));
+        final ItemEntry entry = table.getEntry("", new String("1.0"));
+        assertSame(value, entry.getValue());
+        assertEquals(1, table.getStringReuseCount());
+    }
+
+    @Test
+    public void testInternEntriesKeepsOrder() {
+        final ItemEntryTable table = new ItemEntryTable();
+        final ItemEntry rule = table.getEntry("RULE", "rule");
+        final Set<ItemEntry> dataSet = new LinkedHashSet<>(Arrays.asList(new ItemEntry("COMPONENT", "component"), new ItemEntry("RULE", "rule")));
+        table.internEntries(dataSet);
+        final ItemEntry[] entries = dataSet.toArray(new ItemEntry[dataSet.size()]);
+        assertEquals(2, entries.length);
+        assertEquals("COMPONENT", entries[0].getKey());
+        assertSame(rule, entries[1]);
+    }
+}
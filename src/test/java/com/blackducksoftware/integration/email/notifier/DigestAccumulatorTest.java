@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.blackducksoftware.integration.email.batch.processor.NotificationCategoryEnum;
+import com.blackducksoftware.integration.email.batch.processor.ProcessorTestUtil;
+import com.blackducksoftware.integration.email.batch.processor.VulnerabilityLookupCache;
+import com.blackducksoftware.integration.email.model.batch.ProjectData;
+import com.blackducksoftware.integration.hub.api.user.UserItem;
+import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityRequestService;
+import com.blackducksoftware.integration.hub.dataservice.notification.NotificationDataService;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+import com.blackducksoftware.integration.hub.meta.MetaInformation;
+import com.blackducksoftware.integration.hub.service.HubRequestService;
+
+public class DigestAccumulatorTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private static final Set<NotificationCategoryEnum> ALL_CATEGORIES = EnumSet.allOf(NotificationCategoryEnum.class);
+
+    private static final ProjectSubscriptionIndex NO_SUBSCRIPTIONS = new ProjectSubscriptionIndex();
+
+    private final ProcessorTestUtil testUtil = new ProcessorTestUtil();
+
+    private UserItem createUser() {
+        final UserItem userItem = Mockito.mock(UserItem.class);
+        final MetaInformation meta = Mockito.mock(MetaInformation.class);
+        Mockito.when(meta.getHref()).thenReturn("http://localhost/api/users/1");
+        Mockito.when(userItem.getMeta()).thenReturn(meta);
+        return userItem;
+    }
+
+    private DigestAccumulator createAccumulator(final NotificationDataService notificationDataService) {
+        final VulnerabilityLookupCache lookupCache = new VulnerabilityLookupCache(Mockito.mock(HubRequestService.class),
+                Mockito.mock(VulnerabilityRequestService.class));
+        return new DigestAccumulator(notificationDataService, lookupCache);
+    }
+
+    private SortedSet<NotificationContentItem> createSet(final NotificationContentItem... items) {
+        final SortedSet<NotificationContentItem> set = new TreeSet<>();
+        for (final NotificationContentItem item : items) {
+            set.add(item);
+        }
+        return set;
+    }
+
+    @Test
+    public void testViolationClearedInLaterPoll() throws Exception {
+        final UserItem userItem = createUser();
+        final Date windowStart = new Date(0);
+        final Date firstPoll = new Date(HOUR);
+        final Date secondPoll = new Date(2 * HOUR);
+        final Date windowEnd = new Date(3 * HOUR);
+        final NotificationDataService notificationDataService = Mockito.mock(NotificationDataService.class);
+        Mockito.when(notificationDataService.getUserNotifications(windowStart, firstPoll, userItem)).thenReturn(createSet(
+                testUtil.createPolicyViolation(new Date(HOUR / 2), ProcessorTestUtil.PROJECT_NAME, ProcessorTestUtil.PROJECT_VERSION_NAME,
+                        ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION)));
+        Mockito.when(notificationDataService.getUserNotifications(firstPoll, secondPoll, userItem)).thenReturn(createSet(
+                testUtil.createPolicyCleared(new Date(HOUR + HOUR / 2), ProcessorTestUtil.PROJECT_NAME, ProcessorTestUtil.PROJECT_VERSION_NAME,
+                        ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION)));
+        Mockito.when(notificationDataService.getUserNotifications(secondPoll, windowEnd, userItem)).thenReturn(new TreeSet<>());
+
+        final DigestAccumulator accumulator = createAccumulator(notificationDataService);
+        assertEquals(1, accumulator.accumulate(userItem, windowStart, firstPoll, ALL_CATEGORIES, NO_SUBSCRIPTIONS));
+        assertEquals(1, accumulator.accumulate(userItem, windowStart, secondPoll, ALL_CATEGORIES, NO_SUBSCRIPTIONS));
+        assertEquals(0, accumulator.accumulate(userItem, windowStart, secondPoll, ALL_CATEGORIES, NO_SUBSCRIPTIONS));
+        assertEquals(1, accumulator.size());
+
+        final Collection<ProjectData> projectList = accumulator.finish(userItem, windowStart, windowEnd, ALL_CATEGORIES, NO_SUBSCRIPTIONS);
+        assertTrue(projectList.isEmpty());
+        assertEquals(0, accumulator.size());
+        Mockito.verify(notificationDataService).getUserNotifications(secondPoll, windowEnd, userItem);
+    }
+
+    @Test
+    public void testFinishWithoutAccumulation() throws Exception {
+        final DigestAccumulator accumulator = createAccumulator(Mockito.mock(NotificationDataService.class));
+        assertNull(accumulator.finish(createUser(), new Date(0), new Date(HOUR), ALL_CATEGORIES, NO_SUBSCRIPTIONS));
+    }
+
+    @Test
+    public void testRemoveBefore() throws Exception {
+        final UserItem userItem = createUser();
+        final NotificationDataService notificationDataService = Mockito.mock(NotificationDataService.class);
+        Mockito.when(notificationDataService.getUserNotifications(Mockito.any(Date.class), Mockito.any(Date.class), Mockito.eq(userItem)))
+                .thenReturn(new TreeSet<>());
+        final DigestAccumulator accumulator = createAccumulator(notificationDataService);
+        accumulator.accumulate(userItem, new Date(0), new Date(HOUR), ALL_CATEGORIES, NO_SUBSCRIPTIONS);
+        accumulator.accumulate(userItem, new Date(HOUR), new Date(2 * HOUR), ALL_CATEGORIES, NO_SUBSCRIPTIONS);
+        accumulator.removeBefore(new Date(HOUR));
+        assertEquals(1, accumulator.size());
+        assertNull(accumulator.finish(userItem, new Date(0), new Date(HOUR), ALL_CATEGORIES, NO_SUBSCRIPTIONS));
+    }
+
+    @Test
+    public void testCategoryChangeRestartsWindow() throws Exception {
+        final UserItem userItem = createUser();
+        final Set<NotificationCategoryEnum> policyCategories = EnumSet.of(NotificationCategoryEnum.POLICY_VIOLATION);
+        final NotificationDataService notificationDataService = Mockito.mock(NotificationDataService.class);
+        Mockito.when(notificationDataService.getUserNotifications(Mockito.any(Date.class), Mockito.any(Date.class), Mockito.eq(userItem)))
+                .thenReturn(new TreeSet<>());
+        final DigestAccumulator accumulator = createAccumulator(notificationDataService);
+        accumulator.accumulate(userItem, new Date(0), new Date(HOUR), policyCategories, NO_SUBSCRIPTIONS);
+        accumulator.accumulate(userItem, new Date(0), new Date(2 * HOUR), ALL_CATEGORIES, NO_SUBSCRIPTIONS);
+        assertEquals(1, accumulator.size());
+        Mockito.verify(notificationDataService).getUserNotifications(new Date(0), new Date(2 * HOUR), userItem);
+
+        assertNull(accumulator.finish(userItem, new Date(0), new Date(3 * HOUR), policyCategories, NO_SUBSCRIPTIONS));
+        assertEquals(0, accumulator.size());
+    }
+
+    @Test
+    public void testWiderSubscriptionRestartsWindow() throws Exception {
+        final UserItem userItem = createUser();
+        final String userKey = userItem.getMeta().getHref();
+        final ProjectSubscriptionIndex firstProject = new ProjectSubscriptionIndex();
+        firstProject.subscribe(userKey, Collections.singletonList(ProcessorTestUtil.PROJECT_NAME));
+        final ProjectSubscriptionIndex twoProjects = new ProjectSubscriptionIndex();
+        twoProjects.subscribe(userKey, Arrays.asList(ProcessorTestUtil.PROJECT_NAME, ProcessorTestUtil.PROJECT_NAME + "2"));
+        final NotificationDataService notificationDataService = Mockito.mock(NotificationDataService.class);
+        Mockito.when(notificationDataService.getUserNotifications(Mockito.any(Date.class), Mockito.any(Date.class), Mockito.eq(userItem)))
+                .thenReturn(new TreeSet<>());
+        final DigestAccumulator accumulator = createAccumulator(notificationDataService);
+        accumulator.accumulate(userItem, new Date(0), new Date(HOUR), ALL_CATEGORIES, twoProjects);
+        // following fewer projects keeps what was accumulated
+        accumulator.accumulate(userItem, new Date(0), new Date(2 * HOUR), ALL_CATEGORIES, firstProject);
+        Mockito.verify(notificationDataService).getUserNotifications(new Date(HOUR), new Date(2 * HOUR), userItem);
+
+        accumulator.accumulate(userItem, new Date(0), new Date(3 * HOUR), ALL_CATEGORIES, twoProjects);
+        Mockito.verify(notificationDataService).getUserNotifications(new Date(0), new Date(3 * HOUR), userItem);
+
+        accumulator.accumulate(userItem, new Date(0), new Date(4 * HOUR), ALL_CATEGORIES, firstProject);
+        assertNull(accumulator.finish(userItem, new Date(0), new Date(5 * HOUR), ALL_CATEGORIES, NO_SUBSCRIPTIONS));
+    }
+}
@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import static org.junit.Assert.assertEquals;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import com.blackducksoftware.integration.email.EmailExtensionConstants;
+import com.blackducksoftware.integration.email.model.DateRange;
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+import com.blackducksoftware.integration.email.service.EmailMessagingService;
+import com.blackducksoftware.integration.hub.api.extension.ConfigurationItem;
+import com.blackducksoftware.integration.hub.api.user.UserItem;
+import com.blackducksoftware.integration.hub.api.vulnerability.VulnerabilityRequestService;
+import com.blackducksoftware.integration.hub.dataservice.extension.ExtensionConfigDataService;
+import com.blackducksoftware.integration.hub.dataservice.extension.item.UserConfigItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.NotificationDataService;
+import com.blackducksoftware.integration.hub.meta.MetaInformation;
+import com.blackducksoftware.integration.hub.rest.RestConnection;
+import com.blackducksoftware.integration.hub.service.HubRequestService;
+
+public class DigestNotifierWindowTest {
+    private static final String USER_HREF = "http://localhost/api/users/1";
+
+    private static final String CONFIG_LOCATION_PROPERTY = "ext.config.location";
+
+    private static final ZoneId UTC = ZoneId.ofOffset("UTC", ZoneOffset.UTC);
+
+    private static final LocalDateTime FIRST_RUN = LocalDateTime.of(2016, 11, 30, 0, 5);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExtensionProperties createExtensionProperties() {
+        final Properties properties = new Properties();
+        properties.setProperty(ExtensionProperties.NOTIFIER_VARIABLE_PREFIX + "all.notification.watermark", "true");
+        return new ExtensionProperties(properties);
+    }
+
+    private ConfigurationItem createConfigurationItem(final String... values) {
+        final ConfigurationItem item = Mockito.mock(ConfigurationItem.class);
+        Mockito.when(item.getValue()).thenReturn(Arrays.asList(values));
+        return item;
+    }
+
+    private UserConfigItem createUserConfig(final UserItem userItem) {
+        final Map<String, ConfigurationItem> configMap = new HashMap<>();
+        configMap.put(EmailExtensionConstants.CONFIG_KEY_OPT_IN, createConfigurationItem("true"));
+        configMap.put(EmailExtensionConstants.CONFIG_KEY_FREQUENCY, createConfigurationItem("Daily"));
+        configMap.put(EmailExtensionConstants.CONFIG_KEY_TRIGGERS, createConfigurationItem("POLICY_VIOLATION"));
+        final UserConfigItem userConfig = Mockito.mock(UserConfigItem.class);
+        Mockito.when(userConfig.getUser()).thenReturn(userItem);
+        Mockito.when(userConfig.getConfigMap()).thenReturn(configMap);
+        return userConfig;
+    }
+
+    private UserItem createUser() {
+        final UserItem userItem = Mockito.mock(UserItem.class);
+        final MetaInformation meta = Mockito.mock(MetaInformation.class);
+        Mockito.when(meta.getHref()).thenReturn(USER_HREF);
+        Mockito.when(userItem.getMeta()).thenReturn(meta);
+        return userItem;
+    }
+
+    private void assertConsecutive(final DateRange range, final DateRange nextRange) {
+        assertEquals(new Date(range.getEnd().getTime() + 1), nextRange.getStart());
+    }
+
+    @Test
+    public void testConsecutiveWindowsAreContiguous() throws Exception {
+        final DailyDigestNotifier dailyNotifier = new DailyDigestNotifier(new ExtensionProperties(new Properties()), null, null, null, null, null);
+        final WeeklyDigestNotifier weeklyNotifier = new WeeklyDigestNotifier(new ExtensionProperties(new Properties()), null, null, null, null, null);
+        final MonthlyDigestNotifier monthlyNotifier = new MonthlyDigestNotifier(new ExtensionProperties(new Properties()), null, null, null, null,
+                null);
+        try {
+            assertConsecutive(dailyNotifier.createDateRange(UTC, FIRST_RUN), dailyNotifier.createDateRange(UTC, FIRST_RUN.plusDays(1)));
+            assertConsecutive(weeklyNotifier.createDateRange(UTC, FIRST_RUN), weeklyNotifier.createDateRange(UTC, FIRST_RUN.plusWeeks(1)));
+            assertConsecutive(monthlyNotifier.createDateRange(UTC, FIRST_RUN), monthlyNotifier.createDateRange(UTC, FIRST_RUN.plusMonths(1)));
+        } finally {
+            dailyNotifier.shutdown();
+            weeklyNotifier.shutdown();
+            monthlyNotifier.shutdown();
+        }
+    }
+
+    // a user whose watermark was written by the previous run starts exactly at the next run window
+    @Test
+    public void testSecondRunStartsAtRunWindow() throws Exception {
+        final UserItem userItem = createUser();
+        final List<UserConfigItem> userConfigList = Collections.singletonList(createUserConfig(userItem));
+        final ExtensionConfigDataService extensionConfigDataService = Mockito.mock(ExtensionConfigDataService.class);
+        Mockito.when(extensionConfigDataService.getGlobalConfigMap(Mockito.anyString())).thenReturn(new HashMap<>());
+        Mockito.when(extensionConfigDataService.getUserConfigList(Mockito.anyString())).thenReturn(userConfigList);
+        final NotificationDataService notificationDataService = Mockito.mock(NotificationDataService.class);
+        Mockito.when(notificationDataService.getUserNotifications(Mockito.any(Date.class), Mockito.any(Date.class), Mockito.eq(userItem)))
+                .thenReturn(new TreeSet<>());
+        final RestConnection restConnection = Mockito.mock(RestConnection.class);
+        Mockito.when(restConnection.getBaseUrl()).thenReturn("http://localhost");
+        final HubRequestService hubRequestService = Mockito.mock(HubRequestService.class);
+        Mockito.when(hubRequestService.getRestConnection()).thenReturn(restConnection);
+
+        final String previousConfigLocation = System.getProperty(CONFIG_LOCATION_PROPERTY);
+        System.setProperty(CONFIG_LOCATION_PROPERTY, folder.getRoot().getAbsolutePath());
+        final ScheduledDailyDigestNotifier notifier;
+        try {
+            notifier = new ScheduledDailyDigestNotifier(createExtensionProperties(), Mockito.mock(EmailMessagingService.class), hubRequestService,
+                    Mockito.mock(VulnerabilityRequestService.class), extensionConfigDataService, notificationDataService);
+        } finally {
+            if (previousConfigLocation == null) {
+                System.clearProperty(CONFIG_LOCATION_PROPERTY);
+            } else {
+                System.setProperty(CONFIG_LOCATION_PROPERTY, previousConfigLocation);
+            }
+        }
+        notifier.setHubExtensionUri("http://localhost/api/extensions/1");
+        try {
+            notifier.setRunTime(FIRST_RUN);
+            notifier.run();
+            notifier.setRunTime(FIRST_RUN.plusDays(1));
+            notifier.run();
+        } finally {
+            notifier.shutdown();
+        }
+
+        final ArgumentCaptor<Date> startCaptor = ArgumentCaptor.forClass(Date.class);
+        Mockito.verify(notificationDataService, Mockito.times(2)).getUserNotifications(startCaptor.capture(), Mockito.any(Date.class),
+                Mockito.eq(userItem));
+        assertEquals(notifier.createDateRange(UTC, FIRST_RUN).getStart(), startCaptor.getAllValues().get(0));
+        assertEquals(notifier.createDateRange(UTC, FIRST_RUN.plusDays(1)).getStart(), startCaptor.getAllValues().get(1));
+    }
+
+    private static class ScheduledDailyDigestNotifier extends DailyDigestNotifier {
+        private LocalDateTime runTime;
+
+        public ScheduledDailyDigestNotifier(final ExtensionProperties customerProperties, final EmailMessagingService emailMessagingService,
+                final HubRequestService hubRequestService, final VulnerabilityRequestService vulnerabilityRequestService,
+                final ExtensionConfigDataService extensionConfigDataService, final NotificationDataService notificationDataService) {
+            super(customerProperties, emailMessagingService, hubRequestService, vulnerabilityRequestService, extensionConfigDataService,
+                    notificationDataService);
+        }
+
+        public void setRunTime(final LocalDateTime runTime) {
+            this.runTime = runTime;
+        }
+
+        @Override
+        public DateRange createDateRange(final ZoneId zone) {
+            return createDateRange(zone, runTime);
+        }
+    }
+}
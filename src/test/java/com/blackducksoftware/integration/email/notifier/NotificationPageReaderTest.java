@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import com.blackducksoftware.integration.email.batch.processor.ProcessorTestUtil;
+import com.blackducksoftware.integration.hub.api.user.UserItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.NotificationDataService;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+
+public class NotificationPageReaderTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    @Test
+    public void testPagesInOrder() throws Exception {
+        final ProcessorTestUtil testUtil = new ProcessorTestUtil();
+        final Date startDate = new Date(0);
+        final Date endDate = new Date(3 * HOUR);
+        final UserItem userItem = Mockito.mock(UserItem.class);
+        final NotificationDataService notificationDataService = Mockito.mock(NotificationDataService.class);
+        final List<NotificationContentItem> allNotifications = new ArrayList<>();
+        for (int hour = 0; hour < 3; hour++) {
+            final Date pageStart = new Date(hour * HOUR);
+            final Date pageEnd = new Date((hour + 1) * HOUR);
+            final SortedSet<NotificationContentItem> page = new TreeSet<>();
+            page.add(testUtil.createPolicyViolation(new Date(hour * HOUR + 1), "Project", "1.0", "Component" + hour, "1.0"));
+            // the service may return a notification created exactly on the end of the window
+            page.add(testUtil.createPolicyViolation(pageEnd, "Project", "1.0", "Boundary" + hour, "1.0"));
+            allNotifications.addAll(page);
+            Mockito.when(notificationDataService.getUserNotifications(pageStart, pageEnd, userItem)).thenReturn(page);
+        }
+
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (NotificationPageReader pageReader = new NotificationPageReader(notificationDataService, userItem, startDate, endDate, HOUR,
+                executorService)) {
+            final List<NotificationContentItem> readNotifications = new ArrayList<>();
+            int pageCount = 0;
+            while (pageReader.hasNextPage()) {
+                readNotifications.addAll(pageReader.nextPage());
+                pageCount++;
+            }
+            assertEquals(3, pageCount);
+            assertFalse(pageReader.hasNextPage());
+            // boundary notifications are only kept on the last page
+            assertEquals(4, readNotifications.size());
+            assertEquals(allNotifications.get(0), readNotifications.get(0));
+            assertEquals(allNotifications.get(2), readNotifications.get(1));
+            assertEquals(allNotifications.get(4), readNotifications.get(2));
+            assertEquals(allNotifications.get(5), readNotifications.get(3));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEmptyWindow() throws Exception {
+        final Date date = new Date();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (NotificationPageReader pageReader = new NotificationPageReader(Mockito.mock(NotificationDataService.class), Mockito.mock(UserItem.class),
+                date, date, HOUR, executorService)) {
+            assertFalse(pageReader.hasNextPage());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Date;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NotifierWatermarkStoreTest {
+    private static final String USER_1 = "http://localhost/api/users/1";
+
+    private static final String USER_2 = "http://localhost/api/users/2";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testWatermarksPersisted() throws Exception {
+        final File watermarkFile = new File(folder.getRoot(), "watermarks.properties");
+        final NotifierWatermarkStore store = new NotifierWatermarkStore("dailyDigest", watermarkFile);
+        assertNull(store.getWatermark(USER_1));
+
+        final Date firstRun = new Date(1000);
+        final Date secondRun = new Date(2000);
+        store.setWatermark(USER_1, firstRun);
+        store.setWatermark(USER_2, firstRun);
+        store.setWatermark(USER_1, secondRun);
+        assertFalse(watermarkFile.exists());
+        store.flush();
+        assertTrue(watermarkFile.exists());
+        assertFalse(new File(folder.getRoot(), "watermarks.properties.tmp").exists());
+
+        final NotifierWatermarkStore reloadedStore = new NotifierWatermarkStore("dailyDigest", watermarkFile);
+        assertEquals(2, reloadedStore.size());
+        assertEquals(secondRun, reloadedStore.getWatermark(USER_1));
+        assertEquals(firstRun, reloadedStore.getWatermark(USER_2));
+
+        final NotifierWatermarkStore otherNotifierStore = new NotifierWatermarkStore("weeklyDigest", watermarkFile);
+        assertNull(otherNotifierStore.getWatermark(USER_1));
+    }
+
+    @Test
+    public void testFlushBatch() throws Exception {
+        final File watermarkFile = new File(folder.getRoot(), "watermarks.properties");
+        final NotifierWatermarkStore store = new NotifierWatermarkStore("dailyDigest", watermarkFile);
+        store.setWatermark(USER_1, new Date(1000));
+        store.flush(2);
+        assertFalse(watermarkFile.exists());
+        assertEquals(1, store.getPendingCount());
+
+        store.setWatermark(USER_2, new Date(1000));
+        store.flush(2);
+        assertTrue(watermarkFile.exists());
+        assertEquals(0, store.getPendingCount());
+        assertEquals(2, new NotifierWatermarkStore("dailyDigest", watermarkFile).size());
+    }
+}
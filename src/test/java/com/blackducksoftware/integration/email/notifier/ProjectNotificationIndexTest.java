@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.api.policy.PolicyRule;
+import com.blackducksoftware.integration.hub.api.project.ProjectVersion;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.PolicyViolationContentItem;
+
+public class ProjectNotificationIndexTest {
+    private static final String PROJECT_URL_PREFIX = "http://a.hub.server/api/projects/";
+
+    private PolicyViolationContentItem createPolicyViolation(final Date createdTime, final String projectId, final String versionId)
+            throws Exception {
+        final ProjectVersion projectVersion = new ProjectVersion();
+        projectVersion.setProjectName(projectId);
+        projectVersion.setProjectVersionName(versionId);
+        projectVersion.setUrl(PROJECT_URL_PREFIX + projectId + "/versions/" + versionId);
+        final List<PolicyRule> policyRuleList = new ArrayList<>();
+        return new PolicyViolationContentItem(createdTime, projectVersion, "Component", "Version", "http://localhost/api/components/component",
+                "http://localhost/api/components/component/versions/version", policyRuleList);
+    }
+
+    @Test
+    public void testGetProjectUrl() {
+        assertEquals(PROJECT_URL_PREFIX + "p1", ProjectNotificationIndex.getProjectUrl(PROJECT_URL_PREFIX + "p1/versions/v1"));
+        assertEquals(PROJECT_URL_PREFIX + "p1", ProjectNotificationIndex.getProjectUrl(PROJECT_URL_PREFIX + "p1"));
+        assertEquals("", ProjectNotificationIndex.getProjectUrl(null));
+    }
+
+    @Test
+    public void testPartitionByProject() throws Exception {
+        final DateTime dateTime = DateTime.now();
+        final SortedSet<NotificationContentItem> notifications = new TreeSet<>();
+        notifications.add(createPolicyViolation(dateTime.plusSeconds(1).toDate(), "p1", "v1"));
+        notifications.add(createPolicyViolation(dateTime.plusSeconds(2).toDate(), "p1", "v2"));
+        notifications.add(createPolicyViolation(dateTime.plusSeconds(3).toDate(), "p2", "v1"));
+        notifications.add(createPolicyViolation(dateTime.plusSeconds(4).toDate(), "p3", "v1"));
+
+        final ProjectNotificationIndex index = new ProjectNotificationIndex(notifications);
+        assertEquals(3, index.getProjectCount());
+        assertEquals(4, index.getNotificationCount());
+
+        final Set<String> projectUrls = new HashSet<>();
+        projectUrls.add(PROJECT_URL_PREFIX + "p1");
+        projectUrls.add(PROJECT_URL_PREFIX + "p3");
+        final SortedSet<NotificationContentItem> userNotifications = index.getNotifications(projectUrls);
+        assertEquals(3, userNotifications.size());
+        for (final NotificationContentItem item : userNotifications) {
+            assertTrue(!item.getProjectVersion().getUrl().startsWith(PROJECT_URL_PREFIX + "p2"));
+        }
+
+        assertTrue(index.getNotifications(Collections.singleton(PROJECT_URL_PREFIX + "unknown")).isEmpty());
+    }
+}
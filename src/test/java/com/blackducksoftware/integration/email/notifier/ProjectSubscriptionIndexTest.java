@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.notifier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.email.batch.processor.ProcessorTestUtil;
+import com.blackducksoftware.integration.hub.dataservice.notification.item.NotificationContentItem;
+
+public class ProjectSubscriptionIndexTest {
+    private static final String USER_1 = "http://localhost/api/users/1";
+
+    private static final String USER_2 = "http://localhost/api/users/2";
+
+    private final ProcessorTestUtil testUtil = new ProcessorTestUtil();
+
+    @Test
+    public void testUserWithoutEntriesFollowsAllProjects() {
+        final ProjectSubscriptionIndex index = new ProjectSubscriptionIndex();
+        index.subscribe(USER_1, Arrays.asList("", " "));
+        index.subscribe(USER_2, Collections.emptyList());
+        assertFalse(index.hasSubscription(USER_1));
+        assertTrue(index.isSubscribed(USER_1, "Project", "1.0"));
+        assertTrue(index.isSubscribed(USER_2, "Project", "1.0"));
+        assertEquals(0, index.getSubscriberCount());
+    }
+
+    @Test
+    public void testProjectAndVersionEntries() {
+        final ProjectSubscriptionIndex index = new ProjectSubscriptionIndex();
+        index.subscribe(USER_1, Arrays.asList("Project A", " Project B:2.0 "));
+        index.subscribe(USER_2, Arrays.asList("Project A"));
+        assertTrue(index.isSubscribed(USER_1, "Project A", "1.0"));
+        assertTrue(index.isSubscribed(USER_1, "Project B", "2.0"));
+        assertFalse(index.isSubscribed(USER_1, "Project B", "1.0"));
+        assertFalse(index.isSubscribed(USER_2, "Project B", "2.0"));
+        assertEquals(2, index.getProjectCount());
+        assertEquals(2, index.getSubscriberCount());
+    }
+
+    @Test
+    public void testSplitEntries() {
+        assertEquals(Arrays.asList("Project A", " Project B:2.0"), ProjectSubscriptionIndex.splitEntries("Project A, Project B:2.0"));
+        assertEquals(Arrays.asList("Acme, Inc. Portal", "C:\\builds"), ProjectSubscriptionIndex.splitEntries("Acme\\, Inc. Portal,C:\\\\builds"));
+        assertEquals(Arrays.asList(""), ProjectSubscriptionIndex.splitEntries(""));
+        assertTrue(ProjectSubscriptionIndex.splitEntries(null).isEmpty());
+
+        final ProjectSubscriptionIndex index = new ProjectSubscriptionIndex();
+        index.subscribe(USER_1, ProjectSubscriptionIndex.splitEntries("Acme\\, Inc. Portal"));
+        assertTrue(index.isSubscribed(USER_1, "Acme, Inc. Portal", "1.0"));
+        assertFalse(index.isSubscribed(USER_1, "Acme", "1.0"));
+    }
+
+    @Test
+    public void testFilterNotifications() {
+        final ProjectSubscriptionIndex index = new ProjectSubscriptionIndex();
+        index.subscribe(USER_1, Arrays.asList(ProcessorTestUtil.PROJECT_NAME));
+        final SortedSet<NotificationContentItem> notifications = new TreeSet<>();
+        notifications.add(testUtil.createPolicyViolation(new Date(1000), ProcessorTestUtil.PROJECT_NAME, ProcessorTestUtil.PROJECT_VERSION_NAME,
+                ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+        notifications.add(testUtil.createPolicyViolation(new Date(2000), "Other Project", ProcessorTestUtil.PROJECT_VERSION_NAME,
+                ProcessorTestUtil.COMPONENT, ProcessorTestUtil.VERSION));
+
+        final SortedSet<NotificationContentItem> filtered = index.filter(USER_1, notifications);
+        assertEquals(1, filtered.size());
+        assertEquals(ProcessorTestUtil.PROJECT_NAME, filtered.first().getProjectVersion().getProjectName());
+        assertSame(notifications, index.filter(USER_2, notifications));
+    }
+}
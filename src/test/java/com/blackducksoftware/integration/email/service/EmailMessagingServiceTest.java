@@ -21,6 +21,8 @@
  *******************************************************************************/
 package com.blackducksoftware.integration.email.service;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
@@ -90,6 +92,44 @@ public class EmailMessagingServiceTest {
         engine.getEmailMessagingService().sendEmailMessage(target);
     }
 
+    @Test
+    public void testIdenticalDigestRenderedOnce() throws Exception {
+        final RenderCache renderCache = engine.getEmailMessagingService().getRenderCache();
+        final long misses = renderCache.getMissCount();
+        for (final String firstName : Arrays.asList("Alex", "Sam", "Robin")) {
+            final Map<String, Object> model = new HashMap<>();
+            model.put(AbstractDigestNotifier.KEY_USER_FIRST_NAME, firstName);
+            model.put(AbstractDigestNotifier.KEY_USER_LAST_NAME, "User");
+            model.put(AbstractDigestNotifier.KEY_TOPICS_LIST, createProjectData());
+            model.put("hub_server_url", "http://hub-a.domain.com1/");
+            model.put(AbstractDigestNotifier.KEY_NOTIFIER_CATEGORY, "Daily");
+            final EmailTarget target = new EmailTarget(firstName + "@a.domain.com1", "digest.ftl", model);
+            engine.getEmailMessagingService().sendEmailMessage(target);
+        }
+        assertEquals(misses + 1, renderCache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidateTemplatesDropsRenderedDigests() throws Exception {
+        final EmailMessagingService emailMessagingService = engine.getEmailMessagingService();
+        final RenderCache renderCache = emailMessagingService.getRenderCache();
+        final long misses = renderCache.getMissCount();
+        final Map<String, Object> model = new HashMap<>();
+        model.put(AbstractDigestNotifier.KEY_USER_FIRST_NAME, "Alex");
+        model.put(AbstractDigestNotifier.KEY_USER_LAST_NAME, "User");
+        model.put(AbstractDigestNotifier.KEY_TOPICS_LIST, createProjectData());
+        model.put("hub_server_url", "http://hub-a.domain.com1/");
+        model.put(AbstractDigestNotifier.KEY_NOTIFIER_CATEGORY, "Daily");
+        final EmailTarget target = new EmailTarget("Alex@a.domain.com1", "digest.ftl", model);
+        emailMessagingService.sendEmailMessage(target);
+        emailMessagingService.sendEmailMessage(target);
+        assertEquals(misses + 1, renderCache.getMissCount());
+
+        emailMessagingService.invalidateTemplates();
+        emailMessagingService.sendEmailMessage(target);
+        assertEquals(misses + 2, renderCache.getMissCount());
+    }
+
     private List<ProjectData> createProjectData() {
         final List<ProjectData> filteredList = new ArrayList<>();
         for (int index = 0; index < 5; index++) {
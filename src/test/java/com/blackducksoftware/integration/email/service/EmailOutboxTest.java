@@ -0,0 +1,155 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+
+import javax.mail.Message;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+import com.blackducksoftware.integration.email.service.EmailOutbox.OutboxEmail;
+
+public class EmailOutboxTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Session session = Session.getInstance(new Properties());
+
+    private ExtensionProperties createProperties() {
+        final Properties properties = new Properties();
+        properties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_HOST_KEY, "mail.a.domain.com1");
+        return new ExtensionProperties(properties);
+    }
+
+    private Message createMessage(final String subject) throws Exception {
+        final Message message = new MimeMessage(session);
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("user@a.domain.com1"));
+        message.setSubject(subject);
+        message.setText("body");
+        return message;
+    }
+
+    private File[] listSegments(final File directory) {
+        return directory.listFiles((dir, name) -> name.endsWith(EmailOutbox.SEGMENT_FILE_SUFFIX));
+    }
+
+    @Test
+    public void testPendingRecoveredAfterRestart() throws Exception {
+        final File directory = folder.newFolder();
+        final EmailOutbox outbox = new EmailOutbox(directory);
+        final long first = outbox.append(createProperties(), createMessage("first"));
+        outbox.append(createProperties(), createMessage("second"));
+        outbox.markSent(first);
+        outbox.close();
+
+        final EmailOutbox recovered = new EmailOutbox(directory);
+        final List<OutboxEmail> pendingList = recovered.getPending();
+        assertEquals(1, pendingList.size());
+        assertEquals("second", pendingList.get(0).createMessage(session).getSubject());
+        assertEquals("mail.a.domain.com1", pendingList.get(0).getProperties().getHost());
+
+        final long third = recovered.append(createProperties(), createMessage("third"));
+        assertEquals(first + 2, third);
+        recovered.close();
+    }
+
+    @Test
+    public void testCredentialsNotStored() throws Exception {
+        final File directory = folder.newFolder();
+        final Properties properties = new Properties();
+        properties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_HOST_KEY, "mail.a.domain.com1");
+        properties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_AUTH_KEY, "true");
+        properties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_USER_KEY, "mailer");
+        properties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_PASSWORD_KEY, "s3cr3t-smtp");
+        final EmailOutbox outbox = new EmailOutbox(directory);
+        outbox.append(new ExtensionProperties(properties), createMessage("first"));
+        outbox.close();
+
+        final String segment = new String(Files.readAllBytes(listSegments(directory)[0].toPath()), StandardCharsets.ISO_8859_1);
+        assertFalse(segment.contains("s3cr3t-smtp"));
+        assertFalse(segment.contains("mailer"));
+
+        final EmailOutbox recovered = new EmailOutbox(directory);
+        final ExtensionProperties storedProperties = recovered.getPending().get(0).getProperties();
+        assertEquals("mail.a.domain.com1", storedProperties.getHost());
+        assertTrue(storedProperties.isAuth());
+        assertNull(storedProperties.getPassword());
+        recovered.close();
+    }
+
+    @Test
+    public void testDeliveredSegmentsDeleted() throws Exception {
+        final File directory = folder.newFolder();
+        final EmailOutbox outbox = new EmailOutbox(directory, 1);
+        final long first = outbox.append(createProperties(), createMessage("first"));
+        final long second = outbox.append(createProperties(), createMessage("second"));
+        assertEquals(2, outbox.getSegmentCount());
+        outbox.markSent(first);
+        assertEquals(1, outbox.getSegmentCount());
+        outbox.markFailed(second);
+        assertEquals(0, outbox.getPendingCount());
+        outbox.close();
+
+        final EmailOutbox recovered = new EmailOutbox(directory, 1);
+        assertEquals(0, recovered.getPendingCount());
+        assertEquals(0, listSegments(directory).length);
+        recovered.close();
+    }
+
+    @Test
+    public void testIncompleteRecordTruncated() throws Exception {
+        final File directory = folder.newFolder();
+        final EmailOutbox outbox = new EmailOutbox(directory);
+        outbox.append(createProperties(), createMessage("first"));
+        outbox.append(createProperties(), createMessage("second"));
+        outbox.close();
+
+        final File segmentFile = listSegments(directory)[0];
+        final long completeLength = segmentFile.length();
+        try (RandomAccessFile file = new RandomAccessFile(segmentFile, "rw")) {
+            file.setLength(completeLength - 10);
+        }
+
+        final EmailOutbox recovered = new EmailOutbox(directory);
+        final List<OutboxEmail> pendingList = recovered.getPending();
+        assertEquals(1, pendingList.size());
+        assertEquals("first", pendingList.get(0).createMessage(session).getSubject());
+        recovered.close();
+    }
+}
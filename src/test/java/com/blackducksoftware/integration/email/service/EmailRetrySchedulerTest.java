@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+import com.blackducksoftware.integration.email.model.JavaMailWrapper;
+import com.blackducksoftware.integration.email.service.DeadLetterStore.DeadLetter;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+public class EmailRetrySchedulerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ExtensionProperties properties = new ExtensionProperties(new Properties());
+
+    private final Session session = Session.getInstance(new Properties());
+
+    private Message createMessage() throws MessagingException {
+        final Message message = new MimeMessage(session);
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress("user@a.domain.com1"));
+        message.setSubject("digest");
+        message.setText("body");
+        return message;
+    }
+
+    private JavaMailWrapper createFailingWrapper(final AtomicInteger attempts, final int failures, final int returnCode) {
+        return new JavaMailWrapper() {
+            @Override
+            public void sendMessage(final ExtensionProperties customerProperties, final Session session, final Message message)
+                    throws MessagingException {
+                if (attempts.incrementAndGet() <= failures) {
+                    throw new SMTPSendFailedException("DATA", returnCode, returnCode + " failed", null, null, null, null);
+                }
+            }
+        };
+    }
+
+    private MessagingException createFailure(final int returnCode) {
+        return new SMTPSendFailedException("DATA", returnCode, returnCode + " failed", null, null, null, null);
+    }
+
+    @Test
+    public void testTransientFailureRetried() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final DeadLetterStore deadLetterStore = new DeadLetterStore(folder.newFolder());
+        final EmailRetryScheduler scheduler = new EmailRetryScheduler(createFailingWrapper(attempts, 1, 451), deadLetterStore,
+                new SmtpFailureClassifier(), 1, 5, 1, 10);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        scheduler.handleFailure(properties, session, createMessage(), createFailure(451), future);
+        future.get(5, TimeUnit.SECONDS);
+        assertEquals(2, attempts.get());
+        assertEquals(1, scheduler.getRecoveredCount());
+        assertEquals(0, scheduler.getPendingCount());
+        assertTrue(deadLetterStore.list().isEmpty());
+        scheduler.shutdown(true);
+    }
+
+    @Test
+    public void testPermanentFailureDeadLettered() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final DeadLetterStore deadLetterStore = new DeadLetterStore(folder.newFolder());
+        final EmailRetryScheduler scheduler = new EmailRetryScheduler(createFailingWrapper(attempts, 0, 250), deadLetterStore,
+                new SmtpFailureClassifier(), 1, 5, 1, 10);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        scheduler.handleFailure(properties, session, createMessage(), createFailure(550), future);
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(0, attempts.get());
+
+        final List<DeadLetter> deadLetterList = deadLetterStore.list();
+        assertEquals(1, deadLetterList.size());
+        assertEquals(1, deadLetterList.get(0).getAttempts());
+        assertEquals("digest", deadLetterList.get(0).createMessage(session).getSubject());
+        deadLetterStore.remove(deadLetterList.get(0));
+        assertTrue(deadLetterStore.list().isEmpty());
+        scheduler.shutdown(true);
+    }
+
+    @Test
+    public void testDeadLetterWithoutCredentials() throws Exception {
+        final Properties appProperties = new Properties();
+        appProperties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_HOST_KEY, "mail.a.domain.com1");
+        appProperties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_USER_KEY, "mailer");
+        appProperties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_PASSWORD_KEY, "s3cr3t-smtp");
+        final DeadLetterStore deadLetterStore = new DeadLetterStore(folder.newFolder());
+        final DeadLetter deadLetter = deadLetterStore.store(new ExtensionProperties(appProperties), createMessage(), createFailure(550), 1);
+
+        final File detailsFile = new File(deadLetterStore.getDirectory(), deadLetter.getName() + DeadLetterStore.DETAILS_SUFFIX);
+        final String details = new String(Files.readAllBytes(detailsFile.toPath()), StandardCharsets.ISO_8859_1);
+        assertFalse(details.contains("s3cr3t-smtp"));
+        assertFalse(details.contains("mailer"));
+        assertEquals("mail.a.domain.com1", deadLetterStore.list().get(0).getProperties().getHost());
+        assertNull(deadLetterStore.list().get(0).getProperties().getPassword());
+    }
+
+    @Test
+    public void testAttemptsExhausted() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final DeadLetterStore deadLetterStore = new DeadLetterStore(folder.newFolder());
+        final EmailRetryScheduler scheduler = new EmailRetryScheduler(createFailingWrapper(attempts, 100, 421), deadLetterStore,
+                new SmtpFailureClassifier(), 1, 3, 1, 10);
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        scheduler.handleFailure(properties, session, createMessage(), createFailure(421), future);
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the retries to run out");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof SMTPSendFailedException);
+        }
+        assertEquals(2, attempts.get());
+        assertEquals(3, deadLetterStore.list().get(0).getAttempts());
+        scheduler.shutdown(true);
+    }
+
+    @Test
+    public void testPendingDeadLetteredOnShutdown() throws Exception {
+        final DeadLetterStore deadLetterStore = new DeadLetterStore(folder.newFolder());
+        final EmailRetryScheduler scheduler = new EmailRetryScheduler(createFailingWrapper(new AtomicInteger(), 0, 250), deadLetterStore,
+                new SmtpFailureClassifier(), 1, 5, TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1));
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        scheduler.handleFailure(properties, session, createMessage(), createFailure(451), future);
+        assertEquals(1, scheduler.getPendingCount());
+        scheduler.shutdown(true);
+        assertTrue(future.isCompletedExceptionally());
+        assertEquals(1, deadLetterStore.list().size());
+    }
+
+    @Test
+    public void testBackoffDelay() {
+        final EmailRetryScheduler scheduler = new EmailRetryScheduler(new JavaMailWrapper(), null, new SmtpFailureClassifier(), 1, 10, 1000, 5000);
+        for (int index = 0; index < 100; index++) {
+            final long first = scheduler.computeDelay(1);
+            assertTrue(first >= 500 && first <= 1000);
+            final long third = scheduler.computeDelay(3);
+            assertTrue(third >= 2000 && third <= 4000);
+            final long capped = scheduler.computeDelay(10);
+            assertTrue(capped >= 2500 && capped <= 5000);
+        }
+        scheduler.shutdown(false);
+    }
+}
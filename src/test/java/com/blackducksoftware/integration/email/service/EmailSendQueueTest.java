@@ -0,0 +1,133 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.email.mock.MockMailWrapper;
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+import com.blackducksoftware.integration.email.model.JavaMailWrapper;
+
+public class EmailSendQueueTest {
+    private final ExtensionProperties properties = new ExtensionProperties(new Properties());
+
+    private final Session session = Session.getInstance(new Properties());
+
+    private final Message message = new MimeMessage(session);
+
+    private JavaMailWrapper createBlockingWrapper(final CountDownLatch started, final CountDownLatch release) {
+        return new JavaMailWrapper() {
+            @Override
+            public void sendMessage(final ExtensionProperties customerProperties, final Session session, final Message message)
+                    throws MessagingException {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException e) {
+                    throw new MessagingException("interrupted", e);
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testDeliveryCompletesFuture() throws Exception {
+        final EmailSendQueue sendQueue = new EmailSendQueue(new MockMailWrapper(false), 2, 10, SendQueueFullPolicy.BLOCK, 1000);
+        sendQueue.submit(properties, session, message).get(5, TimeUnit.SECONDS);
+        sendQueue.shutdown(1000);
+        assertEquals(1, sendQueue.getSentCount());
+    }
+
+    @Test
+    public void testFailedDelivery() throws Exception {
+        final EmailSendQueue sendQueue = new EmailSendQueue(new MockMailWrapper(true), 1, 10, SendQueueFullPolicy.BLOCK, 1000);
+        try {
+            sendQueue.submit(properties, session, message).get(5, TimeUnit.SECONDS);
+            fail("Expected the delivery to fail");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof MessagingException);
+        }
+        sendQueue.shutdown(1000);
+        assertEquals(1, sendQueue.getFailedCount());
+    }
+
+    @Test
+    public void testShedWhenFull() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final EmailSendQueue sendQueue = new EmailSendQueue(createBlockingWrapper(started, release), 1, 1, SendQueueFullPolicy.SHED, 0);
+        final CompletableFuture<Void> sending = sendQueue.submit(properties, session, message);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final CompletableFuture<Void> queued = sendQueue.submit(properties, session, message);
+        final CompletableFuture<Void> shed = sendQueue.submit(properties, session, message);
+        try {
+            shed.get();
+            fail("Expected the full queue to shed the email");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+        release.countDown();
+        sending.get(5, TimeUnit.SECONDS);
+        queued.get(5, TimeUnit.SECONDS);
+        sendQueue.shutdown(1000);
+        assertEquals(2, sendQueue.getSentCount());
+        assertEquals(1, sendQueue.getRejectedCount());
+    }
+
+    @Test
+    public void testBlockTimesOutWhenFull() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final EmailSendQueue sendQueue = new EmailSendQueue(createBlockingWrapper(started, release), 1, 1, SendQueueFullPolicy.BLOCK, 50);
+        sendQueue.submit(properties, session, message);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        sendQueue.submit(properties, session, message);
+        final long startTime = System.currentTimeMillis();
+        assertTrue(sendQueue.submit(properties, session, message).isCompletedExceptionally());
+        assertTrue(System.currentTimeMillis() - startTime >= 50);
+        release.countDown();
+        sendQueue.shutdown(1000);
+    }
+
+    @Test
+    public void testShutdownRejectsNewEmails() throws Exception {
+        final EmailSendQueue sendQueue = new EmailSendQueue(new MockMailWrapper(false), 1, 10, SendQueueFullPolicy.BLOCK, 1000);
+        sendQueue.shutdown(1000);
+        assertTrue(sendQueue.submit(properties, session, message).isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class FragmentCacheTest {
+    private static final String TEMPLATE = "<#list items as item><@fragment name=\"item\" key=item>[${item?upper_case}]</@fragment></#list>";
+
+    private String render(final Configuration configuration, final List<?> items) throws Exception {
+        final Template template = new Template("digest.ftl", TEMPLATE, configuration);
+        final StringWriter writer = new StringWriter();
+        template.process(Collections.singletonMap("items", items), writer);
+        return writer.toString();
+    }
+
+    private Configuration createConfiguration(final FragmentCache fragmentCache) throws Exception {
+        final Configuration configuration = new Configuration(Configuration.VERSION_2_3_25);
+        configuration.setSharedVariable(FragmentCache.DIRECTIVE_NAME, fragmentCache);
+        return configuration;
+    }
+
+    @Test
+    public void testFragmentRenderedOnce() throws Exception {
+        final FragmentCache fragmentCache = new FragmentCache(100, 60000);
+        final Configuration configuration = createConfiguration(fragmentCache);
+        assertEquals("[PROJECT A][PROJECT B]", render(configuration, Arrays.asList("project a", "project b")));
+        assertEquals("[PROJECT B][PROJECT C]", render(configuration, Arrays.asList("project b", "project c")));
+        assertEquals("[PROJECT A][PROJECT C]", render(configuration, Arrays.asList("project a", "project c")));
+        assertEquals(3, fragmentCache.getMissCount());
+        assertEquals(3, fragmentCache.getHitCount());
+
+        fragmentCache.invalidateAll();
+        assertEquals("[PROJECT A]", render(configuration, Arrays.asList("project a")));
+        assertEquals(4, fragmentCache.getMissCount());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        final FragmentCache fragmentCache = new FragmentCache(0, 60000);
+        final Configuration configuration = createConfiguration(fragmentCache);
+        assertEquals("[PROJECT A]", render(configuration, Arrays.asList("project a")));
+        assertEquals("[PROJECT A]", render(configuration, Arrays.asList("project a")));
+        assertEquals(0, fragmentCache.getHitCount());
+    }
+}
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jsoup.Jsoup;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.blackducksoftware.integration.email.batch.processor.NotificationCategoryEnum;
+import com.blackducksoftware.integration.email.model.batch.CategoryData;
+import com.blackducksoftware.integration.email.model.batch.ItemData;
+import com.blackducksoftware.integration.email.model.batch.ItemEntry;
+import com.blackducksoftware.integration.email.model.batch.ProjectData;
+import com.blackducksoftware.integration.email.notifier.AbstractDigestNotifier;
+
+import freemarker.template.Configuration;
+
+public class HtmlTextExtractorTest {
+    private final Logger logger = LoggerFactory.getLogger(HtmlTextExtractorTest.class);
+
+    private final HtmlTextExtractor extractor = new HtmlTextExtractor();
+
+    private Configuration createConfiguration() {
+        final Configuration configuration = new Configuration(Configuration.VERSION_2_3_25);
+        configuration.setClassForTemplateLoading(HtmlTextExtractorTest.class, "/templates");
+        configuration.setDefaultEncoding("UTF-8");
+        configuration.setSharedVariable(FragmentCache.DIRECTIVE_NAME, new FragmentCache(0, 0));
+        return configuration;
+    }
+
+    private String render(final String templateName, final Map<String, Object> model) throws Exception {
+        final StringWriter writer = new StringWriter();
+        createConfiguration().getTemplate(templateName).process(model, writer);
+        return writer.toString();
+    }
+
+    private List<ProjectData> createProjectData(final int projectCount) {
+        final List<ProjectData> projectList = new ArrayList<>(projectCount);
+        for (int index = 0; index < projectCount; index++) {
+            final Map<NotificationCategoryEnum, CategoryData> categoryMap = new HashMap<>();
+            for (final NotificationCategoryEnum category : NotificationCategoryEnum.values()) {
+                final List<ItemData> itemList = new ArrayList<>();
+                for (int itemIndex = 0; itemIndex < 3; itemIndex++) {
+                    final Set<ItemEntry> dataSet = new HashSet<>();
+                    dataSet.add(new ItemEntry("COMPONENT", "Component " + itemIndex + " & more"));
+                    dataSet.add(new ItemEntry("RULE", "Rule " + itemIndex));
+                    itemList.add(new ItemData(dataSet));
+                }
+                categoryMap.put(category, new CategoryData(category.name(), itemList, itemList.size()));
+            }
+            projectList.add(new ProjectData("Project " + index, "1." + index, categoryMap));
+        }
+        return projectList;
+    }
+
+    private Map<String, Object> createDigestModel(final int projectCount) {
+        final Map<String, Object> model = new HashMap<>();
+        model.put(AbstractDigestNotifier.KEY_TOPICS_LIST, createProjectData(projectCount));
+        model.put(AbstractDigestNotifier.KEY_NOTIFIER_CATEGORY, "DAILY");
+        model.put("hub_server_url", "http://hub-a.domain.com1/");
+        model.put("logo_image", "logo");
+        return model;
+    }
+
+    @Test
+    public void testTagsAndWhitespace() {
+        assertEquals("One Two three", extractor.extract("<div>One</div>\n  <div>Two <span>three</span></div>"));
+        assertEquals("BLACKDUCK", extractor.extract("<span>BLACK</span><span>DUCK</span>"));
+        assertEquals("a b", extractor.extract("a<br/>b"));
+        assertEquals("", extractor.extract(null));
+        assertEquals("", extractor.extract(" <html> </html> "));
+    }
+
+    @Test
+    public void testSkippedContent() {
+        assertEquals("Title text", extractor.extract(
+                "<html><head><title>Title</title><style>p { color: red; }</style><script>if (a<b) {}</script></head><body><!-- <p>hidden</p> -->text</body></html>"));
+        assertEquals("link", extractor.extract("<a href=\"http://hub?a=1&b=<2>\">link</a>"));
+    }
+
+    @Test
+    public void testPlainAngleBrackets() {
+        assertEquals("Project > 1.0", extractor.extract("<div>Project > 1.0</div>"));
+        assertEquals("a < b", extractor.extract("<p>a < b</p>"));
+    }
+
+    @Test
+    public void testCharacterReferences() {
+        assertEquals("a&b <x> \"q\" AB", extractor.extract("a&amp;b &lt;x&gt; &quot;q&quot; &#65;&#x42;"));
+        assertEquals("&unknown; a & b &#xZZ;", extractor.extract("&unknown; a & b &#xZZ;"));
+        assertEquals("a b", extractor.extract("a&nbsp;&nbsp;b"));
+    }
+
+    @Test
+    public void testSameTextAsJsoup() throws Exception {
+        final String digest = render("digest.ftl", createDigestModel(3));
+        assertEquals(Jsoup.parse(digest).text(), extractor.extract(digest));
+
+        final Map<String, Object> sampleModel = new HashMap<>();
+        sampleModel.put("title", "A Glorious Day");
+        sampleModel.put("message", "this should have html and plain text parts");
+        sampleModel.put("items", Arrays.asList("apple", "orange", "pear", "banana"));
+        sampleModel.put("logo_image", "logo");
+        final String sample = render("sampleTemplate.ftl", sampleModel);
+        assertEquals(Jsoup.parse(sample).text(), extractor.extract(sample));
+    }
+
+    // compares the extractor with Jsoup on a large rendered digest; run it by hand when changing the extractor
+    @Ignore
+    @Test
+    public void testBenchmark() throws Exception {
+        final String html = render("digest.ftl", createDigestModel(50));
+        final int iterations = 100;
+        for (int index = 0; index < iterations; index++) {
+            Jsoup.parse(html).text();
+            extractor.extract(html);
+        }
+
+        long startTime = System.currentTimeMillis();
+        for (int index = 0; index < iterations; index++) {
+            Jsoup.parse(html).text();
+        }
+        final long jsoupTime = System.currentTimeMillis() - startTime;
+        startTime = System.currentTimeMillis();
+        for (int index = 0; index < iterations; index++) {
+            extractor.extract(html);
+        }
+        final long streamTime = System.currentTimeMillis() - startTime;
+        logger.info("Html length {} chars; Jsoup {} ms; stream {} ms", html.length(), jsoupTime, streamTime);
+        assertEquals(Jsoup.parse(html).text(), extractor.extract(html));
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+
+public class MailConfigurationCacheTest {
+    private static final String HOST_KEY = ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_HOST_KEY;
+
+    private ExtensionProperties createHubProperties(final String host) {
+        final Properties properties = new Properties();
+        properties.put(HOST_KEY, host);
+        properties.put(ExtensionProperties.EMAIL_FROM_ADDRESS_KEY, "noreply@a.domain.com1");
+        return new ExtensionProperties(properties);
+    }
+
+    @Test
+    public void testMergedPropertiesReused() {
+        final ExtensionProperties localProperties = new ExtensionProperties(new Properties());
+        final MailConfigurationCache cache = new MailConfigurationCache(localProperties);
+        assertSame(localProperties, cache.getProperties(null));
+
+        final ExtensionProperties hubProperties = createHubProperties("mail.a.domain.com1");
+        final ExtensionProperties merged = cache.getProperties(hubProperties);
+        assertEquals("mail.a.domain.com1", merged.getHost());
+        assertSame(merged, cache.getProperties(hubProperties));
+        // the next run builds a new but equal global configuration
+        assertSame(merged, cache.getProperties(createHubProperties("mail.a.domain.com1")));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        final ExtensionProperties changed = cache.getProperties(createHubProperties("mail2.a.domain.com1"));
+        assertNotSame(merged, changed);
+        assertEquals("mail2.a.domain.com1", changed.getHost());
+    }
+
+    @Test
+    public void testRestoreCredentials() {
+        final Properties localProperties = new Properties();
+        localProperties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_USER_KEY, "mailer");
+        localProperties.put(ExtensionProperties.JAVAMAIL_CONFIG_PREFIX + ExtensionProperties.JAVAMAIL_PASSWORD_KEY, "secret");
+        final MailConfigurationCache cache = new MailConfigurationCache(new ExtensionProperties(localProperties));
+        final ExtensionProperties hubProperties = createHubProperties("mail.a.domain.com1");
+
+        final ExtensionProperties restored = cache.restoreCredentials(createHubProperties("mail.a.domain.com1"), hubProperties);
+        assertEquals("mail.a.domain.com1", restored.getHost());
+        assertEquals("mailer", restored.getUsername());
+        assertEquals("secret", restored.getPassword());
+        assertEquals(cache.getProperties(hubProperties).getPropertiesForSession(), restored.getPropertiesForSession());
+
+        // the credentials of the current server are not handed to another one
+        final ExtensionProperties otherServer = cache.restoreCredentials(createHubProperties("mail2.a.domain.com1"), hubProperties);
+        assertNull(otherServer.getPassword());
+    }
+
+    @Test
+    public void testSessionPerConfiguration() {
+        final MailConfigurationCache cache = new MailConfigurationCache(new ExtensionProperties(new Properties()));
+        final ExtensionProperties first = cache.getProperties(createHubProperties("mail.a.domain.com1"));
+        assertSame(cache.getSession(first), cache.getSession(createHubProperties("mail.a.domain.com1")));
+        assertNotSame(cache.getSession(first), cache.getSession(createHubProperties("mail2.a.domain.com1")));
+        assertEquals("mail.a.domain.com1", cache.getSession(first).getProperty(ExtensionProperties.JAVAMAIL_HOST_KEY));
+    }
+}
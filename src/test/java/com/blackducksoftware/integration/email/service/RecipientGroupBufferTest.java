@@ -0,0 +1,141 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.email.model.ExtensionProperties;
+import com.blackducksoftware.integration.email.service.RecipientGroupBuffer.Member;
+import com.blackducksoftware.integration.email.service.RecipientGroupBuffer.RecipientGroup;
+
+public class RecipientGroupBufferTest {
+    private final Session session = Session.getInstance(new Properties());
+
+    private final ExtensionProperties properties = new ExtensionProperties(new Properties());
+
+    private MimeMessage createMessage(final String emailAddress, final String text) throws Exception {
+        final MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("hub@a.domain.com1"));
+        message.setRecipient(Message.RecipientType.TO, new InternetAddress(emailAddress));
+        message.setSubject("Daily digest");
+        message.setText(text, "utf-8");
+        return message;
+    }
+
+    @Test
+    public void testGroupSentAtLimit() throws Exception {
+        final RecipientGroupBuffer groupBuffer = new RecipientGroupBuffer(2);
+        assertNull(groupBuffer.add(properties, session, createMessage("alex@a.domain.com1", "digest"), new CompletableFuture<>()));
+        assertEquals(1, groupBuffer.getPendingCount());
+        final RecipientGroup group = groupBuffer.add(properties, session, createMessage("sam@a.domain.com1", "digest"),
+                new CompletableFuture<>());
+        assertNotNull(group);
+        assertEquals(0, groupBuffer.getPendingCount());
+        assertEquals(2, group.getFutures().size());
+
+        final Message message = group.createMessage();
+        assertNull(message.getRecipients(Message.RecipientType.TO));
+        assertEquals(2, message.getRecipients(Message.RecipientType.BCC).length);
+        assertEquals(2, message.getAllRecipients().length);
+    }
+
+    @Test
+    public void testDifferentContentNotGrouped() throws Exception {
+        final RecipientGroupBuffer groupBuffer = new RecipientGroupBuffer(50);
+        assertNull(groupBuffer.add(properties, session, createMessage("alex@a.domain.com1", "digest A"), new CompletableFuture<>()));
+        assertNull(groupBuffer.add(properties, session, createMessage("sam@a.domain.com1", "digest B"), new CompletableFuture<>()));
+        assertNull(groupBuffer.add(properties, session, createMessage("robin@a.domain.com1", "digest A"), new CompletableFuture<>()));
+
+        final List<RecipientGroup> groups = groupBuffer.drain();
+        assertEquals(2, groups.size());
+        assertEquals(2, groups.get(0).getRecipientCount());
+        assertEquals(2, groups.get(0).createMessage().getRecipients(Message.RecipientType.BCC).length);
+
+        // a group of one is sent as it was made
+        final Message single = groups.get(1).createMessage();
+        assertEquals("sam@a.domain.com1", single.getRecipients(Message.RecipientType.TO)[0].toString());
+        assertNull(single.getRecipients(Message.RecipientType.BCC));
+        assertEquals(0, groupBuffer.drain().size());
+    }
+
+    private RecipientGroup createGroup(final String... emailAddresses) throws Exception {
+        final RecipientGroupBuffer groupBuffer = new RecipientGroupBuffer(emailAddresses.length);
+        RecipientGroup group = null;
+        for (final String emailAddress : emailAddresses) {
+            group = groupBuffer.add(properties, session, createMessage(emailAddress, "digest"), new CompletableFuture<>());
+        }
+        return group;
+    }
+
+    @Test
+    public void testRejectedAddressFailsOnlyItsMember() throws Exception {
+        final RecipientGroup group = createGroup("alex@a.domain.com1", "sam@a.domain.com1", "robin@a.domain.com1");
+        group.createMessage();
+        final Address[] validUnsent = new Address[] { new InternetAddress("alex@a.domain.com1"), new InternetAddress("robin@a.domain.com1") };
+        final Address[] invalid = new Address[] { new InternetAddress("sam@a.domain.com1") };
+        final List<Member> unsentMembers = group.complete(new SendFailedException("recipient rejected", null, null, validUnsent, invalid));
+
+        assertEquals(2, unsentMembers.size());
+        assertTrue(group.getFutures().get(1).isCompletedExceptionally());
+        assertFalse(group.getFutures().get(0).isDone());
+        final Message single = group.createMessage(unsentMembers.get(0));
+        assertEquals("alex@a.domain.com1", single.getRecipients(Message.RecipientType.TO)[0].toString());
+        assertNull(single.getRecipients(Message.RecipientType.BCC));
+    }
+
+    @Test
+    public void testPartialSendCompletesDeliveredMembers() throws Exception {
+        final RecipientGroup group = createGroup("alex@a.domain.com1", "sam@a.domain.com1");
+        final Address[] validSent = new Address[] { new InternetAddress("alex@a.domain.com1") };
+        final Address[] invalid = new Address[] { new InternetAddress("sam@a.domain.com1") };
+        assertTrue(group.complete(new SendFailedException("recipient rejected", null, validSent, null, invalid)).isEmpty());
+        assertTrue(group.getFutures().get(0).isDone());
+        assertFalse(group.getFutures().get(0).isCompletedExceptionally());
+        assertTrue(group.getFutures().get(1).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testConnectionFailureFailsEveryMember() throws Exception {
+        final RecipientGroup group = createGroup("alex@a.domain.com1", "sam@a.domain.com1");
+        assertTrue(group.complete(new MessagingException("connection dropped")).isEmpty());
+        assertTrue(group.getFutures().get(0).isCompletedExceptionally());
+        assertTrue(group.getFutures().get(1).isCompletedExceptionally());
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.mail.internet.MimeBodyPart;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.email.service.RenderCache.TrackingModel;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class RenderCacheTest {
+    private static final Map<String, String> NO_IMAGES = Collections.emptyMap();
+
+    private final Configuration configuration = new Configuration(Configuration.VERSION_2_3_25);
+
+    private final RenderCache renderCache = new RenderCache(10, 60000);
+
+    private Map<String, Object> createModel(final String topic, final String name) {
+        final Map<String, Object> model = new HashMap<>();
+        model.put("topic", topic);
+        model.put("name", name);
+        return model;
+    }
+
+    private void render(final String renderName, final String templateSource, final Map<String, Object> model) throws Exception {
+        final Template template = new Template("digest", templateSource, configuration);
+        final TrackingModel trackingModel = renderCache.track(model, template.getObjectWrapper());
+        final StringWriter writer = new StringWriter();
+        template.process(trackingModel, writer);
+        final MimeBodyPart bodyPart = new MimeBodyPart();
+        bodyPart.setText(writer.toString(), "utf-8");
+        renderCache.putBodyPart(renderName, trackingModel, bodyPart);
+    }
+
+    @Test
+    public void testSharedWhenUserFieldsNotRead() throws Exception {
+        final String renderName = renderCache.getRenderName("digest.ftl", TextContentMode.STREAM, NO_IMAGES);
+        assertNull(renderCache.getBodyPart(renderName, createModel("Project A", "Alex")));
+        render(renderName, "Digest for ${topic}", createModel("Project A", "Alex"));
+
+        final MimeBodyPart bodyPart = renderCache.getBodyPart(renderName, createModel("Project A", "Sam"));
+        assertNotNull(bodyPart);
+        assertEquals("Digest for Project A", bodyPart.getContent());
+        assertNull(renderCache.getBodyPart(renderName, createModel("Project B", "Alex")));
+        assertEquals(1, renderCache.getHitCount());
+        assertEquals(2, renderCache.getMissCount());
+    }
+
+    @Test
+    public void testNotSharedWhenUserFieldsRead() throws Exception {
+        final String renderName = renderCache.getRenderName("digest.ftl", TextContentMode.STREAM, NO_IMAGES);
+        render(renderName, "Hello ${name}, digest for ${topic}", createModel("Project A", "Alex"));
+        assertNull(renderCache.getBodyPart(renderName, createModel("Project A", "Sam")));
+        assertEquals("Hello Alex, digest for Project A", renderCache.getBodyPart(renderName, createModel("Project A", "Alex")).getContent());
+    }
+
+    @Test
+    public void testRenderNameSeparatesConfiguration() throws Exception {
+        final String renderName = renderCache.getRenderName("digest.ftl", TextContentMode.STREAM, NO_IMAGES);
+        render(renderName, "Digest for ${topic}", createModel("Project A", "Alex"));
+        final String textTemplateRenderName = renderCache.getRenderName("digest.ftl", TextContentMode.TEMPLATE, NO_IMAGES);
+        assertNull(renderCache.getBodyPart(textTemplateRenderName, createModel("Project A", "Alex")));
+        final String imageRenderName = renderCache.getRenderName("digest.ftl", TextContentMode.STREAM,
+                Collections.singletonMap("<logo>", "Ducky-80.png"));
+        assertNull(renderCache.getBodyPart(imageRenderName, createModel("Project A", "Alex")));
+
+        renderCache.invalidateAll();
+        assertNull(renderCache.getBodyPart(renderName, createModel("Project A", "Alex")));
+    }
+}
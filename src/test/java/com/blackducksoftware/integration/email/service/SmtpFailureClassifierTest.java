@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.ConnectException;
+
+import javax.mail.Address;
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+
+import org.junit.Test;
+
+import com.sun.mail.smtp.SMTPAddressFailedException;
+import com.sun.mail.smtp.SMTPSendFailedException;
+
+public class SmtpFailureClassifierTest {
+    private final SmtpFailureClassifier classifier = new SmtpFailureClassifier();
+
+    @Test
+    public void testReplyCodes() throws Exception {
+        assertTrue(classifier.isTransient(new SMTPSendFailedException("DATA", 451, "451 try again later", null, null, null, null)));
+        assertFalse(classifier.isTransient(new SMTPSendFailedException("DATA", 554, "554 rejected", null, null, null, null)));
+    }
+
+    @Test
+    public void testAddressFailures() throws Exception {
+        final InternetAddress address = new InternetAddress("user@a.domain.com1");
+        final SendFailedException throttled = new SendFailedException("Invalid Addresses", new SMTPAddressFailedException(address, "RCPT", 421,
+                "421 too many connections"), new Address[0], new Address[0], new Address[] { address });
+        assertTrue(classifier.isTransient(throttled));
+        final SendFailedException unknownUser = new SendFailedException("Invalid Addresses", new SMTPAddressFailedException(address, "RCPT", 550,
+                "550 no such user"), new Address[0], new Address[0], new Address[] { address });
+        assertFalse(classifier.isTransient(unknownUser));
+        assertFalse(classifier.isTransient(new SendFailedException("No recipient addresses")));
+    }
+
+    @Test
+    public void testConnectionFailures() {
+        assertTrue(classifier.isTransient(new MessagingException("Could not connect to SMTP host", new ConnectException("Connection refused"))));
+        assertFalse(classifier.isTransient(new AuthenticationFailedException("535 authentication failed")));
+    }
+}
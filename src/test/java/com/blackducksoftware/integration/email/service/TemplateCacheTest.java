@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.email.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+
+public class TemplateCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Configuration createConfiguration(final File templateDirectory) throws Exception {
+        final Configuration configuration = new Configuration(Configuration.VERSION_2_3_25);
+        configuration.setDirectoryForTemplateLoading(templateDirectory);
+        configuration.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+        return configuration;
+    }
+
+    private String process(final Template template) throws Exception {
+        final StringWriter writer = new StringWriter();
+        template.process(Collections.singletonMap("name", "Hub"), writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void testSubjectTemplateCompiledOnce() throws Exception {
+        final TemplateCache templateCache = new TemplateCache(createConfiguration(folder.getRoot()));
+        final Template subjectTemplate = templateCache.getSubjectTemplate("Digest for ${name}");
+        assertSame(subjectTemplate, templateCache.getSubjectTemplate("Digest for ${name}"));
+        assertEquals("Digest for Hub", process(subjectTemplate));
+        assertEquals(1, templateCache.getMissCount());
+        assertEquals(1, templateCache.getHitCount());
+    }
+
+    @Test
+    public void testInvalidateReloadsTemplate() throws Exception {
+        final File templateFile = folder.newFile("digest.ftl");
+        FileUtils.writeStringToFile(templateFile, "Hello ${name}", StandardCharsets.UTF_8);
+        final TemplateCache templateCache = new TemplateCache(createConfiguration(folder.getRoot()));
+        final Template template = templateCache.getTemplate("digest.ftl");
+        assertSame(template, templateCache.getTemplate("digest.ftl"));
+
+        FileUtils.writeStringToFile(templateFile, "Goodbye ${name}", StandardCharsets.UTF_8);
+        assertEquals("Hello Hub", process(templateCache.getTemplate("digest.ftl")));
+        templateCache.invalidate("digest.ftl");
+        final Template reloaded = templateCache.getTemplate("digest.ftl");
+        assertNotSame(template, reloaded);
+        assertEquals("Goodbye Hub", process(reloaded));
+    }
+
+    @Test
+    public void testTextTemplate() throws Exception {
+        FileUtils.writeStringToFile(folder.newFile("digest.ftl"), "<p>Hello ${name}</p>", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(folder.newFile("digest.txt.ftl"), "Hello ${name}", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(folder.newFile("sampleTemplate.ftl"), "Sample ${name}", StandardCharsets.UTF_8);
+        final TemplateCache templateCache = new TemplateCache(createConfiguration(folder.getRoot()));
+        final Template textTemplate = templateCache.getTextTemplate("digest.ftl");
+        assertEquals("Hello Hub", process(textTemplate));
+        assertSame(textTemplate, templateCache.getTextTemplate("digest.ftl"));
+        assertNull(templateCache.getTextTemplate("sampleTemplate.ftl"));
+        assertNull(templateCache.getTextTemplate("sampleTemplate.ftl"));
+        assertEquals(2, templateCache.getMissCount());
+        assertEquals(2, templateCache.getHitCount());
+    }
+
+    @Test
+    public void testPreload() throws Exception {
+        FileUtils.writeStringToFile(folder.newFile("digest.ftl"), "Hello ${name}", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(folder.newFile("sampleTemplate.ftl"), "Sample ${name}", StandardCharsets.UTF_8);
+        folder.newFile("notes.txt");
+        final TemplateCache templateCache = new TemplateCache(createConfiguration(folder.getRoot()));
+        assertEquals(3, templateCache.preload(folder.getRoot(), Arrays.asList("Digest for ${name}")));
+        templateCache.getTemplate("digest.ftl");
+        templateCache.getSubjectTemplate("Digest for ${name}");
+        assertEquals(2, templateCache.getHitCount());
+    }
+}